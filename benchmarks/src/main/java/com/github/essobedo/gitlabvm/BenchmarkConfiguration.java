@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The {@link ConnectionConfiguration} used by the benchmarks with the helper methods allowing to
+ * generate realistic data sets.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+class BenchmarkConfiguration implements ConnectionConfiguration {
+    /**
+     * The size of the buffer used to copy the patch.
+     */
+    private final int bufferSize;
+    /**
+     * The directory of the cache of patches, {@code null} if disabled.
+     */
+    private final File cacheDirectory;
+
+    /**
+     * Constructs a {@code BenchmarkConfiguration} with the default buffer size and no cache.
+     */
+    BenchmarkConfiguration() {
+        this(4096, null);
+    }
+
+    /**
+     * Constructs a {@code BenchmarkConfiguration} with the specified buffer size and cache directory.
+     * @param bufferSize the size of the buffer used to copy the patch.
+     * @param cacheDirectory the directory of the cache of patches, {@code null} if disabled.
+     */
+    BenchmarkConfiguration(final int bufferSize, final File cacheDirectory) {
+        this.bufferSize = bufferSize;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @Override
+    public String login() {
+        return "login";
+    }
+
+    @Override
+    public String password() {
+        return "password";
+    }
+
+    @Override
+    public String projectOwner() {
+        return "owner";
+    }
+
+    @Override
+    public String projectId() {
+        return "1";
+    }
+
+    @Override
+    public String projectName() {
+        return "project";
+    }
+
+    @Override
+    public String branch() {
+        return "releases";
+    }
+
+    @Override
+    public String patchFileName() {
+        return "patch.zip";
+    }
+
+    @Override
+    public int downloadBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public File patchCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Generates a shuffled list of distinct version ids of the form {@code major.minor.patch} knowing that
+     * about 20% of them are snapshots.
+     * @param size the total amount of version ids to generate.
+     * @return the generated version ids.
+     */
+    static List<String> versions(final int size) {
+        final Random random = new Random(size);
+        final List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final String version = String.format("%d.%d.%d", i / 10000, i / 100 % 100, i % 100);
+            result.add(random.nextInt(5) == 0 ? version + "-SNAPSHOT" : version);
+        }
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    /**
+     * Generates the content of the tree of a branch as returned by gitlab with one directory per version.
+     * @param versions the version ids to include into the tree.
+     * @return the content of the tree in JSON format.
+     */
+    static String tree(final List<String> versions) {
+        final StringBuilder result = new StringBuilder(versions.size() * 100);
+        result.append('[');
+        for (int i = 0; i < versions.size(); i++) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(String.format("{\"id\":\"%040x\",\"name\":\"%s\",\"type\":\"tree\",\"mode\":\"040000\"}",
+                i, versions.get(i)));
+        }
+        return result.append(']').toString();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.core.Configuration;
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.TaskInterruptedException;
+import com.github.essobedo.appma.spi.Manageable;
+import com.github.essobedo.appma.task.Task;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark of the task storing the patch, the patch is served by a local HTTP server emulating gitlab
+ * such that the benchmark mainly measures the copy loop.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StorePatchBenchmark {
+    /**
+     * The size of the patch in bytes.
+     */
+    @Param({"1048576", "33554432"})
+    private int patchSize;
+    /**
+     * The size of the buffer used to copy the patch.
+     */
+    @Param({"4096", "65536", "1048576"})
+    private int bufferSize;
+    /**
+     * The type of output stream into which the patch is stored, {@code null} to discard the content,
+     * {@code file} to store it into a file.
+     */
+    @Param({"null", "file"})
+    private String sink;
+    /**
+     * Indicates whether the patch is retrieved from the local cache or downloaded.
+     */
+    @Param({"false", "true"})
+    private boolean cached;
+    /**
+     * The local HTTP server emulating gitlab.
+     */
+    private HttpServer server;
+    /**
+     * The version manager to test.
+     */
+    private VersionManager versionManager;
+    /**
+     * The application whose patch is stored.
+     */
+    private Manageable application;
+    /**
+     * The file into which the patch is stored if the sink is a file.
+     */
+    private File target;
+    /**
+     * The directory of the cache of patches.
+     */
+    private File cacheDirectory;
+
+    /**
+     * Starts the local HTTP server and creates the version manager.
+     * @throws Exception if the server could not be started or the cache could not be filled.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final byte[] patch = new byte[patchSize];
+        new Random(patchSize).nextBytes(patch);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v3/session", exchange -> send(exchange,
+            "{\"private_token\":\"token\"}".getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/api/v3/projects/", exchange -> send(exchange,
+            BenchmarkConfiguration.tree(Collections.singletonList("1.0.1")).getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/owner/project/raw/", exchange -> send(exchange, patch));
+        server.start();
+        this.target = File.createTempFile("patch", ".zip");
+        this.cacheDirectory = Files.createTempDirectory("patches").toFile();
+        this.application = application("1.0.0");
+        this.versionManager = new VersionManager(String.format("http://localhost:%d", server.getAddress().getPort()),
+            new BenchmarkConfiguration(bufferSize, cached ? cacheDirectory : null));
+        if (cached) {
+            store();
+        }
+    }
+
+    /**
+     * Stops the local HTTP server and removes the temporary files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        delete(target);
+        final File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                delete(file);
+            }
+        }
+        delete(cacheDirectory);
+    }
+
+    /**
+     * Stores the patch into the sink.
+     * @throws ApplicationException if the patch could not be stored.
+     * @throws TaskInterruptedException if the task has been canceled.
+     * @throws IOException if the sink could not be created.
+     */
+    @Benchmark
+    public void store() throws ApplicationException, TaskInterruptedException, IOException {
+        try (final OutputStream outputStream = "file".equals(sink) ? new FileOutputStream(target)
+            : new NullOutputStream()) {
+            versionManager.store(application, outputStream).execute();
+        }
+    }
+
+    /**
+     * Sends the specified content as response of the given exchange.
+     * @param exchange the exchange to which we respond.
+     * @param content the content of the response.
+     * @throws IOException if the response could not be sent.
+     */
+    private static void send(final HttpExchange exchange, final byte[] content) throws IOException {
+        exchange.sendResponseHeaders(200, content.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(content);
+        }
+    }
+
+    /**
+     * Creates a stub of application installed with the specified version, the other methods return
+     * {@code null} since they are not used by the version manager.
+     * @param version the installed version.
+     * @return the stub of application.
+     */
+    private static Manageable application(final String version) {
+        return (Manageable) Proxy.newProxyInstance(Manageable.class.getClassLoader(),
+            new Class<?>[]{Manageable.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "version":
+                        return version;
+                    case "toString":
+                        return "Manageable " + version;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    /**
+     * Deletes the specified file.
+     * @param file the file to delete.
+     */
+    private static void delete(final File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * An {@link OutputStream} discarding its content.
+     */
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+            // Discard the content
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            // Discard the content
+        }
+    }
+
+    /**
+     * The version manager used for the benchmark.
+     */
+    private static final class VersionManager extends AbstractVersionManager<Manageable> {
+        /**
+         * The configuration to use.
+         */
+        private final ConnectionConfiguration configuration;
+
+        /**
+         * Constructs a {@code VersionManager} with the specified end point and configuration.
+         * @param endpoint the end point of the local HTTP server.
+         * @param configuration the configuration to use.
+         */
+        private VersionManager(final String endpoint, final ConnectionConfiguration configuration) {
+            super(endpoint);
+            this.configuration = configuration;
+        }
+
+        @Override
+        protected ConnectionConfiguration createConfiguration(final Manageable application) {
+            return configuration;
+        }
+
+        @Override
+        public Task<Configuration> upgrade(final File upgradeRoot, final File appRoot, final String oldVersion) {
+            throw new UnsupportedOperationException("#upgrade()");
+        }
+    }
+}
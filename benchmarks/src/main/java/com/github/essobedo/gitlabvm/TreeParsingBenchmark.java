@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark of the conversion of the tree of the branch into the sorted set of versions as done by
+ * {@link Repository#getVersions()} once the response has been received.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TreeParsingBenchmark {
+    /**
+     * The total amount of versions in the tree.
+     */
+    @Param({"10", "1000", "100000"})
+    private int size;
+    /**
+     * The content of the tree in JSON format encoded in UTF-8.
+     */
+    private byte[] tree;
+    /**
+     * The repository used to convert the tree.
+     */
+    private Repository repository;
+
+    /**
+     * Generates the tree and creates the repository.
+     * @throws ApplicationException if the repository could not be created.
+     */
+    @Setup
+    public void setup() throws ApplicationException {
+        this.tree = BenchmarkConfiguration.tree(BenchmarkConfiguration.versions(size))
+            .getBytes(StandardCharsets.UTF_8);
+        this.repository = new Repository("http://localhost", new BenchmarkConfiguration());
+    }
+
+    /**
+     * Parses the tree and converts it into a sorted set of versions.
+     * @return the sorted set of versions.
+     * @throws IOException if the versions could not be extracted.
+     */
+    @Benchmark
+    public SortedSet<String> toVersions() throws IOException {
+        return repository.toVersions(new ByteArrayInputStream(tree));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark of the comparator of version ids provided by default by {@link ConnectionConfiguration}.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class VersionComparatorBenchmark {
+    /**
+     * The total amount of version ids.
+     */
+    @Param({"10", "1000", "100000"})
+    private int size;
+    /**
+     * The version ids to sort.
+     */
+    private List<String> versions;
+    /**
+     * The comparator to test.
+     */
+    private Comparator<String> comparator;
+
+    /**
+     * Generates the version ids.
+     */
+    @Setup
+    public void setup() {
+        this.versions = BenchmarkConfiguration.versions(size);
+        this.comparator = new BenchmarkConfiguration().versionComparator();
+        // Sorts the version ids once to size the cache of parsed version ids like a listing would do
+        SortedVersions.sort(versions, comparator);
+    }
+
+    /**
+     * Sorts the version ids as done when the versions are retrieved.
+     * @return the sorted version ids.
+     */
+    @Benchmark
+    public SortedSet<String> sort() {
+        return SortedVersions.sort(versions, comparator);
+    }
+
+    /**
+     * Compares each version id with the next one.
+     * @return the sum of the results of the comparisons.
+     */
+    @Benchmark
+    public int compare() {
+        int result = 0;
+        for (int i = 1; i < versions.size(); i++) {
+            result += comparator.compare(versions.get(i - 1), versions.get(i));
+        }
+        return result;
+    }
+}
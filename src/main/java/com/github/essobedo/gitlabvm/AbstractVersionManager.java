@@ -23,10 +23,27 @@ import com.github.essobedo.appma.exception.TaskInterruptedException;
 import com.github.essobedo.appma.spi.Manageable;
 import com.github.essobedo.appma.spi.VersionManager;
 import com.github.essobedo.appma.task.Task;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,25 +69,98 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
     private static final Logger LOG = Logger.getLogger(AbstractVersionManager.class.getName());
 
     /**
-     * The default file size in case there is no way to get the size of the file to download.
+     * The max amount of bytes to transfer at once when a patch is copied from the cache.
      */
-    private static final int DEFAULT_FILE_SIZE = 4096;
+    private static final long REPLAY_CHUNK_SIZE = 1024L * 1024L;
+
+    /**
+     * The amount of bytes prefetched after which the space available on the disk is checked again.
+     */
+    private static final long SPACE_CHECK_INTERVAL = 1024L * 1024L;
+
+    /**
+     * The total amount of seconds after which an idle thread of the default executor is released.
+     */
+    private static final long KEEP_ALIVE_TIME = 60L;
+
+    /**
+     * The total amount of milliseconds after which a task waiting for a patch being downloaded by another
+     * task checks whether it has been canceled.
+     */
+    private static final long AWAIT_INTERVAL = 100L;
 
     /**
      * The gitlab repository.
      */
     private volatile Repository repository;
 
+    /**
+     * The planner of the patch to download, created with the gitlab repository.
+     */
+    private volatile PatchPlanner planner;
+
+    /**
+     * The cache of patches, {@code null} if no cache has been configured.
+     */
+    private volatile PatchCache patchCache;
+
     /**
      * The end point of the gitlab repository.
      */
     private final String endpoint;
 
+    /**
+     * The statistics of the cache of versions.
+     */
+    private final CacheStatistics versionsStatistics = new CacheStatistics();
+
+    /**
+     * The statistics of the cache of patches.
+     */
+    private final CacheStatistics patchStatistics = new CacheStatistics();
+
+    /**
+     * The limiter of the bandwidth used to download the patches.
+     */
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+
+    /**
+     * The metrics of the version manager.
+     */
+    private final VersionManagerMetrics metrics = new VersionManagerMetrics(versionsStatistics, patchStatistics);
+
+    /**
+     * The executor of the tasks launched asynchronously, {@code null} to use the default executors.
+     */
+    private final Executor executor;
+
+    /**
+     * The patches being downloaded into the cache per key, the other tasks needing the same patch wait for
+     * the end of the download to replay it from the cache.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Void>> downloads = new ConcurrentHashMap<>();
+
+    /**
+     * The prefetcher of patches currently running, {@code null} if none.
+     */
+    private Prefetcher prefetcher;
+
     /**
      * Constructs an {@code AbstractVersionManager} with the real end point to gitlab.
      */
     public AbstractVersionManager() {
-        this("https://gitlab.com");
+        this((Executor) null);
+    }
+
+    /**
+     * Constructs an {@code AbstractVersionManager} with the real end point to gitlab and the specified
+     * executor of the tasks launched asynchronously. A provided executor is used for the checks and the
+     * stores, so it should have enough threads for the stores not to delay the checks.
+     * @param executor the executor of the tasks launched asynchronously, {@code null} to use the default
+     *                 executors shared by all the version managers.
+     */
+    public AbstractVersionManager(final Executor executor) {
+        this("https://gitlab.com", executor);
     }
 
     /**
@@ -78,7 +168,19 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
      * @param endpoint the end point to gitlab to use.
      */
     AbstractVersionManager(final String endpoint) {
+        this(endpoint, null);
+    }
+
+    /**
+     * Constructs an {@code AbstractVersionManager} with the specified end point to gitlab and executor
+     * of the tasks launched asynchronously.
+     * @param endpoint the end point to gitlab to use.
+     * @param executor the executor of the tasks launched asynchronously, {@code null} to use the default
+     *                 executors shared by all the version managers.
+     */
+    AbstractVersionManager(final String endpoint, final Executor executor) {
         this.endpoint = endpoint;
+        this.executor = executor;
     }
 
     /**
@@ -91,7 +193,16 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
         if (repository == null) {
             synchronized (this) {
                 if (repository == null) {
-                    this.repository = new Repository(endpoint, createConfiguration(application));
+                    final ConnectionConfiguration configuration = createConfiguration(application);
+                    if (configuration.downloadRateLimit() > 0L) {
+                        bandwidthLimiter.setBurst(configuration.downloadBurstSize());
+                        bandwidthLimiter.setRate(configuration.downloadRateLimit());
+                    }
+                    final Repository result = new Repository(endpoint, configuration, versionsStatistics,
+                        bandwidthLimiter, metrics);
+                    this.patchCache = PatchCache.create(configuration, patchStatistics);
+                    this.planner = new PatchPlanner(result);
+                    this.repository = result;
                 }
             }
         }
@@ -106,6 +217,65 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
      */
     protected abstract ConnectionConfiguration createConfiguration(T application) throws ApplicationException;
 
+    /**
+     * Gives the statistics of the cache of versions, allowing to know how many times the list of versions
+     * could be reused because it was still fresh or has not been modified since the last check.
+     * @return the statistics of the cache of versions.
+     */
+    public CacheStatistics versionsCacheStatistics() {
+        return versionsStatistics;
+    }
+
+    /**
+     * Invalidates the list of versions kept in memory such that the next check gets a fresh answer from
+     * gitlab even if the time to live of the versions has not expired.
+     * @see ConnectionConfiguration#versionsTtl()
+     */
+    public void invalidate() {
+        final Repository current = this.repository;
+        if (current != null) {
+            current.invalidate();
+        }
+    }
+
+    /**
+     * Gives the statistics of the cache of patches, allowing to know how many times a patch could be
+     * retrieved from the local cache instead of being downloaded.
+     * @return the statistics of the cache of patches.
+     */
+    public CacheStatistics patchCacheStatistics() {
+        return patchStatistics;
+    }
+
+    /**
+     * Gives the limiter of the bandwidth used by this version manager to download the patches, allowing to
+     * change the limit at runtime. The downloads are also limited by {@link BandwidthLimiter#global()}.
+     * @return the limiter of the bandwidth of this version manager.
+     */
+    public BandwidthLimiter bandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Gives the metrics of the version manager, which can be registered as a MXBean or forwarded to
+     * any metrics library thanks to a {@link MetricsListener}.
+     * @return the metrics of the version manager.
+     */
+    public VersionManagerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Gives the statistics of the transport shared by all the version managers accessing to the same
+     * end point, allowing to know how many connections are in use and how many TLS handshakes could be
+     * avoided thanks to the connections kept alive.
+     * @return the statistics of the transport, {@code null} if no request has been sent yet.
+     */
+    public TransportStatistics transportStatistics() {
+        final Repository current = this.repository;
+        return current == null ? null : current.transportStatistics();
+    }
+
     @Override
     public Task<String> check(final T application) throws ApplicationException {
         return new CheckForUpdate(application);
@@ -116,6 +286,153 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
         return new StorePatch(application, outputStream);
     }
 
+    /**
+     * Checks asynchronously if a new version is available, the calling thread is not blocked but the check
+     * blocks a thread of the executor until the server responds. By default, the checks are executed by their
+     * own pool shared by all the version managers and bounded to the amount of processors with a minimum of
+     * 2 threads, such that they are not delayed by the stores.
+     * @param application the application for which we check if a new version is available.
+     * @return the future result of the check, the new version id or {@code null} if there is no
+     * new version available.
+     * @see #check(Manageable)
+     * @see #executeAsync(Task)
+     */
+    public CompletableFuture<String> checkAsync(final T application) {
+        try {
+            return executeAsync(check(application), executor == null ? DefaultExecutor.CHECKS : executor);
+        } catch (ApplicationException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Stores asynchronously the patch of the latest version into the specified output stream, the calling
+     * thread is not blocked but the download blocks a thread of the executor until the patch has been
+     * fully stored. By default, the stores are executed by a pool shared by all the version managers and
+     * bounded to the amount of processors with a minimum of 2 threads, separate from the pool of the checks.
+     * @param application the application for which we want the patch.
+     * @param outputStream the output stream in which the content of the patch is stored.
+     * @return the future completed once the patch has been stored.
+     * @see #store(Manageable, OutputStream)
+     * @see #executeAsync(Task)
+     */
+    public CompletableFuture<Void> storeAsync(final T application, final OutputStream outputStream) {
+        try {
+            return executeAsync(store(application, outputStream));
+        } catch (ApplicationException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Executes asynchronously the specified task which allows to keep track of its progress. Cancelling
+     * the returned future cancels the task if it is cancelable, the future is completed exceptionally
+     * with the exception thrown by the task if any.
+     *
+     * <p>The I/O of the task is not asynchronous, the task is simply executed by a thread of the executor
+     * which is blocked during the whole execution of the task, so the amount of tasks that can run at the
+     * same time is bounded by the amount of threads of the executor, the other tasks wait in its queue. By
+     * default, the tasks other than the checks are executed by a pool shared by all the version managers and
+     * bounded to the amount of processors with a minimum of 2 threads.
+     * @param task the task to execute.
+     * @param <V> the type of the result of the task.
+     * @return the future result of the task.
+     */
+    public <V> CompletableFuture<V> executeAsync(final Task<V> task) {
+        return executeAsync(task, executor == null ? DefaultExecutor.TASKS : executor);
+    }
+
+    /**
+     * Executes asynchronously the specified task with the given executor.
+     * @param task the task to execute.
+     * @param taskExecutor the executor of the task.
+     * @param <V> the type of the result of the task.
+     * @return the future result of the task.
+     * @see #executeAsync(Task)
+     */
+    private <V> CompletableFuture<V> executeAsync(final Task<V> task, final Executor taskExecutor) {
+        final CompletableFuture<V> future = new CompletableFuture<V>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                if (task.cancelable()) {
+                    task.cancel();
+                }
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        try {
+            taskExecutor.execute(() -> {
+                if (future.isDone()) {
+                    // Cancelled before being launched
+                    return;
+                }
+                try {
+                    future.complete(task.execute());
+                } catch (ApplicationException | TaskInterruptedException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Starts prefetching periodically the patch of the latest version in the background. Once a version more
+     * recent than the version of the application is available, its patch is downloaded quietly by a low
+     * priority thread into the cache of patches, such that the next call to
+     * {@link #store(Manageable, OutputStream)} copies it from the disk. A patch is not prefetched if it
+     * exceeds the max size of the cache or if it would use the space reserved on the disk. If the prefetcher
+     * is already running, it is stopped first.
+     * @param application the application for which the patches are prefetched.
+     * @param period the period between two checks.
+     * @param unit the time unit of the period.
+     * @throws ApplicationException if no cache of patches has been configured.
+     */
+    public synchronized void startPrefetch(final T application, final long period, final TimeUnit unit)
+        throws ApplicationException {
+        getRepository(application);
+        if (patchCache == null) {
+            throw new ApplicationException("A cache of patches must be configured to prefetch the patches");
+        }
+        stopPrefetch();
+        this.prefetcher = new Prefetcher(application);
+        prefetcher.start(period, unit);
+    }
+
+    /**
+     * Stops the prefetcher if it is running, a patch being prefetched is kept partially in the cache such
+     * that its download can be resumed later.
+     */
+    public synchronized void stopPrefetch() {
+        if (prefetcher != null) {
+            prefetcher.stop();
+            this.prefetcher = null;
+        }
+    }
+
+    /**
+     * Notifies the metrics that a task has been canceled.
+     * @return the exception to throw to interrupt the task.
+     */
+    private TaskInterruptedException cancelled() {
+        metrics.cancelled();
+        return new TaskInterruptedException();
+    }
+
+    /**
+     * Gives a future completed exceptionally with the specified exception.
+     * @param e the exception with which the future is completed.
+     * @param <V> the type of the result of the future.
+     * @return the future completed exceptionally.
+     */
+    private static <V> CompletableFuture<V> failed(final Throwable e) {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
     /**
      * The inner class used to store the patch.
      */
@@ -128,6 +445,24 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
          * The stream in which it stores the content of the patch.
          */
         private final OutputStream outputStream;
+        /**
+         * The engine used to copy the patches into the output stream.
+         */
+        private CopyEngine engine;
+        /**
+         * The reporter of the progress of the copy.
+         */
+        private final ProgressReporter reporter = new ProgressReporter(new ProgressReporter.Listener() {
+            @Override
+            public void progress(final long done, final long max) {
+                updateProgress(done, max);
+            }
+
+            @Override
+            public void message(final String message) {
+                updateMessage(message);
+            }
+        }, "downloaded");
         /**
          * Constructs a {@code StorePatch} with the specified application and output stream.
          *
@@ -153,80 +488,204 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
             updateProgress(0, 1);
             final SortedSet<String> versions = repository.getVersions();
             if (isCanceled()) {
-                throw new TaskInterruptedException();
+                throw cancelled();
+            }
+            final PatchFile file = planner.plan(application.version(), versions);
+            if (isCanceled()) {
+                throw cancelled();
             }
             updateProgress(1, 1);
-            updateMessage(Localization.getMessage("downloading"));
-            try (final InputStream inputStream =  repository.getPatch(versions.last())) {
-                final int size = estimatePatchSize(inputStream);
-                final boolean unknownSize = initDownloadingProgress(size);
-                final byte[] buffer = new byte[4096];
-                int length;
-                int downloaded = 0;
-                while ((length = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, length);
-                    if (unknownSize) {
-                        downloaded += (DEFAULT_FILE_SIZE - downloaded) / 100;
-                        updateProgress(downloaded, DEFAULT_FILE_SIZE);
+            this.engine = CopyEngine.of(outputStream, repository.configuration().downloadBufferSize());
+            final PatchCache cache = patchCache;
+            final String key = cache == null ? null
+                : PatchCache.key(repository.configuration(), file.version(), file.fileName());
+            final File cached = cache == null ? null : cache.get(key);
+            try {
+                try {
+                    if (cached == null) {
+                        fetch(repository, file, cache, key);
                     } else {
-                        downloaded += length;
-                        updateProgress(downloaded, size);
-                    }
-                    updateMessage(Localization.getMessage("downloaded", downloaded / 1024));
-                    if (isCanceled()) {
-                        throw new TaskInterruptedException();
+                        replay(cached, Compression.of(file.fileName()));
                     }
+                } finally {
+                    engine.finish();
                 }
-                endDownloadingProgress(size, unknownSize);
             } catch (IOException e) {
                 throw new ApplicationException("Could not download the last version", e);
             }
             return null;
         }
+
         /**
-         * Notifies that we have reached the end of the stream.
-         * @param size the evaluated size of the patch.
-         * @param unknownSize indicates whether the size of the patch could be evaluated.
+         * Downloads the specified patch and stores it into the cache if any. If the same patch is already being
+         * downloaded into the cache by another task, the end of its download is awaited and the patch is replayed
+         * from the cache instead, unless it could not be stored into the cache in which case it is downloaded
+         * again.
+         * @param repository the repository from which the patch is downloaded.
+         * @param file the patch to download.
+         * @param cache the cache of patches, {@code null} if there is no cache.
+         * @param key the key of the patch in the cache, {@code null} if there is no cache.
+         * @throws ApplicationException if the patch could not be downloaded.
+         * @throws TaskInterruptedException if the task has been canceled.
+         * @throws IOException if the patch could not be stored.
          */
-        private void endDownloadingProgress(final int size, final boolean unknownSize) {
-            if (unknownSize) {
-                updateProgress(DEFAULT_FILE_SIZE, DEFAULT_FILE_SIZE);
+        private void fetch(final Repository repository, final PatchFile file, final PatchCache cache,
+                           final String key) throws ApplicationException, TaskInterruptedException, IOException {
+            if (cache == null) {
+                download(repository, file, null);
+                return;
+            }
+            final CompletableFuture<Void> flight = new CompletableFuture<>();
+            final CompletableFuture<Void> current = downloads.putIfAbsent(key, flight);
+            if (current == null) {
+                try {
+                    download(repository, file, cache.write(key));
+                } catch (ApplicationException e) {
+                    flight.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    downloads.remove(key, flight);
+                    // Any other failure is specific to this task, the waiting tasks will download the patch
+                    flight.complete(null);
+                }
+                return;
+            }
+            await(current);
+            final File cached = cache.get(key);
+            if (cached == null) {
+                download(repository, file, cache.write(key));
             } else {
-                updateProgress(size, size);
+                replay(cached, Compression.of(file.fileName()));
             }
         }
+
         /**
-         * Initializes the progress of the task according to the specified size.
-         * @param size the estimated size of the patch.
-         * @return {@code true} if the provided estimated {@code size} is {@code -1}, {@code false}
-         * otherwise.
+         * Waits for the end of the specified download launched by another task.
+         * @param download the download to wait for.
+         * @throws ApplicationException if the patch could not be downloaded.
+         * @throws TaskInterruptedException if the task has been canceled.
          */
-        private boolean initDownloadingProgress(final int size) {
-            final boolean unknownSize;
-            if (size > 0) {
-                unknownSize = false;
-                updateProgress(0, size);
-            } else {
-                unknownSize = true;
-                updateProgress(0, DEFAULT_FILE_SIZE);
+        private void await(final CompletableFuture<Void> download)
+            throws ApplicationException, TaskInterruptedException {
+            updateMessage(Localization.getMessage("downloading"));
+            while (true) {
+                try {
+                    download.get(AWAIT_INTERVAL, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    if (isCanceled()) {
+                        throw cancelled();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw cancelled();
+                } catch (ExecutionException e) {
+                    // Only the failures of the download itself are shared
+                    throw (ApplicationException) e.getCause();
+                }
             }
-            return unknownSize;
         }
+
         /**
-         * Estimates the size of the patch.
-         * @param inputStream the content of the patch in stream.
-         * @return The estimated size of the patch.
+         * Downloads the specified patch and stores it into the cache if a writer is provided. If the writer
+         * contains the bytes of a previous attempt, the download is resumed.
+         * @param repository the repository from which the patch is downloaded.
+         * @param file the patch to download.
+         * @param writer the writer of the corresponding cache entry, {@code null} if there is no cache.
+         * @throws ApplicationException if the patch could not be downloaded.
+         * @throws TaskInterruptedException if the task has been canceled.
+         * @throws IOException if the patch could not be stored.
          */
-        private int estimatePatchSize(final InputStream inputStream) {
-            int size = 0;
+        private void download(final Repository repository, final PatchFile file, final PatchCache.Writer writer)
+            throws ApplicationException, TaskInterruptedException, IOException {
+            updateMessage(Localization.getMessage("downloading"));
+            final Checksum checksum = Checksum.of(repository, file);
             try {
-                size = inputStream.available();
-            } catch (IOException e) {
-                if (LOG.isLoggable(Level.WARNING)) {
-                    LOG.log(Level.WARNING, "Could not get the total amount of size to download");
+                final boolean downloaded = PatchDownloader.download(repository, file, checksum, writer, engine,
+                    new PatchDownloader.Listener() {
+                        @Override
+                        public boolean start(final Patch patch) throws IOException {
+                            if (Compression.of(file.fileName()) == Compression.NONE) {
+                                engine.sizeHint(patch.length());
+                            }
+                            reporter.start(0L, patch.length());
+                            return true;
+                        }
+
+                        @Override
+                        public boolean progress(final long done) {
+                            reporter.update(done);
+                            return !isCanceled();
+                        }
+
+                        @Override
+                        public void finish(final long done) {
+                            reporter.finish(done);
+                        }
+                    });
+                if (!downloaded) {
+                    throw cancelled();
+                }
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        /**
+         * Copies the content of the specified cached patch directly from its file channel unless it is
+         * compressed in which case it is decompressed while being copied.
+         * @param cached the file of the cached patch.
+         * @param compression the compression format of the cached patch.
+         * @throws TaskInterruptedException if the task has been canceled.
+         * @throws IOException if the cached patch could not be copied.
+         */
+        private void replay(final File cached, final Compression compression)
+            throws TaskInterruptedException, IOException {
+            updateMessage(Localization.getMessage("cached"));
+            if (compression == Compression.NONE) {
+                try (final FileChannel channel = FileChannel.open(cached.toPath(), StandardOpenOption.READ)) {
+                    final long size = channel.size();
+                    engine.sizeHint(size);
+                    transfer(channel, size, size);
+                    reporter.finish(size);
+                }
+                return;
+            }
+            reporter.start(0L, cached.length());
+            try (final CopyingInputStream content = new CopyingInputStream(
+                    Files.newInputStream(cached.toPath()), null);
+                 final InputStream inputStream = compression.decode(content)) {
+                while (engine.copy(inputStream) != -1) {
+                    reporter.update(content.count());
+                    if (isCanceled()) {
+                        throw cancelled();
+                    }
+                }
+                reporter.finish(content.count());
+            }
+        }
+
+        /**
+         * Copies the specified amount of bytes of the given channel from its beginning into the output stream.
+         * @param channel the channel from which the bytes are read.
+         * @param count the amount of bytes to copy.
+         * @param size the total size of the patch used to report the progress, {@code -1} if unknown.
+         * @throws TaskInterruptedException if the task has been canceled.
+         * @throws IOException if the bytes could not be copied.
+         */
+        private void transfer(final FileChannel channel, final long count, final long size)
+            throws TaskInterruptedException, IOException {
+            reporter.start(0L, size > 0L ? size : count);
+            long position = 0L;
+            while (position < count) {
+                position += engine.transfer(channel, position, Math.min(REPLAY_CHUNK_SIZE, count - position));
+                reporter.update(position);
+                if (isCanceled()) {
+                    throw cancelled();
                 }
             }
-            return size;
         }
     }
 
@@ -261,7 +720,7 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
             updateMessage(Localization.getMessage("checking"));
             final SortedSet<String> versions = repository.getVersions();
             if (isCanceled()) {
-                throw new TaskInterruptedException();
+                throw cancelled();
             }
             final String last = versions.last();
             if (repository.versionComparator().compare(application.version(), last) < 0) {
@@ -270,4 +729,201 @@ public abstract class AbstractVersionManager<T extends Manageable> implements Ve
             return null;
         }
     }
+
+    /**
+     * The inner class allowing to prefetch periodically the patch of the latest version into the cache of
+     * patches.
+     */
+    private class Prefetcher implements Runnable {
+        /**
+         * The application for which the patches are prefetched.
+         */
+        private final T application;
+        /**
+         * The executor of the prefetcher.
+         */
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("gitlabvm-prefetch", Thread.MIN_PRIORITY));
+        /**
+         * Indicates whether the prefetcher has been stopped.
+         */
+        private volatile boolean stopped;
+        /**
+         * The periodic execution of the prefetcher.
+         */
+        private ScheduledFuture<?> execution;
+
+        /**
+         * Constructs a {@code Prefetcher} with the specified application.
+         * @param application the application for which the patches are prefetched.
+         */
+        Prefetcher(final T application) {
+            this.application = application;
+        }
+
+        /**
+         * Starts the prefetcher.
+         * @param period the period between two checks.
+         * @param unit the time unit of the period.
+         */
+        void start(final long period, final TimeUnit unit) {
+            this.execution = scheduler.scheduleWithFixedDelay(this, 0L, period, unit);
+        }
+
+        /**
+         * Stops the prefetcher, the patch being prefetched if any is interrupted at the next chunk.
+         */
+        void stop() {
+            this.stopped = true;
+            execution.cancel(false);
+            scheduler.shutdown();
+        }
+
+        @Override
+        public void run() {
+            if (stopped) {
+                return;
+            }
+            try {
+                prefetch();
+            } catch (ApplicationException | IOException | RuntimeException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, "Could not prefetch the last version", e);
+                }
+            }
+        }
+
+        /**
+         * Prefetches the patches allowing to upgrade to the latest version if it is more recent than the version
+         * of the application and they are not yet in the cache.
+         * @throws ApplicationException if the patches could not be downloaded.
+         * @throws IOException if the patches could not be stored.
+         */
+        private void prefetch() throws ApplicationException, IOException {
+            final Repository repository = getRepository(application);
+            final PatchCache cache = patchCache;
+            final SortedSet<String> versions = repository.getVersions();
+            if (cache == null || versions.isEmpty() || stopped
+                || repository.versionComparator().compare(application.version(), versions.last()) >= 0) {
+                return;
+            }
+            prefetch(repository, cache, planner.plan(application.version(), versions));
+        }
+
+        /**
+         * Prefetches the specified patch if it is not yet in the cache.
+         * @param repository the repository from which the patch is downloaded.
+         * @param cache the cache of patches into which the patch is downloaded.
+         * @param file the patch to prefetch.
+         * @return {@code true} if the patch is in the cache, {@code false} otherwise.
+         * @throws ApplicationException if the patch could not be downloaded.
+         * @throws IOException if the patch could not be stored.
+         */
+        private boolean prefetch(final Repository repository, final PatchCache cache, final PatchFile file)
+            throws ApplicationException, IOException {
+            final ConnectionConfiguration configuration = repository.configuration();
+            final String key = PatchCache.key(configuration, file.version(), file.fileName());
+            if (cache.contains(key)) {
+                return true;
+            } else if (!hasSpace(cache, configuration, 0L)) {
+                return false;
+            }
+            final Checksum checksum = Checksum.of(repository, file);
+            try (final PatchCache.Writer writer = cache.write(key)) {
+                if (writer == null) {
+                    // The patch is already being downloaded
+                    return false;
+                }
+                final boolean downloaded = PatchDownloader.download(repository, file, checksum, writer, null,
+                    new PatchDownloader.Listener() {
+                        /**
+                         * The amount of bytes downloaded when the space left on the disk has been checked.
+                         */
+                        private long checked;
+
+                        @Override
+                        public boolean start(final Patch patch) {
+                            this.checked = patch.offset();
+                            if (patch.length() > 0L
+                                && !hasSpace(cache, configuration, patch.length() - patch.offset())) {
+                                writer.abort();
+                                return false;
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public boolean progress(final long done) {
+                            if (stopped) {
+                                // Keep what has been downloaded to resume later
+                                return false;
+                            } else if (done - checked >= SPACE_CHECK_INTERVAL) {
+                                if (!hasSpace(cache, configuration, 0L)) {
+                                    writer.abort();
+                                    return false;
+                                }
+                                this.checked = done;
+                            }
+                            return true;
+                        }
+                    });
+                if (!downloaded) {
+                    return false;
+                }
+            }
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("The patch '%s' has been prefetched", file));
+            }
+            return true;
+        }
+
+        /**
+         * Indicates whether the specified amount of bytes can be written into the cache without using
+         * the space reserved on the disk.
+         * @param cache the cache of patches.
+         * @param configuration the configuration providing the space reserved on the disk.
+         * @param size the amount of bytes to write.
+         * @return {@code true} if there is enough space, {@code false} otherwise.
+         */
+        private boolean hasSpace(final PatchCache cache, final ConnectionConfiguration configuration,
+                                 final long size) {
+            return cache.usableSpace() - size >= configuration.prefetchReservedSpace();
+        }
+    }
+
+    /**
+     * The holder of the default executors of the tasks launched asynchronously, the executors are shared by
+     * all the version managers and use a small amount of daemon threads that are released when idle. As
+     * each task blocks a thread until it ends, the checks have their own executor such that they are not
+     * delayed by the downloads of large patches.
+     */
+    private static final class DefaultExecutor {
+        /**
+         * The default executor of the checks.
+         */
+        static final Executor CHECKS = create("gitlabvm-check");
+        /**
+         * The default executor of the other tasks like the stores.
+         */
+        static final Executor TASKS = create("gitlabvm-async");
+
+        /**
+         * Creates an executor of at most as many threads as processors with a minimum of 2 threads.
+         * @param prefix the prefix of the name of the threads.
+         * @return the new executor.
+         */
+        private static Executor create(final String prefix) {
+            final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory(prefix));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        /**
+         * Prevents instantiation.
+         */
+        private DefaultExecutor() {
+        }
+    }
 }
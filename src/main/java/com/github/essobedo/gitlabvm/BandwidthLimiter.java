@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket limiting the bandwidth used to download the patches. The bucket is filled at the rate
+ * of the limit up to the burst size, and each byte downloaded consumes one token. A download is paused
+ * as long as the bucket is in debt, so the average bandwidth never exceeds the limit while short bursts
+ * are still allowed. The limit can be changed at any time, even while patches are being downloaded.
+ * Each version manager has its own limiter, and all the downloads of the JVM are also limited by the
+ * {@link #global() global limiter}.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public final class BandwidthLimiter {
+    /**
+     * The limiter shared by all the downloads of the JVM.
+     */
+    private static final BandwidthLimiter GLOBAL = new BandwidthLimiter();
+    /**
+     * The max amount of nanoseconds to sleep at once such that a change of the limit is quickly taken
+     * into account.
+     */
+    private static final long MAX_SLEEP = TimeUnit.MILLISECONDS.toNanos(100L);
+    /**
+     * The amount of nanoseconds in one second.
+     */
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    /**
+     * The clock giving the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+    /**
+     * The max amount of bytes per second, {@code 0} if the bandwidth is not limited.
+     */
+    private long rate;
+    /**
+     * The max amount of tokens in the bucket, {@code 0} to use the rate.
+     */
+    private long burst;
+    /**
+     * The amount of tokens in the bucket, negative if the bucket is in debt.
+     */
+    private double tokens;
+    /**
+     * The time in nanoseconds of the last refill of the bucket.
+     */
+    private long refilled;
+
+    /**
+     * Constructs a {@code BandwidthLimiter} that does not limit the bandwidth.
+     */
+    BandwidthLimiter() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructs a {@code BandwidthLimiter} that does not limit the bandwidth with the specified clock.
+     * @param clock the clock giving the current time in nanoseconds.
+     */
+    BandwidthLimiter(final LongSupplier clock) {
+        this.clock = clock;
+        this.refilled = clock.getAsLong();
+    }
+
+    /**
+     * Gives the limiter shared by all the downloads of the JVM, which does not limit the bandwidth by default.
+     * @return the global limiter.
+     */
+    public static BandwidthLimiter global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Gives the max amount of bytes that can be downloaded per second.
+     * @return the max amount of bytes per second, {@code 0} if the bandwidth is not limited.
+     */
+    public synchronized long rate() {
+        return rate;
+    }
+
+    /**
+     * Gives the max amount of bytes that can be downloaded at once after a period of inactivity.
+     * @return the max amount of bytes of a burst.
+     */
+    public synchronized long burst() {
+        return burst > 0L ? burst : rate;
+    }
+
+    /**
+     * Sets the max amount of bytes that can be downloaded per second.
+     * @param rate the max amount of bytes per second, {@code 0} to stop limiting the bandwidth.
+     * @throws IllegalArgumentException if the rate is negative.
+     */
+    public synchronized void setRate(final long rate) {
+        if (rate < 0L) {
+            throw new IllegalArgumentException("The rate cannot be negative");
+        }
+        refill();
+        final boolean limited = this.rate > 0L;
+        this.rate = rate;
+        if (rate == 0L) {
+            // Release the pending downloads
+            this.tokens = 0D;
+        } else if (limited) {
+            this.tokens = Math.min(tokens, burst());
+        } else {
+            // The burst is allowed as soon as the bandwidth is limited
+            this.tokens = burst();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Sets the max amount of bytes that can be downloaded at once after a period of inactivity.
+     * @param burst the max amount of bytes of a burst, {@code 0} to use the rate which means one second
+     *              of download.
+     * @throws IllegalArgumentException if the burst is negative.
+     */
+    public synchronized void setBurst(final long burst) {
+        if (burst < 0L) {
+            throw new IllegalArgumentException("The burst cannot be negative");
+        }
+        refill();
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst());
+    }
+
+    /**
+     * Gives the max amount of bytes that should be read at once to keep the download smooth.
+     * @param length the amount of bytes that we would like to read.
+     * @return the amount of bytes to read.
+     */
+    synchronized int chunk(final int length) {
+        final long max = burst();
+        return max > 0L && max < length ? (int) max : length;
+    }
+
+    /**
+     * Consumes the specified amount of tokens and waits as long as the bucket is in debt.
+     * @param bytes the amount of bytes downloaded.
+     * @throws InterruptedIOException if the thread has been interrupted while waiting.
+     */
+    synchronized void acquire(final int bytes) throws InterruptedIOException {
+        if (rate == 0L) {
+            return;
+        }
+        refill();
+        this.tokens -= bytes;
+        while (rate > 0L && tokens < 0D) {
+            final long delay = Math.min(MAX_SLEEP, (long) Math.ceil(-tokens * NANOS_PER_SECOND / rate));
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException exception = new InterruptedIOException(
+                    "Interrupted while waiting for bandwidth");
+                exception.bytesTransferred = bytes;
+                throw exception;
+            }
+            refill();
+        }
+    }
+
+    /**
+     * Adds the tokens accumulated since the last refill according to the current rate.
+     */
+    private void refill() {
+        final long now = clock.getAsLong();
+        if (rate > 0L) {
+            tokens = Math.min(burst(), tokens + (now - refilled) * rate / NANOS_PER_SECOND);
+        }
+        this.refilled = now;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BandwidthLimiter[rate=%d, burst=%d]", rate, burst());
+    }
+}
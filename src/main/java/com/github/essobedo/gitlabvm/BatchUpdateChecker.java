@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.spi.Manageable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The class allowing to check for updates a large amount of applications at once. The applications are
+ * grouped by end point and credentials such that each group logs in only once and shares its private token
+ * and its connections, the listings are then retrieved in parallel up to a given amount of listings at the
+ * same time, the groups being interleaved to avoid having all the listings waiting for the same login.
+ * <p>
+ * The repositories are kept from one check to the next as long as the same configuration instances are
+ * provided, allowing to send conditional requests and to benefit from the time to live of the versions.
+ * Several checks can be launched at the same time, in which case they share the same repositories and
+ * the max amount of listings retrieved at the same time, the repositories kept being the ones of the last
+ * check launched.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ * @param <T> The type of applications to check.
+ */
+public final class BatchUpdateChecker<T extends Manageable> {
+    /**
+     * The executor shared by all the checkers to retrieve the listings, the amount of listings retrieved
+     * at the same time by a checker is bounded by its parallelism.
+     */
+    private static final ExecutorService CHECKS = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("gitlabvm-batch"));
+    /**
+     * The end point of the gitlab repository.
+     */
+    private final String endpoint;
+    /**
+     * The max amount of listings retrieved at the same time.
+     */
+    private final int parallelism;
+    /**
+     * The listings that can still be retrieved at the same time by all the checks in progress.
+     */
+    private final Semaphore listings;
+    /**
+     * The private tokens shared by the repositories using the same end point and credentials.
+     */
+    private final Sessions sessions = new Sessions();
+    /**
+     * The statistics of the cache of versions of all the repositories.
+     */
+    private final CacheStatistics versionsStatistics = new CacheStatistics();
+    /**
+     * The repositories used during the last check per configuration, guarded by this checker.
+     */
+    private Map<ConnectionConfiguration, Repository> repositories = new IdentityHashMap<>();
+
+    /**
+     * Constructs a {@code BatchUpdateChecker} with the real end point to gitlab and the specified max
+     * amount of listings retrieved at the same time.
+     * @param parallelism the max amount of listings retrieved at the same time.
+     */
+    public BatchUpdateChecker(final int parallelism) {
+        this("https://gitlab.com", parallelism);
+    }
+
+    /**
+     * Constructs a {@code BatchUpdateChecker} with the specified end point to gitlab and max amount of
+     * listings retrieved at the same time.
+     * @param endpoint the end point to gitlab to use.
+     * @param parallelism the max amount of listings retrieved at the same time.
+     */
+    BatchUpdateChecker(final String endpoint, final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+        this.endpoint = endpoint;
+        this.parallelism = parallelism;
+        this.listings = new Semaphore(parallelism);
+    }
+
+    /**
+     * Gives the statistics of the cache of versions of all the applications checked.
+     * @return the statistics of the cache of versions.
+     */
+    public CacheStatistics versionsCacheStatistics() {
+        return versionsStatistics;
+    }
+
+    /**
+     * Checks for updates the specified applications.
+     * @param applications the applications to check with the configuration to use to access to their
+     *                     gitlab repository.
+     * @return the result of the check of each application in the same order as the given applications.
+     * @throws ApplicationException if the thread has been interrupted while waiting for the results.
+     */
+    public Map<T, Result> check(final Map<T, ConnectionConfiguration> applications) throws ApplicationException {
+        final Map<T, Result> results = new LinkedHashMap<>();
+        final Map<String, List<Check<T>>> groups = new LinkedHashMap<>();
+        final int total = prepare(applications, results, groups);
+        if (total == 0) {
+            return results;
+        }
+        // Each worker checks the next application to check until all the applications have been checked
+        final List<Check<T>> checks = interleave(groups.values());
+        final AtomicInteger next = new AtomicInteger();
+        final List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0, length = Math.min(parallelism, total); i < length; i++) {
+                workers.add(CHECKS.submit(() -> {
+                    for (int index = next.getAndIncrement(); index < checks.size()
+                        && !Thread.currentThread().isInterrupted(); index = next.getAndIncrement()) {
+                        final Check<T> check = checks.get(index);
+                        listings.acquire();
+                        try {
+                            check.result = check(check.repository, check.application);
+                        } finally {
+                            listings.release();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> worker : workers) {
+                worker.get();
+            }
+            for (final Check<T> check : checks) {
+                results.put(check.application, check.result);
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while checking for updates", e);
+        } catch (ExecutionException e) {
+            throw new ApplicationException("Could not check for updates", e.getCause());
+        } finally {
+            // Stops the workers that are still running in case of failure
+            for (final Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Groups the specified applications by end point and credentials with the repository of their
+     * configuration, the repositories of the previous check are reused and replaced with the repositories
+     * of this check.
+     * @param applications the applications to check with their configuration.
+     * @param results the results into which an entry is added for each application, with the error if its
+     *                repository could not be created.
+     * @param groups the groups into which the applications to check are added.
+     * @return the total amount of applications to check.
+     */
+    private synchronized int prepare(final Map<T, ConnectionConfiguration> applications,
+                                     final Map<T, Result> results, final Map<String, List<Check<T>>> groups) {
+        final Map<ConnectionConfiguration, Repository> current = new IdentityHashMap<>();
+        int total = 0;
+        for (final Map.Entry<T, ConnectionConfiguration> entry : applications.entrySet()) {
+            final ConnectionConfiguration configuration = entry.getValue();
+            results.put(entry.getKey(), null);
+            Repository repository = current.get(configuration);
+            if (repository == null) {
+                repository = repositories.get(configuration);
+                if (repository == null) {
+                    try {
+                        repository = new Repository(endpoint, configuration, versionsStatistics,
+                            new BandwidthLimiter(), MetricsListener.NONE, sessions);
+                    } catch (ApplicationException e) {
+                        results.put(entry.getKey(), new Result(null, e));
+                        continue;
+                    }
+                }
+                current.put(configuration, repository);
+            }
+            groups.computeIfAbsent(Sessions.key(endpoint, configuration), key -> new ArrayList<>())
+                .add(new Check<>(entry.getKey(), repository));
+            total++;
+        }
+        this.repositories = current;
+        return total;
+    }
+
+    /**
+     * Checks for update the specified application.
+     * @param repository the repository of the application.
+     * @param application the application to check.
+     * @return the result of the check, the version to which the application can be upgraded or the reason
+     * why the versions could not be retrieved.
+     */
+    private static Result check(final Repository repository, final Manageable application) {
+        try {
+            final SortedSet<String> versions = repository.getVersions();
+            final String last = versions.last();
+            return new Result(repository.versionComparator().compare(application.version(), last) < 0 ? last
+                : null, null);
+        } catch (ApplicationException e) {
+            return new Result(null, e);
+        } catch (RuntimeException e) {
+            return new Result(null, new ApplicationException("Could not check for updates", e));
+        }
+    }
+
+    /**
+     * Interleaves the elements of the specified groups, the first element of each group comes first then
+     * the second element of each group and so on.
+     * @param groups the groups to interleave.
+     * @param <E> the type of the elements.
+     * @return the elements interleaved.
+     */
+    static <E> List<E> interleave(final Collection<List<E>> groups) {
+        int total = 0;
+        for (final List<E> group : groups) {
+            total += group.size();
+        }
+        final List<E> result = new ArrayList<>(total);
+        for (int i = 0; result.size() < total; i++) {
+            for (final List<E> group : groups) {
+                if (i < group.size()) {
+                    result.add(group.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The result of the check for update of an application.
+     */
+    public static final class Result {
+        /**
+         * The version to which the application can be upgraded, {@code null} if none.
+         */
+        private final String version;
+        /**
+         * The reason why the check failed, {@code null} if it succeeded.
+         */
+        private final ApplicationException error;
+
+        /**
+         * Constructs a {@code Result} with the specified version and error.
+         * @param version the version to which the application can be upgraded, {@code null} if none.
+         * @param error the reason why the check failed, {@code null} if it succeeded.
+         */
+        Result(final String version, final ApplicationException error) {
+            this.version = version;
+            this.error = error;
+        }
+
+        /**
+         * Gives the version to which the application can be upgraded.
+         * @return the new version, {@code null} if the application is up to date or the check failed.
+         */
+        public String version() {
+            return version;
+        }
+
+        /**
+         * Gives the reason why the check failed.
+         * @return the reason of the failure, {@code null} if the check succeeded.
+         */
+        public ApplicationException error() {
+            return error;
+        }
+
+        /**
+         * Indicates whether a new version is available.
+         * @return {@code true} if the application can be upgraded, {@code false} otherwise.
+         */
+        public boolean isUpdateAvailable() {
+            return version != null;
+        }
+
+        /**
+         * Indicates whether the check failed.
+         * @return {@code true} if the check failed, {@code false} otherwise.
+         */
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        @Override
+        public String toString() {
+            return error == null ? String.format("Result{version=%s}", version)
+                : String.format("Result{error=%s}", error.getMessage());
+        }
+    }
+
+    /**
+     * The check for update of an application.
+     * @param <T> The type of application to check.
+     */
+    private static final class Check<T> {
+        /**
+         * The application to check.
+         */
+        private final T application;
+        /**
+         * The repository of the application.
+         */
+        private final Repository repository;
+        /**
+         * The result of the check, {@code null} if not yet checked.
+         */
+        private Result result;
+
+        /**
+         * Constructs a {@code Check} with the specified application and repository.
+         * @param application the application to check.
+         * @param repository the repository of the application.
+         */
+        Check(final T application, final Repository repository) {
+            this.application = application;
+            this.repository = repository;
+        }
+    }
+}
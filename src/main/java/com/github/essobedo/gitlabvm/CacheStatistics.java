@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a cache, allowing to know how many requests could be served from the cache.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public final class CacheStatistics {
+    /**
+     * The total amount of requests that could be served from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * The total amount of requests that could not be served from the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Notifies that a request could be served from the cache.
+     */
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Notifies that a request could not be served from the cache.
+     */
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Gives the total amount of requests that could be served from the cache.
+     * @return the total amount of cache hits.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Gives the total amount of requests that could not be served from the cache.
+     * @return the total amount of cache misses.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Gives the ratio of requests that could be served from the cache.
+     * @return the hit ratio between {@code 0} and {@code 1}, {@code 0} if no request has been made yet.
+     */
+    public double hitRatio() {
+        final long hitCount = hits();
+        final long total = hitCount + misses();
+        return total == 0L ? 0d : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStatistics{hits=%d, misses=%d}", hits(), misses());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+
+/**
+ * The last list of versions retrieved from gitlab with the pages of the tree from which they have been
+ * extracted, allowing to send conditional requests, and the time at which they have been retrieved, allowing
+ * to serve them without accessing to gitlab while they are fresh.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class CachedVersions {
+    /**
+     * The id of the project from which the versions have been retrieved.
+     */
+    private final String projectId;
+    /**
+     * The name of the branch from which the versions have been retrieved.
+     */
+    private final String branch;
+    /**
+     * The pages of the tree from which the versions have been extracted.
+     */
+    private final List<TreePage> pages;
+    /**
+     * The versions retrieved.
+     */
+    private final SortedSet<String> versions;
+    /**
+     * The value of {@link System#nanoTime()} when the versions have been retrieved or validated.
+     */
+    private final long retrieved;
+    /**
+     * Indicates whether the versions have been invalidated and must not be served anymore without
+     * accessing to gitlab.
+     */
+    private final boolean invalidated;
+
+    /**
+     * Constructs a {@code CachedVersions} with the specified parameters.
+     * @param projectId the id of the project from which the versions have been retrieved.
+     * @param branch the name of the branch from which the versions have been retrieved.
+     * @param pages the pages of the tree from which the versions have been extracted.
+     * @param versions the versions retrieved.
+     * @param retrieved the value of {@link System#nanoTime()} when the versions have been retrieved.
+     */
+    CachedVersions(final String projectId, final String branch, final List<TreePage> pages,
+                   final SortedSet<String> versions, final long retrieved) {
+        this(projectId, branch, pages, versions, retrieved, false);
+    }
+
+    /**
+     * Constructs a {@code CachedVersions} with the specified parameters.
+     * @param projectId the id of the project from which the versions have been retrieved.
+     * @param branch the name of the branch from which the versions have been retrieved.
+     * @param pages the pages of the tree from which the versions have been extracted.
+     * @param versions the versions retrieved.
+     * @param retrieved the value of {@link System#nanoTime()} when the versions have been retrieved.
+     * @param invalidated {@code true} if the versions have been invalidated, {@code false} otherwise.
+     */
+    private CachedVersions(final String projectId, final String branch, final List<TreePage> pages,
+                           final SortedSet<String> versions, final long retrieved, final boolean invalidated) {
+        this.projectId = projectId;
+        this.branch = branch;
+        this.pages = pages;
+        this.versions = versions;
+        this.retrieved = retrieved;
+        this.invalidated = invalidated;
+    }
+
+    /**
+     * Gives a copy of these versions that have been validated by gitlab at the specified time.
+     * @param now the value of {@link System#nanoTime()} when the versions have been validated.
+     * @return the versions validated.
+     */
+    CachedVersions validated(final long now) {
+        return new CachedVersions(projectId, branch, pages, versions, now, false);
+    }
+
+    /**
+     * Gives a copy of these versions that can only be used to send conditional requests.
+     * @return the versions invalidated.
+     */
+    CachedVersions invalidated() {
+        return new CachedVersions(projectId, branch, pages, versions, retrieved, true);
+    }
+
+    /**
+     * Indicates whether the versions have been invalidated.
+     * @return {@code true} if the versions have been invalidated, {@code false} otherwise.
+     */
+    boolean isInvalidated() {
+        return invalidated;
+    }
+
+    /**
+     * Gives the amount of time elapsed since the versions have been retrieved or validated.
+     * @param now the current value of {@link System#nanoTime()}.
+     * @return the age of the versions in nanoseconds.
+     */
+    long age(final long now) {
+        return now - retrieved;
+    }
+
+    /**
+     * Indicates whether the versions have been retrieved from the specified project and branch.
+     * @param projectId the id of the project to check.
+     * @param branch the name of the branch to check.
+     * @return {@code true} if the versions come from the given project and branch, {@code false} otherwise.
+     */
+    boolean matches(final String projectId, final String branch) {
+        return Objects.equals(this.projectId, projectId) && Objects.equals(this.branch, branch);
+    }
+
+    /**
+     * Indicates whether the server provided for each page at least one validator allowing to send
+     * a conditional request.
+     * @return {@code true} if a conditional request can be sent for each page, {@code false} otherwise.
+     */
+    boolean isValidatable() {
+        for (final TreePage page : pages) {
+            if (!page.isValidatable()) {
+                return false;
+            }
+        }
+        return !pages.isEmpty();
+    }
+
+    /**
+     * Gives the page of the tree corresponding to the specified number.
+     * @param number the number of the page starting from {@code 1}.
+     * @return the page of the tree, {@code null} if there is no such page.
+     */
+    TreePage page(final int number) {
+        return number > pages.size() ? null : pages.get(number - 1);
+    }
+
+    /**
+     * Gives the total amount of pages of the tree from which the versions have been extracted.
+     * @return the total amount of pages.
+     */
+    int totalPages() {
+        return pages.size();
+    }
+
+    /**
+     * Gives the versions retrieved.
+     * @return the versions retrieved.
+     */
+    SortedSet<String> versions() {
+        return versions;
+    }
+}
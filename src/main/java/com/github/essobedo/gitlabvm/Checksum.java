@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * The checksum of a patch computed while its bytes are copied such that the integrity of the patch can be
+ * checked without reading it a second time. The checksum is computed on the bytes of the file as stored in
+ * the branch dedicated to the releases, so before any decompression.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class Checksum {
+    /**
+     * The size of the buffer used to digest a stream.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * The patch whose checksum is computed.
+     */
+    private final PatchFile file;
+    /**
+     * The digest computing the checksum.
+     */
+    private final MessageDigest digest;
+    /**
+     * The expected checksum.
+     */
+    private final byte[] expected;
+
+    /**
+     * Constructs a {@code Checksum} with the specified parameters.
+     * @param file the patch whose checksum is computed.
+     * @param digest the digest computing the checksum.
+     * @param expected the expected checksum.
+     */
+    private Checksum(final PatchFile file, final MessageDigest digest, final byte[] expected) {
+        this.file = file;
+        this.digest = digest;
+        this.expected = expected.clone();
+    }
+
+    /**
+     * Creates the checksum of the specified patch if the integrity of the patches must be checked according
+     * to {@link ConnectionConfiguration#checksumAlgorithm()}, the expected checksum is retrieved from the
+     * checksum file stored next to the patch.
+     * @param repository the repository from which the expected checksum is retrieved.
+     * @param file the patch whose checksum must be computed.
+     * @return the checksum of the patch, {@code null} if the integrity of the patches is not checked.
+     * @throws ApplicationException if the algorithm is not supported or if the expected checksum could not
+     * be retrieved.
+     */
+    static Checksum of(final Repository repository, final PatchFile file) throws ApplicationException {
+        final String algorithm = repository.configuration().checksumAlgorithm();
+        if (algorithm == null) {
+            return null;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ApplicationException(String.format("The checksum algorithm '%s' is not supported",
+                algorithm), e);
+        }
+        return new Checksum(file, digest, repository.getChecksum(file.version(), file.fileName()));
+    }
+
+    /**
+     * Gives the name of the checksum file of the specified patch, which is the name of the patch followed by
+     * the name of the algorithm in lower case without dashes such as {@code patch.zip.sha256}.
+     * @param fileName the name of the patch.
+     * @param algorithm the name of the algorithm.
+     * @return the name of the checksum file.
+     */
+    static String fileName(final String fileName, final String algorithm) {
+        return String.format("%s.%s", fileName, algorithm.replace("-", "").toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Parses the content of a checksum file, which is the checksum in hexadecimal followed optionally by
+     * the name of the file like in the files generated by {@code sha256sum}.
+     * @param content the content of the checksum file.
+     * @return the checksum.
+     * @throws IllegalArgumentException if the content is not a valid checksum.
+     */
+    static byte[] parse(final String content) {
+        final String hex = content.trim().split("\\s+", 2)[0];
+        if (hex.isEmpty() || hex.length() % 2 != 0) {
+            throw new IllegalArgumentException(String.format("Invalid checksum '%s'", hex));
+        }
+        final byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            final int high = Character.digit(hex.charAt(2 * i), 16);
+            final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high == -1 || low == -1) {
+                throw new IllegalArgumentException(String.format("Invalid checksum '%s'", hex));
+            }
+            result[i] = (byte) (high << 4 | low);
+        }
+        return result;
+    }
+
+    /**
+     * Wraps the specified stream such that the bytes read are digested.
+     * @param inputStream the stream of the bytes of the patch.
+     * @return the stream digesting the bytes read.
+     */
+    InputStream wrap(final InputStream inputStream) {
+        return new DigestInputStream(inputStream, digest);
+    }
+
+    /**
+     * Reads the remaining bytes of the specified stream returned by {@link #wrap(InputStream)}, that could
+     * have been left unread by a decoder, then checks that the checksum matches with the expected checksum.
+     * @param wrapped the stream digesting the bytes read.
+     * @throws IOException if the stream could not be read.
+     * @throws ApplicationException if the checksums do not match.
+     */
+    void verify(final InputStream wrapped) throws IOException, ApplicationException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (wrapped.read(buffer) != -1) {
+            // The bytes are digested by the stream
+        }
+        verify();
+    }
+
+    /**
+     * Checks that the checksum of the bytes digested so far matches with the expected checksum.
+     * @throws ApplicationException if the checksums do not match.
+     */
+    void verify() throws ApplicationException {
+        if (!MessageDigest.isEqual(expected, digest.digest())) {
+            throw new ApplicationException(String.format("The checksum of the patch '%s' does not match, "
+                + "the patch is corrupted", file));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The compression formats of the patches stored into the branch dedicated to the releases, the format of
+ * a patch is deduced from the suffix of its file name. The patches are decompressed on the fly while being
+ * copied such that the application always gets the raw patch. The format {@code xz} requires the library
+ * {@code org.tukaani:xz} and the format {@code zstd} requires the library {@code io.airlift:aircompressor},
+ * both are pure Java libraries loaded by reflection if available in the class path.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+enum Compression {
+    /**
+     * The patch is not compressed.
+     */
+    NONE("", null),
+    /**
+     * The patch is compressed with {@code gzip}.
+     */
+    GZIP(".gz", null),
+    /**
+     * The patch is compressed with {@code xz}.
+     */
+    XZ(".xz", "org.tukaani.xz.XZInputStream"),
+    /**
+     * The patch is compressed with {@code zstd}.
+     */
+    ZSTD(".zst", "io.airlift.compress.zstd.ZstdInputStream");
+
+    /**
+     * The size of the buffer of the {@code gzip} decoder.
+     */
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    /**
+     * The suffix of the name of the files compressed with this format.
+     */
+    private final String suffix;
+    /**
+     * The name of the class of the decoder to load by reflection, {@code null} if the decoder is provided
+     * by the JDK.
+     */
+    private final String decoder;
+    /**
+     * The constructor of the decoder, {@code null} if it has not been loaded yet or it is not available.
+     */
+    private volatile Constructor<? extends InputStream> constructor;
+    /**
+     * Indicates whether we already tried to load the decoder.
+     */
+    private volatile boolean loaded;
+
+    /**
+     * Constructs a {@code Compression} with the specified parameters.
+     * @param suffix the suffix of the name of the files compressed with this format.
+     * @param decoder the name of the class of the decoder to load by reflection, {@code null} if the
+     *                decoder is provided by the JDK.
+     */
+    Compression(final String suffix, final String decoder) {
+        this.suffix = suffix;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Gives the compression format of the specified file according to the suffix of its name.
+     * @param fileName the name of the file.
+     * @return the compression format of the file, {@link #NONE} if the suffix is unknown.
+     */
+    static Compression of(final String fileName) {
+        final String name = fileName.toLowerCase(Locale.ROOT);
+        for (final Compression compression : values()) {
+            if (compression != NONE && name.endsWith(compression.suffix)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Indicates whether the files compressed with this format can be decompressed.
+     * @return {@code true} if the decoder is available, {@code false} otherwise.
+     */
+    boolean isAvailable() {
+        return decoder == null || constructor() != null;
+    }
+
+    /**
+     * Wraps the specified stream of compressed bytes into a stream of raw bytes.
+     * @param inputStream the stream of compressed bytes.
+     * @return the stream of raw bytes.
+     * @throws IOException if the decoder could not be created or is not available.
+     */
+    InputStream decode(final InputStream inputStream) throws IOException {
+        if (this == NONE) {
+            return inputStream;
+        } else if (this == GZIP) {
+            return new GZIPInputStream(inputStream, GZIP_BUFFER_SIZE);
+        }
+        final Constructor<? extends InputStream> decoderConstructor = constructor();
+        if (decoderConstructor == null) {
+            throw new IOException(String.format("No decoder of the format '%s' could be found, please add '%s' "
+                + "to the class path", name(), decoder));
+        }
+        try {
+            return decoderConstructor.newInstance(inputStream);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.format("Could not create the decoder of the format '%s'", name()),
+                e.getCause());
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IOException(String.format("Could not create the decoder of the format '%s'", name()), e);
+        }
+    }
+
+    /**
+     * Gives the constructor of the decoder, it is loaded the first time it is requested.
+     * @return the constructor of the decoder, {@code null} if it is not available.
+     */
+    private Constructor<? extends InputStream> constructor() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    try {
+                        this.constructor = Class.forName(decoder, true, Compression.class.getClassLoader())
+                            .asSubclass(InputStream.class).getConstructor(InputStream.class);
+                    } catch (ClassNotFoundException | NoSuchMethodException | ClassCastException e) {
+                        // The decoder is not available
+                    }
+                    this.loaded = true;
+                }
+            }
+        }
+        return constructor;
+    }
+}
@@ -18,7 +18,10 @@
  */
 package com.github.essobedo.gitlabvm;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * The configuration needed to access to a gitlab repository.
@@ -63,45 +66,220 @@ public interface ConnectionConfiguration {
      * @return the name of the patch.
      */
     String patchFileName();
+    /**
+     * Gives the max total amount of connections to the end point that can be used at the same time to send
+     * a request, the bodies streamed once their response has been received like the patches are not counted.
+     * The connections are shared by all the applications accessing to the same end point such that the
+     * highest value of the applications is taken into account.
+     * @return the max total amount of connections that can be used at the same time, 5 by default which is
+     * the default total amount of connections that are kept alive per destination.
+     */
+    default int maxConnections() {
+        return 5;
+    }
+    /**
+     * Gives the name of the delta patch allowing to upgrade from the specified version to the version of
+     * the directory in which it is stored, for example {@code from-<version>.patch}. When enabled, the delta
+     * patch from the installed version stored in the directory of the latest version is downloaded instead of
+     * the full patch if it is smaller, only one patch is stored into the target stream such that the delta
+     * patches must allow to upgrade directly to the latest version.
+     * @param fromVersion the version id from which the delta patch allows to upgrade.
+     * @return the name of the delta patch, {@code null} to disable the delta patches which is the default
+     * behavior.
+     */
+    default String deltaPatchFileName(final String fromVersion) {
+        return null;
+    }
+    /**
+     * Gives the file in which the private token is stored encrypted with a key derived from the password,
+     * allowing to skip the login after a restart. The private tokens of the mirrors are stored in files next
+     * to it whose names start with the name of this file.
+     * @return the file in which the private token is stored, {@code null} to not store the private token
+     * which is the default behavior.
+     */
+    default File tokenCacheFile() {
+        return null;
+    }
+    /**
+     * Gives the directory in which the downloaded patches are cached, allowing to avoid downloading several
+     * times the same patch. The directory can be shared between several applications.
+     * @return the directory of the cache of patches, {@code null} to disable the cache which is the default
+     * behavior.
+     */
+    default File patchCacheDirectory() {
+        return null;
+    }
+    /**
+     * Gives the max total size of the patches that can be kept in the cache, once exceeded the least
+     * recently used patches are evicted.
+     * @return the max total size of the cache of patches in bytes, 512 Mo by default.
+     */
+    default long patchCacheMaxSize() {
+        return 512L * 1024L * 1024L;
+    }
+    /**
+     * Gives the amount of disk space that must remain available on the partition of the cache of patches
+     * once a patch has been prefetched, a patch is not prefetched if it would use this space.
+     * @return the amount of disk space to keep available in bytes, 100 Mo by default.
+     */
+    default long prefetchReservedSpace() {
+        return 100L * 1024L * 1024L;
+    }
+    /**
+     * Gives the algorithm of the checksums allowing to check the integrity of the patches while they are
+     * downloaded. The checksum of a patch is read from the file stored next to it whose name is the name of
+     * the patch followed by the name of the algorithm in lower case without dashes, such as
+     * {@code patch.zip.sha256} for {@code SHA-256}, in the format of {@code sha256sum}.
+     * @return the name of the algorithm as expected by {@link java.security.MessageDigest}, {@code null}
+     * to disable the integrity checks which is the default behavior.
+     */
+    default String checksumAlgorithm() {
+        return null;
+    }
+    /**
+     * Gives the initial max amount of bytes per second that the version manager can use to download the
+     * patches, it can then be changed at runtime thanks to {@link AbstractVersionManager#bandwidthLimiter()}.
+     * All the downloads are also limited by {@link BandwidthLimiter#global()}.
+     * @return the max amount of bytes per second, {@code 0} to not limit the bandwidth which is the default
+     * behavior.
+     */
+    default long downloadRateLimit() {
+        return 0L;
+    }
+    /**
+     * Gives the initial max amount of bytes that the version manager can download at once after a period of
+     * inactivity when the bandwidth is limited.
+     * @return the max amount of bytes of a burst, {@code 0} to allow one second of download which is the
+     * default behavior.
+     */
+    default long downloadBurstSize() {
+        return 0L;
+    }
+    /**
+     * Gives the size of the buffer used to copy the content of a patch into the target stream.
+     * @return the size of the buffer in bytes, 4 Ko by default.
+     */
+    default int downloadBufferSize() {
+        return 4096;
+    }
+    /**
+     * Indicates whether the responses of the server can be compressed with {@code gzip} when it makes
+     * sense, which is the case of the listings and of the patches that are neither compressed nor
+     * downloaded by ranges.
+     * @return {@code true} to send the header {@code Accept-Encoding: gzip} which is the default behavior,
+     * {@code false} otherwise.
+     */
+    default boolean compressedTransfer() {
+        return true;
+    }
+    /**
+     * Gives the total amount of segments of a patch that can be downloaded in parallel, knowing that
+     * each segment is downloaded with its own connection. This allows to get a better throughput on high
+     * latency links, if the server does not support range requests, the patch is downloaded with one
+     * single connection.
+     * @return the total amount of segments that can be downloaded in parallel, {@code 1} to download
+     * the patch with one single connection which is the default behavior.
+     */
+    default int downloadSegments() {
+        return 1;
+    }
+    /**
+     * Gives the size of the segments of a patch when it is downloaded in parallel. Up to
+     * {@link #downloadSegments()} segments are kept in memory at the same time, knowing that the segments
+     * of all the downloads cannot take more than 64 Mo in total.
+     * @return the size of the segments in bytes, 4 Mo by default.
+     */
+    default int downloadSegmentSize() {
+        return 4 * 1024 * 1024;
+    }
+    /**
+     * Gives the total amount of entries of the tree of the branch to retrieve per page.
+     * @return the total amount of entries per page, 100 by default which is the max value allowed by gitlab.
+     */
+    default int listingPageSize() {
+        return 100;
+    }
+    /**
+     * Gives the total amount of pages of the tree of the branch that can be retrieved in parallel once the
+     * total amount of pages is known.
+     * @return the total amount of pages that can be retrieved in parallel, 4 by default.
+     */
+    default int listingParallelism() {
+        return 4;
+    }
+    /**
+     * Gives the end points of the mirrors of gitlab, such as geo replicas, that can be used in addition to
+     * the end point of the version manager. The requests are sent to the fastest healthy end point and
+     * fail over to the next ones, the same login and password are used for all the end points.
+     * @return the end points of the mirrors, none by default.
+     */
+    default List<String> mirrorEndpoints() {
+        return Collections.emptyList();
+    }
+    /**
+     * Gives the interval after which an end point that has not been used is probed again to measure its
+     * round trip time, only used if mirrors are defined.
+     * @return the interval between two probes in milliseconds, 1 minute by default, {@code 0} to never
+     * probe the end points.
+     */
+    default long mirrorProbeInterval() {
+        return 60L * 1000L;
+    }
+    /**
+     * Gives the percentile of the response times of the previous requests after which a duplicate request
+     * is sent if no response has been received, the first response received is then used. Only the
+     * requests of the listings and of the patches are hedged, once enough response times have been observed.
+     * @return the percentile between {@code 0} and {@code 1} such as {@code 0.95}, {@code 0} to disable the
+     * hedging which is the default behavior.
+     */
+    default double hedgePercentile() {
+        return 0d;
+    }
+    /**
+     * Gives the max ratio of duplicate requests that can be sent due to the hedging, to bound the
+     * additional load of the server.
+     * @return the max ratio of duplicate requests, 5% by default.
+     */
+    default double hedgeBudget() {
+        return 0.05d;
+    }
+    /**
+     * Gives the amount of time during which the versions retrieved are considered as fresh and are served
+     * without accessing to gitlab.
+     * @return the time to live of the versions in milliseconds, {@code 0} to access to gitlab for each check
+     * which is the default behavior.
+     */
+    default long versionsTtl() {
+        return 0L;
+    }
+    /**
+     * Gives the amount of time after the expiration of the versions during which they are still served while
+     * being refreshed in the background, beyond it the callers wait for the versions to be refreshed.
+     * @return the max staleness of the versions in milliseconds, 1 hour by default.
+     */
+    default long versionsMaxStale() {
+        return 60L * 60L * 1000L;
+    }
+    /**
+     * Gives the total amount of requests that a {@link PatchRelay} can process at the same time.
+     * @return the total amount of threads of the relay, 16 by default.
+     */
+    default int relayThreads() {
+        return 16;
+    }
+    /**
+     * Gives the amount of time during which a {@link PatchRelay} serves the listings without checking
+     * gitlab again.
+     * @return the time to live of the listings in milliseconds, 30 seconds by default.
+     */
+    default long relayListingTtl() {
+        return 30L * 1000L;
+    }
     /**
      * Gives the comparator of version ids to use to be able to identify the latest version.
      * @return the comparator of version ids.
      */
-    @SuppressWarnings("PMD.NPathComplexity")
     default Comparator<String> versionComparator() {
-        return (version1, version2) -> {
-            final String[] versions1 = version1.split("\\.");
-            final String[] versions2 = version2.split("\\.");
-            final String defaultValue = "*";
-            final String snapshot = "-SNAPSHOT";
-            int result = 0;
-            for (int i = 0, length = Math.max(versions1.length, versions2.length); result == 0 && i < length; i++) {
-                String vElement1 = i < versions1.length ? versions1[i] : defaultValue;
-                String vElement2 = i < versions2.length ? versions2[i] : defaultValue;
-                final boolean snapshot1 = vElement1.endsWith(snapshot);
-                if (snapshot1) {
-                    vElement1 = vElement1.substring(0, vElement1.length() - snapshot.length() + 1);
-                } else {
-                    vElement1 += "_";
-                }
-                final boolean snapshot2 = vElement2.endsWith(snapshot);
-                if (snapshot2) {
-                    vElement2 = vElement2.substring(0, vElement2.length() - snapshot.length() + 1);
-                } else {
-                    vElement2 += "_";
-                }
-                if (vElement1.length() != vElement2.length()) {
-                    final int targetLength = Math.max(vElement1.length(), vElement2.length());
-                    for (int j = vElement1.length(); j < targetLength; j++) {
-                        vElement1 = defaultValue + vElement1;
-                    }
-                    for (int j = vElement2.length(); j < targetLength; j++) {
-                        vElement2 = defaultValue + vElement2;
-                    }
-                }
-                result = vElement1.compareTo(vElement2);
-            }
-            return result;
-        };
+        return VersionKey.COMPARATOR;
     }
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The engine used to copy the content of a patch into the target stream chunk by chunk. If the target
+ * stream is backed by a channel, the bytes are copied with a direct buffer allocated once per thread whose
+ * used size grows as long as the source can fill it, and the patches read from the cache are transferred by
+ * the file system without going through the heap. Otherwise the bytes are copied with a heap buffer of a
+ * fixed size.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+abstract class CopyEngine {
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(CopyEngine.class.getName());
+    /**
+     * The max size of the buffers used to copy bytes into a channel.
+     */
+    static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The direct buffers of the max size used to copy bytes into a channel, one per thread since the copies
+     * of a thread cannot overlap.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAX_BUFFER_SIZE));
+
+    /**
+     * Gives the engine to use to copy bytes into the specified target stream.
+     * @param target the stream into which the bytes are copied.
+     * @param bufferSize the size of the buffer used to copy the bytes, which is the initial size of the buffer
+     *                   if the target stream is backed by a channel.
+     * @return the engine allowing to copy bytes into the target stream.
+     */
+    static CopyEngine of(final OutputStream target, final int bufferSize) {
+        if (target instanceof FileOutputStream) {
+            return new ChannelEngine(((FileOutputStream) target).getChannel(), bufferSize);
+        } else if (target instanceof WritableByteChannel) {
+            return new ChannelEngine((WritableByteChannel) target, bufferSize);
+        }
+        return new StreamEngine(target, bufferSize);
+    }
+
+    /**
+     * Copies the next chunk of bytes of the specified stream into the target.
+     * @param source the stream from which the bytes are read.
+     * @return the amount of bytes copied, {@code -1} if the end of the source has been reached.
+     * @throws IOException if the bytes could not be copied.
+     */
+    abstract int copy(InputStream source) throws IOException;
+
+    /**
+     * Transfers up to the specified amount of bytes of the given file into the target.
+     * @param source the file from which the bytes are read.
+     * @param position the position in the file of the first byte to transfer.
+     * @param count the max amount of bytes to transfer.
+     * @return the amount of bytes transferred.
+     * @throws IOException if the bytes could not be transferred.
+     */
+    abstract long transfer(FileChannel source, long position, long count) throws IOException;
+
+    /**
+     * Gives the amount of bytes that should be written into the target, if it is a file it is extended to
+     * its expected size at once. This is only a size hint, no disk space is reserved since the extended file
+     * is sparse until it is written such that a lack of space is only detected while writing. The size of
+     * the file is adjusted by {@link #finish()} if less bytes have been written.
+     * @param size the amount of bytes that should be written.
+     * @throws IOException if the file could not be extended.
+     */
+    void sizeHint(final long size) throws IOException {
+        // Only possible with a file
+    }
+
+    /**
+     * Truncates the part of the file extended by {@link #sizeHint(long)} that has not been written.
+     * @throws IOException if the file could not be truncated.
+     */
+    void finish() throws IOException {
+        // Only possible with a file
+    }
+
+    /**
+     * The engine copying the bytes into a stream with a heap buffer.
+     */
+    private static final class StreamEngine extends CopyEngine {
+        /**
+         * The stream into which the bytes are copied.
+         */
+        private final OutputStream target;
+        /**
+         * The buffer used to copy the bytes.
+         */
+        private final byte[] buffer;
+        /**
+         * The channel writing into the target stream used to transfer files, {@code null} until needed.
+         */
+        private WritableByteChannel channel;
+
+        /**
+         * Constructs a {@code StreamEngine} with the specified parameters.
+         * @param target the stream into which the bytes are copied.
+         * @param bufferSize the size of the buffer used to copy the bytes.
+         */
+        StreamEngine(final OutputStream target, final int bufferSize) {
+            this.target = target;
+            this.buffer = new byte[bufferSize];
+        }
+
+        @Override
+        int copy(final InputStream source) throws IOException {
+            final int length = source.read(buffer);
+            if (length > 0) {
+                target.write(buffer, 0, length);
+            }
+            return length;
+        }
+
+        @Override
+        long transfer(final FileChannel source, final long position, final long count) throws IOException {
+            if (channel == null) {
+                this.channel = Channels.newChannel(target);
+            }
+            return source.transferTo(position, count, channel);
+        }
+    }
+
+    /**
+     * The engine copying the bytes into a channel with a direct buffer whose used size is adapted to the
+     * throughput of the source.
+     */
+    private static final class ChannelEngine extends CopyEngine {
+        /**
+         * The channel into which the bytes are copied.
+         */
+        private final WritableByteChannel target;
+        /**
+         * The target channel if it is a file, {@code null} otherwise.
+         */
+        private final FileChannel file;
+        /**
+         * The amount of bytes of the buffer used to copy the bytes.
+         */
+        private int chunkSize;
+        /**
+         * The last stream from which bytes have been copied.
+         */
+        private InputStream source;
+        /**
+         * The channel reading from the last source.
+         */
+        private ReadableByteChannel sourceChannel;
+        /**
+         * The position in the file of the end of the extended part, {@code -1} if the file is not extended.
+         */
+        private long extended = -1L;
+
+        /**
+         * Constructs a {@code ChannelEngine} with the specified parameters.
+         * @param target the channel into which the bytes are copied.
+         * @param bufferSize the initial size of the buffer used to copy the bytes.
+         */
+        ChannelEngine(final WritableByteChannel target, final int bufferSize) {
+            this.target = target;
+            this.file = target instanceof FileChannel ? (FileChannel) target : null;
+            this.chunkSize = Math.min(Math.max(bufferSize, 1), MAX_BUFFER_SIZE);
+        }
+
+        @Override
+        int copy(final InputStream source) throws IOException {
+            if (source != this.source) {
+                this.source = source;
+                this.sourceChannel = source instanceof FileInputStream ? ((FileInputStream) source).getChannel()
+                    : Channels.newChannel(source);
+            }
+            final ByteBuffer buffer = BUFFERS.get();
+            buffer.clear().limit(chunkSize);
+            final int length = sourceChannel.read(buffer);
+            if (length == -1) {
+                return -1;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            if (length == chunkSize && chunkSize < MAX_BUFFER_SIZE) {
+                // The source is faster than the buffer is big
+                this.chunkSize = Math.min(chunkSize * 2, MAX_BUFFER_SIZE);
+            }
+            return length;
+        }
+
+        @Override
+        long transfer(final FileChannel source, final long position, final long count) throws IOException {
+            return source.transferTo(position, count, target);
+        }
+
+        @Override
+        void sizeHint(final long size) throws IOException {
+            if (file == null || size <= 1L || extended != -1L) {
+                return;
+            }
+            final long start = file.position();
+            final long end = start + size;
+            if (file.size() >= end) {
+                return;
+            }
+            file.write(ByteBuffer.allocate(1), end - 1L);
+            if (file.size() == end) {
+                this.extended = end;
+            } else {
+                // The file has been opened in append mode so the byte has been appended
+                file.truncate(start);
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "The target file cannot be extended");
+                }
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (extended == -1L) {
+                return;
+            }
+            final long position = file.position();
+            this.extended = -1L;
+            if (position < file.size()) {
+                file.truncate(position);
+            }
+        }
+    }
+}
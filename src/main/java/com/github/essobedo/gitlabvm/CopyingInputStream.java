@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that counts the bytes read from the underlying stream and copies them into the
+ * writer of a cache entry if any, such that a patch can be cached as downloaded while being decompressed.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class CopyingInputStream extends FilterInputStream {
+    /**
+     * The size of the buffer used to skip bytes.
+     */
+    private static final int SKIP_BUFFER_SIZE = 2048;
+    /**
+     * The writer into which the bytes read are copied, {@code null} if they should not be copied.
+     */
+    private final PatchCache.Writer writer;
+    /**
+     * The total amount of bytes read so far.
+     */
+    private long count;
+
+    /**
+     * Constructs a {@code CopyingInputStream} with the specified parameters.
+     * @param inputStream the underlying stream.
+     * @param writer the writer into which the bytes read are copied, {@code null} if they should not
+     *               be copied.
+     */
+    CopyingInputStream(final InputStream inputStream, final PatchCache.Writer writer) {
+        super(inputStream);
+        this.writer = writer;
+    }
+
+    /**
+     * Gives the total amount of bytes read from the underlying stream so far.
+     * @return the total amount of bytes read.
+     */
+    long count() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b != -1) {
+            count++;
+            if (writer != null) {
+                writer.write(new byte[]{(byte) b}, 0, 1);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int length = super.read(b, off, len);
+        if (length > 0) {
+            count += length;
+            if (writer != null) {
+                writer.write(b, off, length);
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // The skipped bytes must be copied too
+        final byte[] buffer = new byte[(int) Math.min(SKIP_BUFFER_SIZE, Math.max(n, 0L))];
+        long skipped = 0L;
+        int length;
+        while (skipped < n && (length = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1) {
+            skipped += length;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        // Not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
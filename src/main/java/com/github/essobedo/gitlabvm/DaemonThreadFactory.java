@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link ThreadFactory} creating the daemon threads used to execute the background tasks of the
+ * version manager.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+    /**
+     * The prefix of the name of the threads.
+     */
+    private final String prefix;
+    /**
+     * The priority of the threads.
+     */
+    private final int priority;
+    /**
+     * The counter used to generate the name of the threads.
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Constructs a {@code DaemonThreadFactory} with the specified prefix and the normal priority.
+     * @param prefix the prefix of the name of the threads.
+     */
+    DaemonThreadFactory(final String prefix) {
+        this(prefix, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Constructs a {@code DaemonThreadFactory} with the specified prefix and priority.
+     * @param prefix the prefix of the name of the threads.
+     * @param priority the priority of the threads.
+     */
+    DaemonThreadFactory(final String prefix, final int priority) {
+        this.prefix = prefix;
+        this.priority = priority;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, String.format("%s-%d", prefix, counter.incrementAndGet()));
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
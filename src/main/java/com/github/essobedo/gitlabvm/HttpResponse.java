@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.goebl.david.Response;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A response whose body is read as a stream, the body is released as soon as the response or its body
+ * is closed such that the connection can be kept alive.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class HttpResponse implements Closeable {
+    /**
+     * The response of the server.
+     */
+    private final Response<InputStream> response;
+    /**
+     * The task to run once the response has been closed.
+     */
+    private final Runnable release;
+    /**
+     * Indicates whether the response has been closed.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Constructs a {@code HttpResponse} with the specified parameters.
+     * @param response the response of the server.
+     * @param release the task to run once the response has been closed.
+     */
+    HttpResponse(final Response<InputStream> response, final Runnable release) {
+        this.response = response;
+        this.release = release;
+    }
+
+    /**
+     * Gives the status code of the response.
+     * @return the status code of the response.
+     */
+    int statusCode() {
+        return response.getStatusCode();
+    }
+
+    /**
+     * Gives the message of the response.
+     * @return the message of the response.
+     */
+    String responseMessage() {
+        return response.getResponseMessage();
+    }
+
+    /**
+     * Gives the value of the specified header.
+     * @param name the name of the header.
+     * @return the value of the header, {@code null} if absent.
+     */
+    String header(final String name) {
+        return response.getHeaderField(name);
+    }
+
+    /**
+     * Gives the value of the header {@code Last-Modified}.
+     * @return the value of the header {@code Last-Modified} in milliseconds, {@code 0} if absent.
+     */
+    long lastModified() {
+        return response.getLastModified();
+    }
+
+    /**
+     * Gives the body of a successful response, closing the body closes the response.
+     * @return the body of the response, {@code null} if the response is not successful.
+     */
+    InputStream body() {
+        final InputStream body = response.getBody();
+        if (body == null) {
+            return null;
+        }
+        return new FilterInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                HttpResponse.this.close();
+            }
+        };
+    }
+
+    /**
+     * Closes the body of the response whatever the status code and releases the stream.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            close(response.getBody());
+            final Object errorBody = response.getErrorBody();
+            if (errorBody instanceof Closeable) {
+                close((Closeable) errorBody);
+            }
+        } finally {
+            release.run();
+        }
+    }
+
+    /**
+     * Closes the specified resource silently.
+     * @param closeable the resource to close.
+     */
+    private static void close(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException | NullPointerException e) {
+            // ignore me, Webb wraps the error stream even if there is none like in case of a 304
+        }
+    }
+}
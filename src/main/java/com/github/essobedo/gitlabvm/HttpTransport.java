@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.goebl.david.Request;
+import com.goebl.david.Response;
+import com.goebl.david.Webb;
+import com.goebl.david.WebbException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The transport shared by all the repositories accessing to the same end point. The connections
+ * are kept alive and reused thanks to the keep-alive cache of {@link java.net.HttpURLConnection} which
+ * is global to the JVM and closes the idle connections, the transport bounds the total amount of
+ * requests being sent at the same time and provides statistics. A request whose body is streamed only
+ * counts until its response has been received, such that long downloads cannot prevent the other requests
+ * from being sent. A transport is kept as long as at least one repository uses it.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class HttpTransport {
+    /**
+     * The transports per end point.
+     */
+    private static final ConcurrentMap<String, WeakReference<HttpTransport>> TRANSPORTS =
+        new ConcurrentHashMap<>();
+    /**
+     * The {@link Webb} instance allowing to access to the end point thanks to the http/https protocol.
+     */
+    private final Webb webb;
+    /**
+     * The connections that can be used to send a request.
+     */
+    private final Semaphore connections;
+    /**
+     * The max total amount of connections that can be used at the same time to send a request.
+     */
+    private int maxConnections;
+    /**
+     * The statistics of the transport.
+     */
+    private final TransportStatistics statistics;
+    /**
+     * Indicates whether the end point is accessed over TLS.
+     */
+    private final boolean secure;
+
+    /**
+     * Constructs a {@code HttpTransport} with the specified end point and max total amount of connections.
+     * @param endpoint the end point to access.
+     * @param maxConnections the max total amount of connections that can be used at the same time.
+     */
+    private HttpTransport(final String endpoint, final int maxConnections) {
+        this.connections = new Semaphore(maxConnections, true);
+        this.maxConnections = maxConnections;
+        this.statistics = new TransportStatistics(maxConnections);
+        this.secure = endpoint.regionMatches(true, 0, "https:", 0, "https:".length());
+        this.webb = Webb.create();
+        webb.setBaseUri(endpoint);
+        if (secure) {
+            webb.setSSLSocketFactory(
+                new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory(), statistics));
+        }
+    }
+
+    /**
+     * Gives the transport corresponding to the specified end point, the transport is created if it
+     * does not exist yet.
+     * @param endpoint the end point to access.
+     * @param maxConnections the max total amount of connections that can be used at the same time to send
+     * a request, the limit of an existing transport is raised if it is lower.
+     * @return the transport corresponding to the end point.
+     */
+    static HttpTransport of(final String endpoint, final int maxConnections) {
+        // Evict the transports that are no more used
+        TRANSPORTS.values().removeIf(reference -> reference.get() == null);
+        while (true) {
+            final WeakReference<HttpTransport> reference = TRANSPORTS.get(endpoint);
+            HttpTransport transport = reference == null ? null : reference.get();
+            if (transport != null) {
+                transport.raise(maxConnections);
+                return transport;
+            }
+            transport = new HttpTransport(endpoint, Math.max(1, maxConnections));
+            final WeakReference<HttpTransport> created = new WeakReference<>(transport);
+            if (reference == null ? TRANSPORTS.putIfAbsent(endpoint, created) == null
+                : TRANSPORTS.replace(endpoint, reference, created)) {
+                return transport;
+            }
+        }
+    }
+
+    /**
+     * Raises the max total amount of connections that can be used at the same time to send a request
+     * to the specified value if it is lower.
+     * @param maxConnections the max total amount of connections requested.
+     */
+    private synchronized void raise(final int maxConnections) {
+        if (maxConnections > this.maxConnections) {
+            connections.release(maxConnections - this.maxConnections);
+            this.maxConnections = maxConnections;
+            statistics.maxConnections(maxConnections);
+        }
+    }
+
+    /**
+     * Gives the {@link Webb} instance allowing to create the requests.
+     * @return the {@link Webb} instance of the transport.
+     */
+    Webb webb() {
+        return webb;
+    }
+
+    /**
+     * Gives the statistics of the transport.
+     * @return the statistics of the transport.
+     */
+    TransportStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Sends the specified request and gives the response whose body must be read as a stream. The
+     * connection is released as soon as the response has been received, the body is then counted as
+     * a stream until the response is closed.
+     * @param request the request to send.
+     * @return the response of the server.
+     * @throws WebbException if the request could not be sent.
+     */
+    HttpResponse open(final Request request) {
+        final Response<InputStream> response;
+        acquire();
+        try {
+            response = request.asStream();
+        } finally {
+            release();
+        }
+        statistics.streamOpened();
+        return new HttpResponse(response, statistics::streamClosed);
+    }
+
+    /**
+     * Sends a request whose response is fully read by the given function. The connection is released once
+     * the function returns.
+     * @param request the function sending the request.
+     * @param <T> the type of the body of the response.
+     * @return the response of the server.
+     * @throws WebbException if the request could not be sent.
+     */
+    <T> Response<T> call(final Supplier<Response<T>> request) {
+        acquire();
+        try {
+            return request.get();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Waits for a connection to be available.
+     * @throws WebbException if interrupted while waiting.
+     */
+    private void acquire() {
+        boolean waited = false;
+        if (!connections.tryAcquire()) {
+            waited = true;
+            try {
+                connections.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WebbException("Interrupted while waiting for a connection", e);
+            }
+        }
+        statistics.acquired(secure, waited);
+    }
+
+    /**
+     * Releases a connection.
+     */
+    private void release() {
+        statistics.released();
+        connections.release();
+    }
+
+    /**
+     * A {@link SSLSocketFactory} counting the TLS handshakes.
+     */
+    private static final class CountingSSLSocketFactory extends SSLSocketFactory {
+        /**
+         * The factory to which the creation of the sockets is delegated.
+         */
+        private final SSLSocketFactory delegate;
+        /**
+         * The statistics to update.
+         */
+        private final TransportStatistics statistics;
+
+        /**
+         * Constructs a {@code CountingSSLSocketFactory} with the specified parameters.
+         * @param delegate the factory to which the creation of the sockets is delegated.
+         * @param statistics the statistics to update.
+         */
+        CountingSSLSocketFactory(final SSLSocketFactory delegate, final TransportStatistics statistics) {
+            this.delegate = delegate;
+            this.statistics = statistics;
+        }
+
+        /**
+         * Counts a new socket.
+         * @param socket the new socket.
+         * @return the new socket.
+         */
+        private Socket count(final Socket socket) {
+            statistics.handshake();
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return count(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose)
+            throws IOException {
+            return count(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final InputStream consumed, final boolean autoClose)
+            throws IOException {
+            return count(delegate.createSocket(socket, consumed, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return count(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port, final InetAddress localHost,
+                                   final int localPort) throws IOException {
+            return count(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return count(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+                                   final int localPort) throws IOException {
+            return count(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies whose buckets are powers of two of microseconds, which keeps a
+ * constant footprint whatever the total amount of values recorded.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class LatencyHistogram {
+    /**
+     * The total amount of buckets, the last bucket contains all the values of more than 2^38 microseconds
+     * which is more than 3 days.
+     */
+    private static final int BUCKETS = 40;
+    /**
+     * The total amount of nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1L);
+    /**
+     * The total amount of values per bucket, the bucket {@code i} contains the values lower than
+     * {@code 2^i} microseconds.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /**
+     * The total amount of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * The sum of the values recorded in nanoseconds.
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * The max value recorded in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the specified latency.
+     * @param nanos the latency in nanoseconds.
+     */
+    void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        final long micros = TimeUnit.NANOSECONDS.toMicros(value);
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros)));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Gives the total amount of values recorded.
+     * @return the total amount of values.
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * Gives the upper bound of the bucket containing the specified percentile.
+     * @param ratio the percentile to find between {@code 0} and {@code 1}.
+     * @return the percentile in nanoseconds, {@code 0} if no value has been recorded.
+     */
+    long percentile(final double ratio) {
+        final long[] counts = new long[BUCKETS];
+        final long total = counts(counts);
+        return total == 0L ? 0L : percentile(counts, total, ratio, max.get());
+    }
+
+    /**
+     * Gives a snapshot of the histogram.
+     * @return the snapshot of the histogram.
+     */
+    LatencySnapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        final long total = counts(counts);
+        if (total == 0L) {
+            return new LatencySnapshot(0L, 0d, 0d, 0d, 0d, 0d);
+        }
+        final long maxNanos = max.get();
+        return new LatencySnapshot(total, sum.sum() / NANOS_PER_MILLI / Math.max(1L, count.sum()),
+            maxNanos / NANOS_PER_MILLI, percentile(counts, total, 0.5d, maxNanos) / NANOS_PER_MILLI,
+            percentile(counts, total, 0.95d, maxNanos) / NANOS_PER_MILLI,
+            percentile(counts, total, 0.99d, maxNanos) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Copies the total amount of values per bucket into the specified array.
+     * @param counts the array into which the total amount of values per bucket are copied.
+     * @return the total amount of values.
+     */
+    private long counts(final long[] counts) {
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Gives the upper bound of the bucket containing the specified percentile.
+     * @param counts the total amount of values per bucket.
+     * @param total the total amount of values.
+     * @param ratio the percentile to find between {@code 0} and {@code 1}.
+     * @param maxNanos the max value recorded in nanoseconds, used to bound the result.
+     * @return the percentile in nanoseconds.
+     */
+    private static long percentile(final long[] counts, final long total, final double ratio,
+                                   final long maxNanos) {
+        final long rank = Math.max(1L, (long) Math.ceil(total * ratio));
+        long seen = 0L;
+        int bucket = 0;
+        while (bucket < BUCKETS - 1 && (seen += counts[bucket]) < rank) {
+            bucket++;
+        }
+        final long upperNanos = bucket == BUCKETS - 1 ? maxNanos : TimeUnit.MICROSECONDS.toNanos(1L << bucket);
+        return Math.min(upperNanos, maxNanos);
+    }
+}
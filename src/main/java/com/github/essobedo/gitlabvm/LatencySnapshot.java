@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of a latency histogram, the percentiles are the upper bounds of the buckets of the
+ * histogram which are powers of two of microseconds, so they are accurate by a factor of two at most.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public final class LatencySnapshot {
+    /**
+     * The total amount of values recorded.
+     */
+    private final long count;
+    /**
+     * The mean of the values in milliseconds.
+     */
+    private final double meanMillis;
+    /**
+     * The max value in milliseconds.
+     */
+    private final double maxMillis;
+    /**
+     * The median in milliseconds.
+     */
+    private final double p50Millis;
+    /**
+     * The 95th percentile in milliseconds.
+     */
+    private final double p95Millis;
+    /**
+     * The 99th percentile in milliseconds.
+     */
+    private final double p99Millis;
+
+    /**
+     * Constructs a {@code LatencySnapshot} with the specified values.
+     * @param count the total amount of values recorded.
+     * @param meanMillis the mean of the values in milliseconds.
+     * @param maxMillis the max value in milliseconds.
+     * @param p50Millis the median in milliseconds.
+     * @param p95Millis the 95th percentile in milliseconds.
+     * @param p99Millis the 99th percentile in milliseconds.
+     */
+    @ConstructorProperties({"count", "meanMillis", "maxMillis", "p50Millis", "p95Millis", "p99Millis"})
+    public LatencySnapshot(final long count, final double meanMillis, final double maxMillis,
+                           final double p50Millis, final double p95Millis, final double p99Millis) {
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+    }
+
+    /**
+     * Gives the total amount of values recorded.
+     * @return the total amount of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gives the mean of the values.
+     * @return the mean in milliseconds, {@code 0} if no value has been recorded.
+     */
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    /**
+     * Gives the max value.
+     * @return the max value in milliseconds, {@code 0} if no value has been recorded.
+     */
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Gives the median of the values.
+     * @return the median in milliseconds, {@code 0} if no value has been recorded.
+     */
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    /**
+     * Gives the 95th percentile of the values.
+     * @return the 95th percentile in milliseconds, {@code 0} if no value has been recorded.
+     */
+    public double getP95Millis() {
+        return p95Millis;
+    }
+
+    /**
+     * Gives the 99th percentile of the values.
+     * @return the 99th percentile in milliseconds, {@code 0} if no value has been recorded.
+     */
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencySnapshot{count=%d, mean=%.3fms, max=%.3fms, p50=%.3fms, p95=%.3fms, "
+            + "p99=%.3fms}", count, meanMillis, maxMillis, p50Millis, p95Millis, p99Millis);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream measuring the time to first byte and the throughput of the content of a patch, the
+ * metrics are reported once the stream is closed.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class MeteredInputStream extends FilterInputStream {
+    /**
+     * The listener to which the metrics are reported.
+     */
+    private final MetricsListener metrics;
+    /**
+     * The time in nanoseconds at which the patch has been requested.
+     */
+    private final long start;
+    /**
+     * The time in nanoseconds at which the first byte has been read, {@code 0} if not yet read.
+     */
+    private long first;
+    /**
+     * The total amount of bytes read.
+     */
+    private long count;
+    /**
+     * Indicates whether the stream has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a {@code MeteredInputStream} with the specified parameters.
+     * @param in the content of the patch.
+     * @param metrics the listener to which the metrics are reported.
+     * @param start the time in nanoseconds at which the patch has been requested.
+     */
+    MeteredInputStream(final InputStream in, final MetricsListener metrics, final long start) {
+        super(in);
+        this.metrics = metrics;
+        this.start = start;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int result = super.read();
+        if (result != -1) {
+            read(1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int result = super.read(b, off, len);
+        if (result > 0) {
+            read(result);
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long result = super.skip(n);
+        if (result > 0L) {
+            read(result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Notifies that the specified amount of bytes has been read.
+     * @param length the amount of bytes read.
+     */
+    private void read(final long length) {
+        if (count == 0L) {
+            this.first = System.nanoTime();
+            metrics.firstByte(first - start);
+        }
+        count += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            this.closed = true;
+            if (count > 0L) {
+                metrics.downloaded(count, System.nanoTime() - first);
+            }
+        }
+        super.close();
+    }
+}
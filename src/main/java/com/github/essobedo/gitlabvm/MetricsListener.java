@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+/**
+ * The listener of the metrics of a version manager, allowing to plug any metrics library thanks to
+ * {@link VersionManagerMetrics#addListener(MetricsListener)}. The methods are called by the threads
+ * accessing to gitlab so they must be fast and thread safe, all the methods do nothing by default.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public interface MetricsListener {
+    /**
+     * The listener ignoring all the metrics.
+     */
+    MetricsListener NONE = new MetricsListener() {
+    };
+
+    /**
+     * Notifies that an operation has been completed successfully.
+     * @param operation the operation completed.
+     * @param nanos the time spent in nanoseconds.
+     */
+    default void latency(final Operation operation, final long nanos) {
+    }
+
+    /**
+     * Notifies that a request sent to gitlab failed.
+     * @param operation the operation of the request.
+     * @param status the status code of the response, {@code 0} if no response could be received.
+     */
+    default void error(final Operation operation, final int status) {
+    }
+
+    /**
+     * Notifies that the first byte of a patch has been received.
+     * @param nanos the time in nanoseconds between the request of the patch and its first byte.
+     */
+    default void firstByte(final long nanos) {
+    }
+
+    /**
+     * Notifies that the content of a patch has been read.
+     * @param bytes the total amount of bytes read.
+     * @param nanos the time spent in nanoseconds to read the content.
+     */
+    default void downloaded(final long bytes, final long nanos) {
+    }
+
+    /**
+     * Notifies that a duplicate request has been sent because the response of a request was late.
+     * @param operation the operation of the request.
+     */
+    default void hedged(final Operation operation) {
+    }
+
+    /**
+     * Notifies that a task has been canceled.
+     */
+    default void cancelled() {
+    }
+
+    /**
+     * The operations of a version manager whose latency is measured.
+     */
+    enum Operation {
+        /**
+         * The retrieval of a new private token.
+         */
+        FIND_TOKEN,
+        /**
+         * The retrieval of the listings of the versions and of their files.
+         */
+        GET_VERSIONS,
+        /**
+         * The request of a patch until its headers are received.
+         */
+        GET_PATCH
+    }
+}
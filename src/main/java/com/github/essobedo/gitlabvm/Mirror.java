@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.goebl.david.Webb;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * An end point of gitlab, either the primary end point or one of its mirrors, with its own transport
+ * and private token. The round trip times and the error rate of the end point are tracked thanks to
+ * exponentially weighted moving averages, after a failure the end point is considered as unhealthy
+ * during a delay that doubles with each consecutive failure.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class Mirror {
+    /**
+     * The weight of the last sample in the moving averages.
+     */
+    private static final double SMOOTHING = 0.3d;
+    /**
+     * The factor by which the round trip time is penalized for an error rate of {@code 1}.
+     */
+    private static final double ERROR_PENALTY = 4d;
+    /**
+     * The delay during which an end point is considered as unhealthy after a first failure.
+     */
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(1L);
+    /**
+     * The max delay during which an end point is considered as unhealthy after consecutive failures.
+     */
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(1L);
+    /**
+     * The max exponent of the backoff, beyond which the backoff is always {@link #MAX_BACKOFF}.
+     */
+    private static final int MAX_BACKOFF_EXPONENT = 6;
+    /**
+     * The end point.
+     */
+    private final String endpoint;
+    /**
+     * The transport used to access to the end point.
+     */
+    private final HttpTransport transport;
+    /**
+     * The manager of the private token of the end point.
+     */
+    private final TokenManager tokens;
+    /**
+     * Indicates whether the end point is being probed.
+     */
+    private final AtomicBoolean probing = new AtomicBoolean();
+    /**
+     * The moving average of the round trip times in nanoseconds, {@code -1} if unknown.
+     */
+    private double roundTripTime = -1d;
+    /**
+     * The moving average of the error rate between {@code 0} and {@code 1}.
+     */
+    private double errorRate;
+    /**
+     * The total amount of consecutive failures.
+     */
+    private int failures;
+    /**
+     * The time in nanoseconds from which the end point can be used again after a failure.
+     */
+    private long retryAt;
+    /**
+     * The time in nanoseconds of the last sample, meaningless if {@link #sampled} is {@code false}.
+     */
+    private long lastSample;
+    /**
+     * Indicates whether at least one sample has been recorded.
+     */
+    private boolean sampled;
+
+    /**
+     * Constructs a {@code Mirror} with the specified parameters.
+     * @param endpoint the end point.
+     * @param transport the transport used to access to the end point.
+     * @param login the function allowing to log in to the end point.
+     * @param store the store of the private token, {@code null} if the token is not stored.
+     */
+    Mirror(final String endpoint, final HttpTransport transport, final Login login, final TokenStore store) {
+        this(endpoint, transport, mirror -> new TokenManager(() -> login.login(mirror), store));
+    }
+
+    /**
+     * Constructs a {@code Mirror} with the specified parameters.
+     * @param endpoint the end point.
+     * @param transport the transport used to access to the end point.
+     * @param tokens the function giving the manager of the private token of the end point, which can be
+     *               shared with other end points having the same address and credentials.
+     */
+    Mirror(final String endpoint, final HttpTransport transport, final Function<Mirror, TokenManager> tokens) {
+        this.endpoint = endpoint;
+        this.transport = transport;
+        this.tokens = tokens.apply(this);
+    }
+
+    /**
+     * Gives the end point.
+     * @return the end point.
+     */
+    String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Gives the transport used to access to the end point.
+     * @return the transport of the end point.
+     */
+    HttpTransport transport() {
+        return transport;
+    }
+
+    /**
+     * Gives the {@link Webb} instance allowing to access to the end point.
+     * @return the {@link Webb} instance of the end point.
+     */
+    Webb webb() {
+        return transport.webb();
+    }
+
+    /**
+     * Gives the manager of the private token of the end point.
+     * @return the manager of the private token.
+     */
+    TokenManager tokens() {
+        return tokens;
+    }
+
+    /**
+     * Records a successful request.
+     * @param nanos the round trip time of the request in nanoseconds.
+     * @param now the current time in nanoseconds.
+     */
+    synchronized void success(final long nanos, final long now) {
+        roundTripTime = roundTripTime < 0d ? nanos : roundTripTime + SMOOTHING * (nanos - roundTripTime);
+        errorRate -= SMOOTHING * errorRate;
+        failures = 0;
+        sample(now);
+    }
+
+    /**
+     * Records a failed request, the end point is then considered as unhealthy during a delay that
+     * doubles with each consecutive failure.
+     * @param now the current time in nanoseconds.
+     */
+    synchronized void failure(final long now) {
+        errorRate += SMOOTHING * (1d - errorRate);
+        failures++;
+        retryAt = now + Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failures - 1, MAX_BACKOFF_EXPONENT));
+        sample(now);
+    }
+
+    /**
+     * Records the time of the last sample.
+     * @param now the current time in nanoseconds.
+     */
+    private void sample(final long now) {
+        lastSample = now;
+        sampled = true;
+    }
+
+    /**
+     * Indicates whether the end point can be used.
+     * @param now the current time in nanoseconds.
+     * @return {@code true} if the last request succeeded or the backoff has elapsed, {@code false} otherwise.
+     */
+    synchronized boolean isHealthy(final long now) {
+        return failures == 0 || now - retryAt >= 0L;
+    }
+
+    /**
+     * Gives the score of the end point, the lower the better.
+     * @return the round trip time penalized by the error rate, {@link Double#MAX_VALUE} if unknown.
+     */
+    synchronized double score() {
+        return roundTripTime < 0d ? Double.MAX_VALUE : roundTripTime * (1d + ERROR_PENALTY * errorRate);
+    }
+
+    /**
+     * Gives the time from which the end point can be used again.
+     * @return the time in nanoseconds from which the end point can be used again after a failure.
+     */
+    synchronized long retryAt() {
+        return retryAt;
+    }
+
+    /**
+     * Starts probing the end point if it has not been sampled for the specified interval and is not
+     * already being probed.
+     * @param now the current time in nanoseconds.
+     * @param interval the interval in nanoseconds between two samples.
+     * @return {@code true} if the end point must be probed, {@code false} otherwise.
+     */
+    boolean startProbe(final long now, final long interval) {
+        synchronized (this) {
+            if (sampled && now - lastSample < interval) {
+                return false;
+            }
+        }
+        return probing.compareAndSet(false, true);
+    }
+
+    /**
+     * Notifies that the end point is no more being probed.
+     */
+    void endProbe() {
+        probing.set(false);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Mirror{endpoint=%s, roundTripTime=%.1fms, errorRate=%.2f, failures=%d}", endpoint,
+            roundTripTime / TimeUnit.MILLISECONDS.toNanos(1L), errorRate, failures);
+    }
+
+    /**
+     * The function allowing to log in to an end point.
+     */
+    @FunctionalInterface
+    interface Login {
+        /**
+         * Logs in to the specified end point to get a new token.
+         * @param mirror the end point to which we log in.
+         * @return the new token.
+         * @throws ApplicationException if the login failed.
+         */
+        String login(Mirror mirror) throws ApplicationException;
+    }
+}
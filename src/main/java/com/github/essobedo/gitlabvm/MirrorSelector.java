@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * The selector of the end point to use among the primary end point of gitlab and its mirrors. The
+ * healthy end points are ordered by round trip time penalized by their error rate, such that the requests
+ * are sent to the fastest healthy end point first and fail over to the next ones. The end points that
+ * have not been sampled for a while are probed in the background.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class MirrorSelector {
+    /**
+     * The executor of the probes shared by all the selectors.
+     */
+    private static final ExecutorService PROBES = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("gitlabvm-probe"));
+    /**
+     * The end points in the order of preference when nothing is known about them, the primary end
+     * point first.
+     */
+    private final List<Mirror> mirrors;
+    /**
+     * The interval in nanoseconds after which an end point that has not been sampled is probed.
+     */
+    private final long probeInterval;
+    /**
+     * The function probing an end point.
+     */
+    private final Consumer<Mirror> probe;
+    /**
+     * The executor of the probes.
+     */
+    private final Executor executor;
+    /**
+     * The clock providing the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Constructs a {@code MirrorSelector} with the specified parameters.
+     * @param mirrors the end points in the order of preference, the primary end point first.
+     * @param probeInterval the interval in nanoseconds after which an end point that has not been sampled
+     *                      is probed.
+     * @param probe the function probing an end point.
+     */
+    MirrorSelector(final List<Mirror> mirrors, final long probeInterval, final Consumer<Mirror> probe) {
+        this(mirrors, probeInterval, probe, PROBES, System::nanoTime);
+    }
+
+    /**
+     * Constructs a {@code MirrorSelector} with the specified parameters.
+     * @param mirrors the end points in the order of preference, the primary end point first.
+     * @param probeInterval the interval in nanoseconds after which an end point that has not been sampled
+     *                      is probed.
+     * @param probe the function probing an end point.
+     * @param executor the executor of the probes.
+     * @param clock the clock providing the current time in nanoseconds.
+     */
+    MirrorSelector(final List<Mirror> mirrors, final long probeInterval, final Consumer<Mirror> probe,
+                   final Executor executor, final LongSupplier clock) {
+        this.mirrors = Collections.unmodifiableList(new ArrayList<>(mirrors));
+        this.probeInterval = probeInterval;
+        this.probe = probe;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Gives the primary end point.
+     * @return the primary end point.
+     */
+    Mirror primary() {
+        return mirrors.get(0);
+    }
+
+    /**
+     * Gives the current time according to the clock of the selector.
+     * @return the current time in nanoseconds.
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Gives the end points to try in order, the healthy end points ordered by score first then the
+     * unhealthy end points ordered by the time from which they can be used again as last resort. The end
+     * points that have not been sampled for a while are probed in the background.
+     * @return the end points to try in order.
+     */
+    List<Mirror> candidates() {
+        if (mirrors.size() == 1) {
+            return mirrors;
+        }
+        final long now = clock.getAsLong();
+        final List<Mirror> healthy = new ArrayList<>(mirrors.size());
+        final List<Mirror> unhealthy = new ArrayList<>();
+        for (final Mirror mirror : mirrors) {
+            if (probeInterval > 0L && mirror.startProbe(now, probeInterval)) {
+                probe(mirror);
+            }
+            if (mirror.isHealthy(now)) {
+                healthy.add(mirror);
+            } else {
+                unhealthy.add(mirror);
+            }
+        }
+        // The sort is stable so the order of preference is kept for the end points with the same score
+        healthy.sort(Comparator.comparingDouble(Mirror::score));
+        unhealthy.sort(Comparator.comparingLong(mirror -> mirror.retryAt() - now));
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    /**
+     * Probes the specified end point in the background.
+     * @param mirror the end point to probe.
+     */
+    private void probe(final Mirror mirror) {
+        try {
+            executor.execute(() -> {
+                try {
+                    probe.accept(mirror);
+                } finally {
+                    mirror.endProbe();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mirror.endProbe();
+        }
+    }
+}
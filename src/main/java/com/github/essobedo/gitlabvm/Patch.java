@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The content of a patch as returned by gitlab, which can be partial in case the download has been resumed.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class Patch implements Closeable {
+    /**
+     * The content of the patch starting from {@link #offset}.
+     */
+    private final InputStream content;
+    /**
+     * The position in the patch of the first byte of the content.
+     */
+    private final long offset;
+    /**
+     * The total size of the patch, {@code -1} if unknown.
+     */
+    private final long length;
+    /**
+     * The value of the header {@code ETag} returned by the server, {@code null} if none.
+     */
+    private final String etag;
+
+    /**
+     * Constructs a {@code Patch} with the specified parameters.
+     * @param content the content of the patch starting from {@code offset}.
+     * @param offset the position in the patch of the first byte of the content.
+     * @param length the total size of the patch, {@code -1} if unknown.
+     * @param etag the value of the header {@code ETag} returned by the server, {@code null} if none.
+     */
+    Patch(final InputStream content, final long offset, final long length, final String etag) {
+        this.content = content;
+        this.offset = offset;
+        this.length = length;
+        this.etag = etag;
+    }
+
+    /**
+     * Gives the content of the patch starting from {@link #offset()}.
+     * @return the content of the patch.
+     */
+    InputStream content() {
+        return content;
+    }
+
+    /**
+     * Gives the position in the patch of the first byte of the content, which is greater than {@code 0}
+     * when the download has been resumed.
+     * @return the position of the first byte of the content.
+     */
+    long offset() {
+        return offset;
+    }
+
+    /**
+     * Gives the total size of the patch.
+     * @return the total size of the patch, {@code -1} if unknown.
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Gives the value of the header {@code ETag} returned by the server, allowing to resume the download.
+     * @return the value of the header {@code ETag}, {@code null} if none.
+     */
+    String etag() {
+        return etag;
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
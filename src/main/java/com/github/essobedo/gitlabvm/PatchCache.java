@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A content-addressed cache of patches stored on the local file system, allowing to avoid downloading
+ * several times the same patch. The name of each entry is the SHA-256 of the project, the branch, the
+ * version and the name of the patch, the total size of the entries is bounded, the least recently used
+ * entries are evicted first.
+ *
+ * <p>The cache can be shared between several processes as the entries are first written into locked partial
+ * files that are then atomically moved to their final location. The partial files of the interrupted downloads
+ * are kept with the {@code ETag} of the patch, allowing to resume the downloads.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class PatchCache {
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(PatchCache.class.getName());
+    /**
+     * The extension of the files corresponding to a complete entry.
+     */
+    private static final String ENTRY_EXTENSION = ".patch";
+    /**
+     * The extension of the files corresponding to an entry being written.
+     */
+    private static final String PART_EXTENSION = ".part";
+    /**
+     * The extension of the files in which the {@code ETag} of an entry being written is stored.
+     */
+    private static final String CHECKPOINT_EXTENSION = ".etag";
+    /**
+     * The directory in which the entries are stored.
+     */
+    private final File directory;
+    /**
+     * The max total size of the entries in bytes.
+     */
+    private final long maxSize;
+    /**
+     * The statistics of the cache.
+     */
+    private final CacheStatistics statistics;
+
+    /**
+     * Constructs a {@code PatchCache} with the specified parameters.
+     * @param directory the directory in which the entries are stored.
+     * @param maxSize the max total size of the entries in bytes.
+     * @param statistics the statistics of the cache to update.
+     */
+    PatchCache(final File directory, final long maxSize, final CacheStatistics statistics) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Creates the cache of patches corresponding to the specified configuration.
+     * @param configuration the configuration from which we extract the location and the size of the cache.
+     * @param statistics the statistics of the cache to update.
+     * @return the cache of patches, {@code null} if no cache has been configured or the directory of the cache
+     * could not be created.
+     */
+    static PatchCache create(final ConnectionConfiguration configuration, final CacheStatistics statistics) {
+        final File directory = configuration.patchCacheDirectory();
+        if (directory == null) {
+            return null;
+        } else if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not create the patch cache directory '%s'", directory));
+            }
+            return null;
+        }
+        return new PatchCache(directory, configuration.patchCacheMaxSize(), statistics);
+    }
+
+    /**
+     * Gives the key of the entry corresponding to the specified patch.
+     * @param configuration the configuration from which we extract the project and the branch.
+     * @param version the version of the patch.
+     * @param fileName the name of the patch.
+     * @return the key of the corresponding entry.
+     */
+    static String key(final ConnectionConfiguration configuration, final String version, final String fileName) {
+        final String id = String.join("/", String.valueOf(configuration.projectOwner()),
+            String.valueOf(configuration.projectName()), String.valueOf(configuration.branch()), version, fileName);
+        return Hashes.sha256(id);
+    }
+
+    /**
+     * Indicates whether the cache contains the entry corresponding to the specified key, without
+     * updating neither the statistics nor the last access time of the entry.
+     * @param key the key of the entry to check.
+     * @return {@code true} if the entry exists, {@code false} otherwise.
+     */
+    boolean contains(final String key) {
+        return entry(key).isFile();
+    }
+
+    /**
+     * Gives the space available in bytes on the partition of the cache.
+     * @return the usable space in bytes.
+     */
+    long usableSpace() {
+        return directory.getUsableSpace();
+    }
+
+    /**
+     * Gives the max total size of the patches that can be kept in the cache.
+     * @return the max total size in bytes.
+     */
+    long maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gives the file of the entry corresponding to the specified key and marks it as recently used.
+     * @param key the key of the entry to find.
+     * @return the file of the entry, {@code null} if there is no such entry.
+     */
+    File get(final String key) {
+        final File file = entry(key);
+        if (file.isFile()) {
+            statistics.hit();
+            if (!file.setLastModified(System.currentTimeMillis()) && LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not update the last modified date of '%s'", file));
+            }
+            return file;
+        }
+        statistics.miss();
+        return null;
+    }
+
+    /**
+     * Starts writing the entry corresponding to the specified key, the entry will only be visible
+     * once committed. If a previous attempt to write the entry has been interrupted, the bytes already
+     * written are kept such that the download can be resumed.
+     * @param key the key of the entry to write.
+     * @return the writer of the entry, {@code null} if the entry could not be created or is already being
+     * written.
+     */
+    Writer write(final String key) {
+        final File part = new File(directory, key + PART_EXTENSION);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            final FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new Writer(key, part, channel);
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not lock the entry '%s'", part), e);
+            }
+        }
+        close(channel);
+        return null;
+    }
+
+    /**
+     * Gives the file of the entry corresponding to the specified key.
+     * @param key the key of the entry.
+     * @return the file of the entry.
+     */
+    private File entry(final String key) {
+        return new File(directory, key + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Evicts the least recently used entries until the total size of the entries is lower
+     * or equal to the max size. The partial entries are only evicted if they are not being written.
+     */
+    private void evict() {
+        final File[] files = directory.listFiles(
+            (dir, name) -> name.endsWith(ENTRY_EXTENSION) || name.endsWith(PART_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long total = 0L;
+        for (final File file : files) {
+            total += file.length();
+        }
+        if (total <= maxSize) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > maxSize; i++) {
+            final long length = files[i].length();
+            if (files[i].getName().endsWith(PART_EXTENSION) ? deleteAbandoned(files[i]) : files[i].delete()) {
+                total -= length;
+                delete(checkpoint(files[i]));
+            } else if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not evict the entry '%s'", files[i]));
+            }
+        }
+    }
+
+    /**
+     * Deletes the specified partial entry unless it is being written, which is the case when it is locked
+     * by a writer of this process or of another process.
+     * @param part the file of the partial entry.
+     * @return {@code true} if the partial entry has been deleted, {@code false} otherwise.
+     */
+    private static boolean deleteAbandoned(final File part) {
+        try (final FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE);
+             final FileLock lock = channel.tryLock()) {
+            // The file is deleted while locked to prevent a writer from resuming it in the meantime
+            return lock != null && part.delete();
+        } catch (IOException | OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gives the file in which the {@code ETag} of the specified partial entry is stored.
+     * @param part the file of the partial entry.
+     * @return the file of the corresponding checkpoint.
+     */
+    private static File checkpoint(final File part) {
+        final String name = part.getName();
+        return new File(part.getParentFile(), name.substring(0, name.lastIndexOf('.')) + CHECKPOINT_EXTENSION);
+    }
+
+    /**
+     * Deletes the specified file if it exists.
+     * @param file the file to delete.
+     */
+    private static void delete(final File file) {
+        if (file.exists() && !file.delete() && LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, String.format("Could not delete the file '%s'", file));
+        }
+    }
+
+    /**
+     * Closes quietly the specified channel.
+     * @param channel the channel to close.
+     */
+    private static void close(final FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "Could not close the channel", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The class allowing to write an entry. The bytes are first written into a partial entry whose
+     * {@code ETag} is stored into a checkpoint file such that an interrupted download can be resumed.
+     * Any error that occurs while writing is logged and simply makes the entry invalid such that it will
+     * never be committed.
+     */
+    final class Writer implements Closeable {
+        /**
+         * The key of the entry.
+         */
+        private final String key;
+        /**
+         * The file of the partial entry.
+         */
+        private final File part;
+        /**
+         * The file in which the {@code ETag} of the partial entry is stored.
+         */
+        private final File checkpoint;
+        /**
+         * The locked channel allowing to read and write the partial entry.
+         */
+        private final FileChannel channel;
+        /**
+         * The {@code ETag} of the partial entry, {@code null} if unknown.
+         */
+        private String etag;
+        /**
+         * Indicates whether the entry is still valid.
+         */
+        private boolean valid = true;
+        /**
+         * Indicates whether the entry has been committed.
+         */
+        private boolean committed;
+
+        /**
+         * Constructs a {@code Writer} with the specified key, partial entry and channel.
+         * @param key the key of the entry.
+         * @param part the file of the partial entry.
+         * @param channel the locked channel allowing to read and write the partial entry.
+         * @throws IOException if the checkpoint could not be read.
+         */
+        private Writer(final String key, final File part, final FileChannel channel) throws IOException {
+            this.key = key;
+            this.part = part;
+            this.checkpoint = checkpoint(part);
+            this.channel = channel;
+            if (checkpoint.isFile()) {
+                this.etag = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8);
+            }
+            if (etag == null || etag.isEmpty()) {
+                this.etag = null;
+                channel.truncate(0L);
+            }
+            channel.position(channel.size());
+        }
+
+        /**
+         * Gives the amount of bytes that have already been written by a previous attempt and that can be
+         * reused to resume the download.
+         * @return the amount of bytes already written.
+         * @throws IOException if the size of the partial entry could not be retrieved.
+         */
+        long offset() throws IOException {
+            return etag == null ? 0L : channel.size();
+        }
+
+        /**
+         * Gives the {@code ETag} of the patch partially written.
+         * @return the {@code ETag} of the patch partially written, {@code null} if unknown.
+         */
+        String etag() {
+            return etag;
+        }
+
+        /**
+         * Indicates whether an entry of the specified size can be kept in the cache.
+         * @param size the size of the entry, a negative value if unknown.
+         * @return {@code true} if the size does not exceed the max size of the cache, {@code false} otherwise.
+         */
+        boolean fits(final long size) {
+            return size <= maxSize;
+        }
+
+        /**
+         * Gives the channel allowing to read the bytes already written.
+         * @return the channel of the partial entry.
+         */
+        FileChannel content() {
+            return channel;
+        }
+
+        /**
+         * Gives a stream allowing to read the bytes already written from the beginning, it shares the
+         * position of the channel so it must be read entirely before appending new bytes.
+         * @return the stream of the bytes already written, closing it has no effect on the channel.
+         * @throws IOException if the channel could not be rewound.
+         */
+        InputStream written() throws IOException {
+            channel.position(0L);
+            return new FilterInputStream(Channels.newInputStream(channel)) {
+                @Override
+                public void close() {
+                    // The channel is closed by the writer
+                }
+            };
+        }
+
+        /**
+         * Discards the bytes already written in order to write the patch from the beginning.
+         * @param etag the {@code ETag} of the patch to write, {@code null} if unknown in which case the
+         *             download will not be resumable.
+         */
+        void restart(final String etag) {
+            if (!valid) {
+                return;
+            }
+            try {
+                channel.truncate(0L);
+                channel.position(0L);
+                if (etag == null) {
+                    delete(checkpoint);
+                } else {
+                    Files.write(checkpoint.toPath(), etag.getBytes(StandardCharsets.UTF_8));
+                }
+                this.etag = etag;
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, String.format("Could not restart the entry '%s'", part), e);
+                }
+                abort();
+            }
+        }
+
+        /**
+         * Appends the specified bytes to the entry.
+         * @param b the data.
+         * @param off the start offset in the data.
+         * @param len the number of bytes to write.
+         */
+        void write(final byte[] b, final int off, final int len) {
+            if (!valid) {
+                return;
+            }
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, String.format("Could not write the entry '%s'", part), e);
+                }
+                abort();
+            }
+        }
+
+        /**
+         * Makes the entry visible and evicts the least recently used entries if needed.
+         */
+        void commit() {
+            if (!valid) {
+                return;
+            }
+            try {
+                channel.force(false);
+                Files.move(part.toPath(), entry(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                this.committed = true;
+                delete(checkpoint);
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, String.format("Could not commit the entry '%s'", part), e);
+                }
+                abort();
+                return;
+            } finally {
+                close();
+            }
+            evict();
+        }
+
+        /**
+         * Discards the entry including the bytes already written such that the next attempt will start
+         * from the beginning.
+         */
+        void abort() {
+            this.valid = false;
+            this.etag = null;
+            delete(checkpoint);
+            try {
+                channel.truncate(0L);
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, String.format("Could not truncate the entry '%s'", part), e);
+                }
+            }
+        }
+
+        /**
+         * Releases the lock of the entry, the bytes already written are kept if the download can be resumed.
+         */
+        @Override
+        public void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            if (!committed && etag == null) {
+                delete(part);
+            }
+            PatchCache.close(channel);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * The class downloading a patch into an entry of the cache and/or through a {@link CopyEngine}, it is used
+ * by all the components filling the cache such that the download is resumed, decoded, checked and committed
+ * the same way whoever downloads the patch.
+ *
+ * <p>If the writer contains the bytes of a previous attempt, the download is resumed and the bytes already
+ * downloaded go through the decoder and the checksum again. The entry is aborted as soon as the patch is
+ * known to exceed the max size of the cache or is corrupted, but the patch is still copied by the engine if
+ * any.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class PatchDownloader {
+    /**
+     * The max amount of bytes to transfer at once when the bytes already downloaded are copied.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1024L * 1024L;
+    /**
+     * The stream ignoring the bytes copied when the patch is only downloaded into the cache.
+     */
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(final int b) {
+            // Ignored
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            // Ignored
+        }
+    };
+
+    /**
+     * Prevents instantiation.
+     */
+    private PatchDownloader() {
+    }
+
+    /**
+     * Downloads the specified patch into the given entry of the cache and/or through the given engine.
+     * @param repository the repository from which the patch is downloaded.
+     * @param file the patch to download.
+     * @param checksum the checksum of the patch, {@code null} if the integrity of the patch cannot be checked.
+     * @param writer the writer of the corresponding cache entry, {@code null} if there is no cache.
+     * @param engine the engine copying the decoded patch, {@code null} if the patch is only downloaded into
+     *               the cache.
+     * @param listener the listener notified of the progress of the download.
+     * @return {@code true} if the patch has been fully downloaded, {@code false} if the download has been
+     * stopped by the listener or the patch does not fit into the cache while there is no engine.
+     * @throws ApplicationException if the patch could not be downloaded or is corrupted.
+     * @throws IOException if the patch could not be copied.
+     */
+    static boolean download(final Repository repository, final PatchFile file, final Checksum checksum,
+                            final PatchCache.Writer writer, final CopyEngine engine, final Listener listener)
+        throws ApplicationException, IOException {
+        final boolean output = engine != null;
+        try (final Patch patch = writer == null ? repository.getPatch(file.version(), file.fileName(), 0L, null)
+            : repository.getPatch(file.version(), file.fileName(), writer.offset(), writer.etag())) {
+            boolean cached = writer != null;
+            if (cached) {
+                if (patch.offset() == 0L) {
+                    writer.restart(patch.etag());
+                }
+                // The bytes already downloaded are still needed by the engine
+                if (!writer.fits(patch.length()) && (patch.offset() == 0L || !output)) {
+                    writer.abort();
+                    if (!output) {
+                        return false;
+                    }
+                    cached = false;
+                }
+            }
+            if (!listener.start(patch)) {
+                return false;
+            }
+            final Compression compression = Compression.of(file.fileName());
+            InputStream written = null;
+            if (cached && patch.offset() > 0L) {
+                if (compression != Compression.NONE || checksum != null) {
+                    // The bytes already downloaded must go through the decoder and the checksum too
+                    written = writer.written();
+                } else if (output && !transfer(writer.content(), patch.offset(), engine, listener)) {
+                    return false;
+                }
+            }
+            final CopyEngine target = output ? engine
+                : CopyEngine.of(DISCARD, repository.configuration().downloadBufferSize());
+            final CopyingInputStream content = new CopyingInputStream(patch.content(), cached ? writer : null);
+            final InputStream raw = written == null ? content : new SequenceInputStream(written, content);
+            final InputStream digested = checksum == null ? raw : checksum.wrap(raw);
+            // Without engine, the patch is only decoded to be validated if the decoder is available
+            final InputStream inputStream = output || compression.isAvailable() ? compression.decode(digested)
+                : digested;
+            while (target.copy(inputStream) != -1) {
+                final long done = patch.offset() + content.count();
+                // The bytes already downloaded are fully read once the content is read
+                if (cached && content.count() > 0L && !writer.fits(done)) {
+                    writer.abort();
+                    if (!output) {
+                        return false;
+                    }
+                    cached = false;
+                }
+                if (!listener.progress(done)) {
+                    return false;
+                }
+            }
+            listener.finish(patch.offset() + content.count());
+            if (checksum != null) {
+                try {
+                    checksum.verify(digested);
+                } catch (ApplicationException e) {
+                    if (writer != null) {
+                        writer.abort();
+                    }
+                    throw e;
+                }
+            }
+            if (cached) {
+                writer.commit();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Copies the specified amount of bytes already downloaded from the beginning of the given channel.
+     * @param channel the channel from which the bytes are read.
+     * @param count the amount of bytes to copy.
+     * @param engine the engine copying the bytes.
+     * @param listener the listener notified of the progress of the copy.
+     * @return {@code true} if the bytes have been copied, {@code false} if the copy has been stopped by
+     * the listener.
+     * @throws IOException if the bytes could not be copied.
+     */
+    private static boolean transfer(final FileChannel channel, final long count, final CopyEngine engine,
+                                    final Listener listener) throws IOException {
+        long position = 0L;
+        while (position < count) {
+            position += engine.transfer(channel, position, Math.min(TRANSFER_CHUNK_SIZE, count - position));
+            if (!listener.progress(position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The listener notified of the progress of a download.
+     */
+    interface Listener {
+        /**
+         * The listener that never stops the download.
+         */
+        Listener NONE = new Listener() { };
+
+        /**
+         * Notifies that the content of the patch is about to be downloaded.
+         * @param patch the patch to download.
+         * @return {@code true} to download the patch, {@code false} to stop the download.
+         * @throws IOException if the download could not be prepared.
+         */
+        default boolean start(final Patch patch) throws IOException {
+            return true;
+        }
+
+        /**
+         * Notifies that a chunk of the patch has been downloaded.
+         * @param done the amount of bytes of the patch downloaded so far including the bytes of the previous
+         *             attempts.
+         * @return {@code true} to continue the download, {@code false} to stop it keeping the bytes already
+         * downloaded to resume the download later.
+         */
+        default boolean progress(final long done) {
+            return true;
+        }
+
+        /**
+         * Notifies that the patch has been fully downloaded before its integrity is checked.
+         * @param done the total amount of bytes of the patch.
+         */
+        default void finish(final long done) {
+            // Nothing to do by default
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+/**
+ * A file of the branch dedicated to the releases that can be applied to upgrade the application, either
+ * the full patch of a version or a delta patch from a previous version.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class PatchFile {
+    /**
+     * The version id of the directory containing the file.
+     */
+    private final String version;
+    /**
+     * The name of the file in the directory of the version.
+     */
+    private final String fileName;
+    /**
+     * The size of the file in bytes, {@code -1} if unknown.
+     */
+    private final long size;
+
+    /**
+     * Constructs a {@code PatchFile} with the specified parameters.
+     * @param version the version id of the directory containing the file.
+     * @param fileName the name of the file in the directory of the version.
+     * @param size the size of the file in bytes, {@code -1} if unknown.
+     */
+    PatchFile(final String version, final String fileName, final long size) {
+        this.version = version;
+        this.fileName = fileName;
+        this.size = size;
+    }
+
+    /**
+     * Gives the version id of the directory containing the file.
+     * @return the version id of the directory containing the file.
+     */
+    String version() {
+        return version;
+    }
+
+    /**
+     * Gives the name of the file in the directory of the version.
+     * @return the name of the file.
+     */
+    String fileName() {
+        return fileName;
+    }
+
+    /**
+     * Gives the size of the file.
+     * @return the size of the file in bytes, {@code -1} if unknown.
+     */
+    long size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s", version, fileName);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class planning the cheapest patch allowing to upgrade an application from its installed version to the
+ * latest version. The directory of the latest version can contain a delta patch whose name is provided by
+ * {@link ConnectionConfiguration#deltaPatchFileName(String)}, allowing to upgrade from the installed version,
+ * while the full patch of the latest version allows to upgrade from any version. The size of the files is used
+ * as cost. Only one patch is planned since the patches cannot be framed into the target stream, the last plan
+ * is kept as long as the versions do not change and at most {@link ConnectionConfiguration#versionsTtl()}
+ * milliseconds to avoid listing the files again, such that an uploaded or replaced patch is seen as soon as
+ * the versions are refreshed.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class PatchPlanner {
+    /**
+     * The repository from which the files are listed.
+     */
+    private final Repository repository;
+    /**
+     * The last plan, {@code null} if none.
+     */
+    private volatile Plan last;
+
+    /**
+     * Constructs a {@code PatchPlanner} with the specified repository.
+     * @param repository the repository from which the files are listed.
+     */
+    PatchPlanner(final Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Plans the cheapest patch allowing to upgrade from the installed version to the latest version.
+     * @param installed the version id of the installed application, {@code null} if unknown.
+     * @param versions the versions available.
+     * @return the delta patch from the installed version if it is smaller than the full patch of the latest
+     * version, the full patch otherwise or if the delta patches are not enabled.
+     * @throws ApplicationException if the files could not be listed.
+     */
+    PatchFile plan(final String installed, final SortedSet<String> versions) throws ApplicationException {
+        final ConnectionConfiguration configuration = repository.configuration();
+        final String latest = versions.last();
+        final String fullName = configuration.patchFileName();
+        final String deltaName = installed == null || repository.versionComparator().compare(installed, latest) >= 0
+            ? null : configuration.deltaPatchFileName(installed);
+        if (deltaName == null || !Compression.of(deltaName).isAvailable()) {
+            return new PatchFile(latest, fullName, -1L);
+        }
+        final long now = System.nanoTime();
+        final Plan plan = this.last;
+        if (plan != null && plan.matches(fullName, deltaName, versions)
+            && now - plan.created < TimeUnit.MILLISECONDS.toNanos(configuration.versionsTtl())) {
+            return plan.file;
+        }
+        final PatchFile file = cheapest(latest, fullName, deltaName);
+        this.last = new Plan(fullName, deltaName, versions, file, now);
+        return file;
+    }
+
+    /**
+     * Gives the cheapest patch between the specified delta patch and full patch of the latest version.
+     * @param latest the latest version.
+     * @param fullName the name of the full patch.
+     * @param deltaName the name of the delta patch from the installed version.
+     * @return the cheapest patch.
+     * @throws ApplicationException if the files could not be listed.
+     */
+    private PatchFile cheapest(final String latest, final String fullName, final String deltaName)
+        throws ApplicationException {
+        if (!repository.getFiles(latest).contains(deltaName)) {
+            return new PatchFile(latest, fullName, -1L);
+        }
+        final long deltaSize = repository.getFileSize(latest, deltaName);
+        if (deltaSize < 0L) {
+            return new PatchFile(latest, fullName, -1L);
+        }
+        final long fullSize = repository.getFileSize(latest, fullName);
+        if (fullSize >= 0L && fullSize <= deltaSize) {
+            return new PatchFile(latest, fullName, fullSize);
+        }
+        return new PatchFile(latest, deltaName, deltaSize);
+    }
+
+    /**
+     * A plan with the versions and the names of the patches from which it has been computed.
+     */
+    private static final class Plan {
+        /**
+         * The name of the full patch.
+         */
+        private final String fullName;
+        /**
+         * The name of the delta patch from the installed version.
+         */
+        private final String deltaName;
+        /**
+         * The versions from which the plan has been computed.
+         */
+        private final SortedSet<String> versions;
+        /**
+         * The planned patch.
+         */
+        private final PatchFile file;
+        /**
+         * The time in nanoseconds at which the plan has been computed.
+         */
+        private final long created;
+
+        /**
+         * Constructs a {@code Plan} with the specified parameters.
+         * @param fullName the name of the full patch.
+         * @param deltaName the name of the delta patch from the installed version.
+         * @param versions the versions from which the plan has been computed.
+         * @param file the planned patch.
+         * @param created the time in nanoseconds at which the plan has been computed.
+         */
+        Plan(final String fullName, final String deltaName, final SortedSet<String> versions,
+             final PatchFile file, final long created) {
+            this.fullName = fullName;
+            this.deltaName = deltaName;
+            this.versions = versions;
+            this.file = file;
+            this.created = created;
+        }
+
+        /**
+         * Indicates whether the plan has been computed from the specified patches and versions, the versions
+         * are compared by reference first since they are reused as long as they have not been modified.
+         * @param fullName the name of the full patch.
+         * @param deltaName the name of the delta patch from the installed version.
+         * @param versions the versions available.
+         * @return {@code true} if the plan can be reused, {@code false} otherwise.
+         */
+        boolean matches(final String fullName, final String deltaName, final SortedSet<String> versions) {
+            return Objects.equals(this.fullName, fullName) && this.deltaName.equals(deltaName)
+                && (this.versions == versions || this.versions.equals(versions));
+        }
+    }
+}
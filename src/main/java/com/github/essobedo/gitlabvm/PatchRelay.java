@@ -0,0 +1,705 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A lightweight relay allowing one process to serve the listings and the patches of a gitlab project to
+ * all the nodes of a site. The relay authenticates to gitlab on its own, caches the listings for
+ * {@link ConnectionConfiguration#relayListingTtl()} milliseconds and the patches into the cache of patches,
+ * then serves them over HTTP with the same end points as gitlab, such that a version manager can use it
+ * simply by using the address of the relay as end point. The nodes must use the same login and password as
+ * the relay. Concurrent requests of the same patch are collapsed into one single download.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public final class PatchRelay implements Closeable {
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(PatchRelay.class.getName());
+    /**
+     * The status code of a successful request.
+     */
+    private static final int OK_CODE = 200;
+    /**
+     * The status code of a successful creation.
+     */
+    private static final int CREATED_CODE = 201;
+    /**
+     * The status code of a partial content.
+     */
+    private static final int PARTIAL_CONTENT_CODE = 206;
+    /**
+     * The status code of a content that has not been modified.
+     */
+    private static final int NOT_MODIFIED_CODE = 304;
+    /**
+     * The status code of a request that is not authorized.
+     */
+    private static final int UNAUTHORIZED_CODE = 401;
+    /**
+     * The status code of a resource that could not be found.
+     */
+    private static final int NOT_FOUND_CODE = 404;
+    /**
+     * The status code of a range that cannot be satisfied.
+     */
+    private static final int RANGE_NOT_SATISFIABLE_CODE = 416;
+    /**
+     * The status code of a request that could not be served due to an error of gitlab.
+     */
+    private static final int BAD_GATEWAY_CODE = 502;
+    /**
+     * The status code of a request that could not be served for now.
+     */
+    private static final int SERVICE_UNAVAILABLE_CODE = 503;
+    /**
+     * The length to use to send a response without body.
+     */
+    private static final int NO_BODY = -1;
+    /**
+     * The size of the private token in bytes.
+     */
+    private static final int TOKEN_SIZE = 20;
+    /**
+     * The max size of the form of a request in bytes.
+     */
+    private static final int MAX_FORM_SIZE = 8192;
+    /**
+     * The path of the listing of the root of the branch.
+     */
+    private static final String ROOT = "";
+    /**
+     * The prefix of the value of the header {@code Range}.
+     */
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * The configuration used to access to gitlab.
+     */
+    private final ConnectionConfiguration configuration;
+    /**
+     * The repository used to access to gitlab.
+     */
+    private final Repository repository;
+    /**
+     * The cache of patches from which the patches are served.
+     */
+    private final PatchCache cache;
+    /**
+     * The private token to provide to the nodes.
+     */
+    private final String token;
+    /**
+     * The listings retrieved or being retrieved per path.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Listing>> listings = new ConcurrentHashMap<>();
+    /**
+     * The patches being downloaded per key.
+     */
+    private final SingleFlight<String, File> downloads = new SingleFlight<>();
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+    /**
+     * The executor of the requests.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a {@code PatchRelay} with the specified parameters.
+     * @param endpoint the end point of gitlab.
+     * @param configuration the configuration used to access to gitlab.
+     * @param server the HTTP server.
+     * @throws ApplicationException if the configuration is not valid.
+     */
+    private PatchRelay(final String endpoint, final ConnectionConfiguration configuration, final HttpServer server)
+        throws ApplicationException {
+        this.configuration = configuration;
+        this.repository = new Repository(endpoint, configuration);
+        this.cache = PatchCache.create(configuration, new CacheStatistics());
+        if (cache == null) {
+            throw new ApplicationException("The relay requires a cache of patches");
+        }
+        final byte[] bytes = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(bytes);
+        this.token = Hashes.hex(bytes);
+        this.server = server;
+        final int threads = Math.max(1, configuration.relayThreads());
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new DaemonThreadFactory("gitlabvm-relay"));
+        server.setExecutor(executor);
+        server.createContext("/api/v3/session", this::session);
+        server.createContext("/api/v3/projects/", this::tree);
+        server.createContext("/", this::raw);
+    }
+
+    /**
+     * Starts a relay listening to the specified address.
+     * @param endpoint the end point of gitlab.
+     * @param configuration the configuration used to access to gitlab, which must define a cache of patches.
+     * @param address the address to which the relay is bound, use the port {@code 0} to get an ephemeral port.
+     * @return the relay started.
+     * @throws ApplicationException if the configuration is not valid or the relay could not be started.
+     */
+    public static PatchRelay start(final String endpoint, final ConnectionConfiguration configuration,
+                                   final InetSocketAddress address) throws ApplicationException {
+        final HttpServer server;
+        try {
+            server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not bind the relay to '%s'", address), e);
+        }
+        final PatchRelay relay;
+        try {
+            relay = new PatchRelay(endpoint, configuration, server);
+        } catch (ApplicationException | RuntimeException e) {
+            server.stop(0);
+            throw e;
+        }
+        server.start();
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The relay of '%s' is listening to '%s'", endpoint,
+                server.getAddress()));
+        }
+        return relay;
+    }
+
+    /**
+     * Gives the address to which the relay is bound.
+     * @return the address of the relay.
+     */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * Gives the end point to use to access to the relay from the local host.
+     * @return the end point of the relay.
+     */
+    public String endpoint() {
+        return String.format("http://localhost:%d", server.getAddress().getPort());
+    }
+
+    /**
+     * Stops the relay.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Provides the private token to the nodes that use the same login and password as the relay.
+     * @param exchange the exchange to process.
+     * @throws IOException if the response could not be sent.
+     */
+    private void session(final HttpExchange exchange) throws IOException {
+        try {
+            final Map<String, String> parameters = formParameters(exchange);
+            if (!"POST".equals(exchange.getRequestMethod())
+                || !equals(configuration.login(), parameters.get("login"))
+                || !equals(configuration.password(), parameters.get("password"))) {
+                exchange.sendResponseHeaders(UNAUTHORIZED_CODE, NO_BODY);
+                return;
+            }
+            send(exchange, CREATED_CODE, String.format("{\"private_token\":\"%s\"}", token), null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Serves the listing of the root of the branch or of the directory of a version.
+     * @param exchange the exchange to process.
+     * @throws IOException if the response could not be sent.
+     */
+    private void tree(final HttpExchange exchange) throws IOException {
+        try {
+            final Map<String, String> parameters = parameters(exchange);
+            if (!token.equals(parameters.get("private_token"))) {
+                exchange.sendResponseHeaders(UNAUTHORIZED_CODE, NO_BODY);
+                return;
+            }
+            final String[] segments = exchange.getRequestURI().getPath().split("/");
+            // The path is /api/v3/projects/{id}/repository/tree
+            if (segments.length != 7 || !"repository".equals(segments[5]) || !"tree".equals(segments[6])
+                || !configuration.projectId().equals(decode(segments[4]))
+                || !configuration.branch().equals(parameters.get("ref_name"))) {
+                exchange.sendResponseHeaders(NOT_FOUND_CODE, NO_BODY);
+                return;
+            }
+            final String path = parameters.get("path");
+            final Listing listing = listing(path == null || path.isEmpty() ? ROOT : path);
+            // The whole listing is served as one single page
+            exchange.getResponseHeaders().set("X-Total-Pages", "1");
+            if (listing.isEmpty()) {
+                exchange.sendResponseHeaders(NOT_FOUND_CODE, NO_BODY);
+            } else if (listing.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().set("ETag", listing.etag);
+                exchange.sendResponseHeaders(NOT_MODIFIED_CODE, NO_BODY);
+            } else {
+                send(exchange, OK_CODE, listing.body, listing.etag);
+            }
+        } catch (ApplicationException e) {
+            fail(exchange, "Could not get the listing", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Serves a file of the directory of a version.
+     * @param exchange the exchange to process.
+     * @throws IOException if the response could not be sent.
+     */
+    private void raw(final HttpExchange exchange) throws IOException {
+        try {
+            if (!token.equals(parameters(exchange).get("private_token"))) {
+                exchange.sendResponseHeaders(UNAUTHORIZED_CODE, NO_BODY);
+                return;
+            }
+            final String[] segments = exchange.getRequestURI().getRawPath().split("/");
+            // The path is /{owner}/{project}/raw/{branch}/{version}/{file}
+            if (segments.length != 7 || !"raw".equals(segments[3])
+                || !configuration.projectOwner().equals(decode(segments[1]))
+                || !configuration.projectName().equals(decode(segments[2]))
+                || !configuration.branch().equals(decode(segments[4]))) {
+                exchange.sendResponseHeaders(NOT_FOUND_CODE, NO_BODY);
+                return;
+            }
+            final String version = decode(segments[5]);
+            final String fileName = decode(segments[6]);
+            if (!listing(version).names.contains(fileName)) {
+                exchange.sendResponseHeaders(NOT_FOUND_CODE, NO_BODY);
+                return;
+            }
+            final File file = fetch(version, fileName);
+            if (file == null) {
+                exchange.sendResponseHeaders(SERVICE_UNAVAILABLE_CODE, NO_BODY);
+                return;
+            }
+            serve(exchange, file);
+        } catch (ApplicationException e) {
+            fail(exchange, "Could not get the file", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends the content of the specified file, the header {@code Range} is supported if it contains one
+     * single range.
+     * @param exchange the exchange to process.
+     * @param file the file to send.
+     * @throws IOException if the file could not be sent.
+     */
+    private static void serve(final HttpExchange exchange, final File file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long length = channel.size();
+            final String etag = String.format("\"%s-%d\"", file.getName(), file.lastModified());
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            long start = 0L;
+            long end = length - 1L;
+            int status = OK_CODE;
+            if (range != null && range.startsWith(BYTES_UNIT) && range.indexOf(',') == -1
+                && (ifRange == null || etag.equals(ifRange))) {
+                final String[] bounds = range.substring(BYTES_UNIT.length()).trim().split("-", -1);
+                try {
+                    if (bounds[0].isEmpty()) {
+                        start = Math.max(0L, length - Long.parseLong(bounds[1]));
+                    } else {
+                        start = Long.parseLong(bounds[0]);
+                        if (!bounds[1].isEmpty()) {
+                            end = Math.min(end, Long.parseLong(bounds[1]));
+                        }
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    start = 0L;
+                    end = length - 1L;
+                }
+                if (start >= length || start > end) {
+                    exchange.getResponseHeaders().set("Content-Range", String.format("bytes */%d", length));
+                    exchange.sendResponseHeaders(RANGE_NOT_SATISFIABLE_CODE, NO_BODY);
+                    return;
+                }
+                status = PARTIAL_CONTENT_CODE;
+                exchange.getResponseHeaders().set("Content-Range",
+                    String.format("bytes %d-%d/%d", start, end, length));
+            }
+            final long count = end - start + 1L;
+            exchange.sendResponseHeaders(status, count == 0L ? NO_BODY : count);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                final WritableByteChannel target = Channels.newChannel(outputStream);
+                long position = start;
+                while (position <= end) {
+                    position += channel.transferTo(position, end - position + 1L, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the listing of the specified path, the listings are retrieved from gitlab at most once per
+     * {@link ConnectionConfiguration#relayListingTtl()} milliseconds and concurrent requests of the same
+     * listing are collapsed.
+     * @param path the path of the listing, {@link #ROOT} for the root of the branch.
+     * @return the listing of the path.
+     * @throws ApplicationException if the listing could not be retrieved.
+     */
+    private Listing listing(final String path) throws ApplicationException {
+        while (true) {
+            final CompletableFuture<Listing> current = listings.get(path);
+            if (current != null && (!current.isDone() || isValid(current))) {
+                return join(current);
+            }
+            final CompletableFuture<Listing> next = new CompletableFuture<>();
+            if (current == null ? listings.putIfAbsent(path, next) == null : listings.replace(path, current, next)) {
+                try {
+                    next.complete(load(path));
+                } catch (ApplicationException | RuntimeException e) {
+                    listings.remove(path, next);
+                    next.completeExceptionally(e);
+                }
+                return join(next);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the specified listing that has been retrieved can still be used.
+     * @param listing the listing retrieved.
+     * @return {@code true} if the listing has been successfully retrieved and has not expired,
+     * {@code false} otherwise.
+     */
+    private static boolean isValid(final CompletableFuture<Listing> listing) {
+        final Listing value = listing.getNow(null);
+        return value != null && System.nanoTime() - value.expiration < 0L;
+    }
+
+    /**
+     * Retrieves the listing of the specified path from gitlab.
+     * @param path the path of the listing, {@link #ROOT} for the root of the branch.
+     * @return the listing of the path.
+     * @throws ApplicationException if the listing could not be retrieved.
+     */
+    private Listing load(final String path) throws ApplicationException {
+        final long expiration = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configuration.relayListingTtl());
+        if (ROOT.equals(path)) {
+            return new Listing(repository.getVersions(), "tree", expiration);
+        }
+        return new Listing(repository.getFiles(path), "blob", expiration);
+    }
+
+    /**
+     * Gives the file of the specified patch from the cache, the patch is downloaded first if it is not yet in
+     * the cache, concurrent requests of the same patch are collapsed into one single download.
+     * @param version the version id of the directory containing the patch.
+     * @param fileName the name of the patch.
+     * @return the file of the patch, {@code null} if it could not be stored into the cache.
+     * @throws ApplicationException if the patch could not be downloaded.
+     */
+    private File fetch(final String version, final String fileName) throws ApplicationException {
+        final String key = PatchCache.key(configuration, version, fileName);
+        final File cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return downloads.execute(key, () -> download(version, fileName, key));
+    }
+
+    /**
+     * Downloads the specified patch into the cache, the integrity of the patch is checked if a checksum file
+     * is stored next to it according to {@link ConnectionConfiguration#checksumAlgorithm()}.
+     * @param version the version id of the directory containing the patch.
+     * @param fileName the name of the patch.
+     * @param key the key of the patch in the cache.
+     * @return the file of the patch, {@code null} if it could not be stored into the cache.
+     * @throws ApplicationException if the patch could not be downloaded or is corrupted.
+     */
+    private File download(final String version, final String fileName, final String key)
+        throws ApplicationException {
+        final PatchFile file = new PatchFile(version, fileName, -1L);
+        final String algorithm = configuration.checksumAlgorithm();
+        final Checksum checksum = algorithm != null
+            && listing(version).names.contains(Checksum.fileName(fileName, algorithm))
+            ? Checksum.of(repository, file) : null;
+        try (final PatchCache.Writer writer = cache.write(key)) {
+            if (writer == null) {
+                // The patch is being downloaded by another process
+                return null;
+            }
+            if (!PatchDownloader.download(repository, file, checksum, writer, null, PatchDownloader.Listener.NONE)) {
+                return null;
+            }
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not download the file '%s/%s'", version,
+                fileName), e);
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, String.format("The file '%s/%s' has been downloaded by the relay", version,
+                fileName));
+        }
+        return cache.get(key);
+    }
+
+    /**
+     * Waits for the specified result.
+     * @param future the result to wait for.
+     * @param <V> the type of the result.
+     * @return the result.
+     * @throws ApplicationException if the result could not be computed.
+     */
+    private static <V> V join(final CompletableFuture<V> future) throws ApplicationException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while waiting for gitlab", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApplicationException) {
+                throw (ApplicationException) e.getCause();
+            }
+            throw new ApplicationException("Could not access to gitlab", e.getCause());
+        }
+    }
+
+    /**
+     * Responds with an error due to a failure of gitlab.
+     * @param exchange the exchange to process.
+     * @param message the message to log.
+     * @param e the failure.
+     * @throws IOException if the response could not be sent.
+     */
+    private static void fail(final HttpExchange exchange, final String message, final ApplicationException e)
+        throws IOException {
+        if (LOG.isLoggable(Level.WARNING)) {
+            LOG.log(Level.WARNING, String.format("%s for the request '%s'", message,
+                exchange.getRequestURI().getPath()), e);
+        }
+        exchange.sendResponseHeaders(BAD_GATEWAY_CODE, NO_BODY);
+    }
+
+    /**
+     * Sends the specified JSON content.
+     * @param exchange the exchange to process.
+     * @param status the status code of the response.
+     * @param content the content to send.
+     * @param etag the value of the header {@code ETag}, {@code null} if none.
+     * @throws IOException if the content could not be sent.
+     */
+    private static void send(final HttpExchange exchange, final int status, final String content,
+                             final String etag) throws IOException {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Extracts the parameters of the query of the specified exchange.
+     * @param exchange the exchange from which the parameters are extracted.
+     * @return the parameters of the query.
+     */
+    private static Map<String, String> parameters(final HttpExchange exchange) {
+        final Map<String, String> result = new HashMap<>();
+        parse(exchange.getRequestURI().getRawQuery(), result);
+        return result;
+    }
+
+    /**
+     * Extracts the parameters of the query and of the form of the specified exchange, like gitlab which
+     * accepts both.
+     * @param exchange the exchange from which the parameters are extracted.
+     * @return the parameters of the query and of the form.
+     * @throws IOException if the form could not be read.
+     */
+    private static Map<String, String> formParameters(final HttpExchange exchange) throws IOException {
+        final Map<String, String> result = parameters(exchange);
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            final ByteArrayOutputStream form = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[MAX_FORM_SIZE];
+            int length;
+            try (final InputStream inputStream = exchange.getRequestBody()) {
+                while ((length = inputStream.read(buffer)) != -1 && form.size() < MAX_FORM_SIZE) {
+                    form.write(buffer, 0, length);
+                }
+            }
+            parse(new String(form.toByteArray(), StandardCharsets.UTF_8), result);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the specified URL encoded parameters.
+     * @param parameters the URL encoded parameters to parse, {@code null} if none.
+     * @param result the map into which the parameters are added.
+     */
+    private static void parse(final String parameters, final Map<String, String> result) {
+        if (parameters == null) {
+            return;
+        }
+        for (final String parameter : parameters.split("&")) {
+            final int index = parameter.indexOf('=');
+            if (index > 0) {
+                result.put(decode(parameter.substring(0, index)), decode(parameter.substring(index + 1)));
+            }
+        }
+    }
+
+    /**
+     * Decodes the specified URL encoded value.
+     * @param value the value to decode.
+     * @return the decoded value.
+     */
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    /**
+     * Compares the specified secrets in constant time.
+     * @param expected the expected secret.
+     * @param actual the secret provided.
+     * @return {@code true} if the secrets are equal, {@code false} otherwise.
+     */
+    private static boolean equals(final String expected, final String actual) {
+        return actual != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+            actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A listing retrieved from gitlab, serialized in the format of the tree API.
+     */
+    private static final class Listing {
+        /**
+         * The names of the entries of the listing.
+         */
+        private final Collection<String> names;
+        /**
+         * The listing in the format of the tree API.
+         */
+        private final String body;
+        /**
+         * The value of the header {@code ETag} of the listing.
+         */
+        private final String etag;
+        /**
+         * The time in nanoseconds at which the listing expires.
+         */
+        private final long expiration;
+
+        /**
+         * Constructs a {@code Listing} with the specified parameters.
+         * @param names the names of the entries of the listing.
+         * @param type the type of the entries of the listing.
+         * @param expiration the time in nanoseconds at which the listing expires.
+         */
+        Listing(final Collection<String> names, final String type, final long expiration) {
+            this.names = names;
+            this.expiration = expiration;
+            final StringBuilder json = new StringBuilder("[");
+            for (final String name : names) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append("{\"name\":\"");
+                escape(json, name);
+                json.append("\",\"type\":\"").append(type).append("\"}");
+            }
+            this.body = json.append(']').toString();
+            this.etag = String.format("\"%08x\"", body.hashCode());
+        }
+
+        /**
+         * Indicates whether the listing is empty, which means that the path does not exist.
+         * @return {@code true} if the listing is empty, {@code false} otherwise.
+         */
+        boolean isEmpty() {
+            return names.isEmpty();
+        }
+
+        /**
+         * Appends the specified value escaped as a JSON string.
+         * @param json the JSON content to which the value is appended.
+         * @param value the value to escape.
+         */
+        private static void escape(final StringBuilder json, final String value) {
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < ' ') {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+        }
+    }
+}
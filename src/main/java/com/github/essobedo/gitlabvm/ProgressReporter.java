@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The class reporting the progress of a copy, the updates are coalesced such that they are reported at most
+ * every {@link #MIN_INTERVAL} nanoseconds unless the progress moved by at least one percent. The message is
+ * only formatted when it is reported and its value changed, otherwise the last message is reused, so the
+ * copy is not slowed down by the callbacks of the user interface on fast links.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class ProgressReporter {
+    /**
+     * The min amount of nanoseconds between two reported updates.
+     */
+    static final long MIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100L);
+    /**
+     * The amount of steps of the progress, an update is reported as soon as the progress moved by one step.
+     */
+    private static final int STEPS = 100;
+    /**
+     * The total used to report the progress when the size is unknown.
+     */
+    private static final long UNKNOWN_TOTAL = 4096L;
+    /**
+     * The amount of bytes for which the progress is reported at the half of {@link #UNKNOWN_TOTAL} when the
+     * size is unknown.
+     */
+    private static final long UNKNOWN_HALF_SIZE = 1024L * 1024L;
+
+    /**
+     * The listener to which the updates are reported.
+     */
+    private final Listener listener;
+    /**
+     * The key of the message to report.
+     */
+    private final String messageKey;
+    /**
+     * The clock giving the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+    /**
+     * The total amount of bytes to copy, {@code -1} if unknown.
+     */
+    private long total = -1L;
+    /**
+     * The amount of bytes copied when the last update was reported.
+     */
+    private long reportedDone;
+    /**
+     * The time in nanoseconds at which the last update was reported.
+     */
+    private long reportedTime;
+    /**
+     * The value of the last reported message, {@code -1} if no message has been reported.
+     */
+    private long reportedValue = -1L;
+
+    /**
+     * Constructs a {@code ProgressReporter} with the specified parameters.
+     * @param listener the listener to which the updates are reported.
+     * @param messageKey the key of the message to report whose parameter is the amount of kilobytes copied.
+     */
+    ProgressReporter(final Listener listener, final String messageKey) {
+        this(listener, messageKey, System::nanoTime);
+    }
+
+    /**
+     * Constructs a {@code ProgressReporter} with the specified parameters.
+     * @param listener the listener to which the updates are reported.
+     * @param messageKey the key of the message to report whose parameter is the amount of kilobytes copied.
+     * @param clock the clock giving the current time in nanoseconds.
+     */
+    ProgressReporter(final Listener listener, final String messageKey, final LongSupplier clock) {
+        this.listener = listener;
+        this.messageKey = messageKey;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts reporting the progress of a new copy, the initial progress is always reported.
+     * @param done the amount of bytes already copied.
+     * @param total the total amount of bytes to copy, {@code -1} if unknown.
+     */
+    void start(final long done, final long total) {
+        this.total = total > done ? total : -1L;
+        this.reportedValue = -1L;
+        report(done, false);
+    }
+
+    /**
+     * Updates the amount of bytes copied, the update is reported only if enough time elapsed or the progress
+     * moved by at least one percent since the last reported update.
+     * @param done the amount of bytes copied so far.
+     */
+    void update(final long done) {
+        if (clock.getAsLong() - reportedTime >= MIN_INTERVAL
+            || total > 0L && (done - reportedDone) * STEPS >= total) {
+            report(done, true);
+        }
+    }
+
+    /**
+     * Reports the end of the copy.
+     * @param done the total amount of bytes copied.
+     */
+    void finish(final long done) {
+        report(done, true);
+        if (total > 0L) {
+            listener.progress(total, total);
+        } else {
+            listener.progress(UNKNOWN_TOTAL, UNKNOWN_TOTAL);
+        }
+    }
+
+    /**
+     * Reports the specified progress.
+     * @param done the amount of bytes copied so far.
+     * @param message indicates whether the message should be reported too.
+     */
+    private void report(final long done, final boolean message) {
+        this.reportedDone = done;
+        this.reportedTime = clock.getAsLong();
+        if (total > 0L) {
+            listener.progress(Math.min(done, total), total);
+        } else {
+            // The progress gets closer to the end as the bytes are copied
+            listener.progress(UNKNOWN_TOTAL * done / (done + UNKNOWN_HALF_SIZE), UNKNOWN_TOTAL);
+        }
+        final long value = done / 1024L;
+        if (message && value != reportedValue) {
+            this.reportedValue = value;
+            listener.message(Localization.getMessage(messageKey, value));
+        }
+    }
+
+    /**
+     * The listener to which the updates are reported.
+     */
+    interface Listener {
+        /**
+         * Reports the progress of the copy.
+         * @param done the amount of work done.
+         * @param max the total amount of work to do.
+         */
+        void progress(long done, long max);
+
+        /**
+         * Reports the message describing the progress of the copy.
+         * @param message the message describing the progress.
+         */
+        void message(String message);
+    }
+}
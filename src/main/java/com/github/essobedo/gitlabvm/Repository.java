@@ -19,16 +19,35 @@
 package com.github.essobedo.gitlabvm;
 
 import com.github.essobedo.appma.exception.ApplicationException;
+import com.goebl.david.Request;
 import com.goebl.david.Response;
 import com.goebl.david.Webb;
 import com.goebl.david.WebbException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
-import org.json.JSONArray;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -40,31 +59,115 @@ import org.json.JSONObject;
  * @since 1.0
  */
 final class Repository {
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(Repository.class.getName());
 
     /**
      * The HTTP code in case of an OK.
      */
     private static final int OK_CODE = 200;
+    /**
+     * The HTTP code in case only a part of the resource has been returned.
+     */
+    private static final int PARTIAL_CONTENT_CODE = 206;
+    /**
+     * The HTTP code in case the requested range cannot be served.
+     */
+    private static final int RANGE_NOT_SATISFIABLE_CODE = 416;
+    /**
+     * The HTTP code in case the resource has been found at another location.
+     */
+    private static final int FOUND_CODE = 302;
+    /**
+     * The min value of the HTTP codes from which we consider that the server is failing.
+     */
+    private static final int MIN_SERVER_ERROR_CODE = 500;
+    /**
+     * The path requested to probe the round trip time to an end point.
+     */
+    private static final String PROBE_PATH = "/api/v3/version";
+    /**
+     * The HTTP code in case the resource does not exist.
+     */
+    private static final int NOT_FOUND_CODE = 404;
+    /**
+     * The HTTP code in case the credentials are missing or invalid.
+     */
+    private static final int UNAUTHORIZED_CODE = 401;
+    /**
+     * The path of the sign in page to which gitlab redirects when the private token is invalid.
+     */
+    private static final String SIGN_IN_PATH = "/users/sign_in";
+    /**
+     * The HTTP code in case the resource has not been modified since the last request.
+     */
+    private static final int NOT_MODIFIED_CODE = 304;
     /**
      * The min value of the HTTP codes from which we consider the response as a success.
      */
     private static final int MIN_SUCCESS_CODE = 400;
+    /**
+     * The pattern allowing to extract the number of a page from a link.
+     */
+    private static final Pattern PAGE_PARAMETER = Pattern.compile("[?&]page=(\\d+)");
     /**
      * The encoding used to URL encode the parameters.
      */
     private static final String ENCODING = "UTF-8";
     /**
-     * The private token.
+     * The max amount of characters to read from a checksum file.
+     */
+    private static final int CHECKSUM_FILE_MAX_SIZE = 1024;
+    /**
+     * The executor used to refresh the stale versions in the background.
+     */
+    private static final ExecutorService REFRESHES = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("gitlabvm-refresh"));
+    /**
+     * The executor shared by all the repositories to retrieve the pages of the trees in parallel, the amount of
+     * pages retrieved at the same time for a given listing is bounded by the listing parallelism.
+     */
+    private static final ExecutorService LISTINGS = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("gitlabvm-listing"));
+    /**
+     * The limiter of the bandwidth used to download the patches.
+     */
+    private final BandwidthLimiter limiter;
+    /**
+     * The listener of the metrics of the accesses to gitlab.
      */
-    private String token;
+    private final MetricsListener metrics;
     /**
-     * The {@link Webb} instance allowing to access to gitlab thanks to the http/https protocol.
+     * The selector of the end point to use among the primary end point and its mirrors, each end point
+     * has its own transport shared by all the repositories accessing to it and its own private token.
      */
-    private final Webb webb;
+    private final MirrorSelector mirrors;
+    /**
+     * The hedger of the requests allowing to cut their tail latency.
+     */
+    private final RequestHedger hedger;
     /**
      * The configuration to use to access to gitlab.
      */
     private final ConnectionConfiguration configuration;
+    /**
+     * The last versions retrieved, used to send conditional requests.
+     */
+    private volatile CachedVersions cachedVersions;
+    /**
+     * The statistics of the cache of versions.
+     */
+    private final CacheStatistics versionsStatistics;
+    /**
+     * The listings of versions in progress per project and branch, shared by the concurrent callers.
+     */
+    private final SingleFlight<String, SortedSet<String>> listings = new SingleFlight<>();
+    /**
+     * Indicates whether the versions are being refreshed in the background.
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
     /**
      * Constructs a {@code Repository} with the specified end point and configuration.
@@ -74,105 +177,755 @@ final class Repository {
      */
     Repository(final String endpoint, final ConnectionConfiguration configuration)
         throws ApplicationException {
+        this(endpoint, configuration, new CacheStatistics(), new BandwidthLimiter(), MetricsListener.NONE);
+    }
+
+    /**
+     * Constructs a {@code Repository} with the specified end point, configuration, statistics, limiter and
+     * listener of metrics. The requests are sent to the fastest healthy end point among the specified
+     * end point and the mirrors defined in the configuration.
+     * @param endpoint The end point of the gitlab repository to access.
+     * @param configuration the configuration to use to access to gitlab.
+     * @param versionsStatistics the statistics of the cache of versions to update.
+     * @param limiter the limiter of the bandwidth used to download the patches, in addition to the
+     *                global limiter.
+     * @param metrics the listener of the metrics of the accesses to gitlab.
+     * @throws ApplicationException in case the configuration is not valid.
+     */
+    Repository(final String endpoint, final ConnectionConfiguration configuration,
+               final CacheStatistics versionsStatistics, final BandwidthLimiter limiter,
+               final MetricsListener metrics) throws ApplicationException {
+        this(endpoint, configuration, versionsStatistics, limiter, metrics, null);
+    }
+
+    /**
+     * Constructs a {@code Repository} with the specified end point, configuration, statistics, limiter,
+     * listener of metrics and sessions. The requests are sent to the fastest healthy end point among the
+     * specified end point and the mirrors defined in the configuration.
+     * @param endpoint The end point of the gitlab repository to access.
+     * @param configuration the configuration to use to access to gitlab.
+     * @param versionsStatistics the statistics of the cache of versions to update.
+     * @param limiter the limiter of the bandwidth used to download the patches, in addition to the
+     *                global limiter.
+     * @param metrics the listener of the metrics of the accesses to gitlab.
+     * @param sessions the private tokens shared with the other repositories using the same end points and
+     *                 credentials, {@code null} if the private tokens are not shared.
+     * @throws ApplicationException in case the configuration is not valid.
+     */
+    Repository(final String endpoint, final ConnectionConfiguration configuration,
+               final CacheStatistics versionsStatistics, final BandwidthLimiter limiter,
+               final MetricsListener metrics, final Sessions sessions) throws ApplicationException {
         if (configuration.login() == null || configuration.login().isEmpty()
             || configuration.password() == null || configuration.password().isEmpty()) {
             throw new ApplicationException("The login and/or password cannot be empty");
         }
         this.configuration = configuration;
-        this.webb = Webb.create();
-        webb.setBaseUri(endpoint);
+        this.versionsStatistics = versionsStatistics;
+        this.limiter = limiter;
+        this.metrics = metrics;
+        final Set<String> endpoints = new LinkedHashSet<>();
+        endpoints.add(endpoint);
+        for (final String mirror : configuration.mirrorEndpoints()) {
+            if (mirror != null && !mirror.isEmpty()) {
+                endpoints.add(mirror);
+            }
+        }
+        final List<Mirror> list = new ArrayList<>(endpoints.size());
+        for (final String url : endpoints) {
+            final HttpTransport transport = HttpTransport.of(url, configuration.maxConnections());
+            final boolean primary = url.equals(endpoint);
+            list.add(sessions == null
+                ? new Mirror(url, transport, this::login, TokenStore.create(url, configuration, primary))
+                : new Mirror(url, transport, mirror -> sessions.tokens(url, configuration, primary,
+                    () -> login(mirror))));
+        }
+        this.mirrors = new MirrorSelector(list, TimeUnit.MILLISECONDS.toNanos(configuration.mirrorProbeInterval()),
+            this::probe);
+        this.hedger = new RequestHedger(configuration.hedgePercentile(), configuration.hedgeBudget(), metrics);
     }
 
     /**
-     * Gives the comparator of version ids to use to be able to identify the latest version.
-     * @return the comparator of version ids.
+     * Gives the configuration used to access to gitlab.
+     * @return the configuration used to access to gitlab.
      */
-    Comparator<String> versionComparator() {
-        return this.configuration.versionComparator();
+    ConnectionConfiguration configuration() {
+        return configuration;
     }
 
     /**
-     * Checks if the private token has already been retrieved.
-     * @return {@code true} if the private token has already been retrieved, {@code false} otherwise.
+     * Gives the statistics of the transport used to access to gitlab.
+     * @return the statistics of the transport.
      */
-    private boolean hasToken() {
-        return token != null;
+    TransportStatistics transportStatistics() {
+        return mirrors.primary().transport().statistics();
     }
 
     /**
-     * Retrieves the private token to use to acces to the gitlab repository.
-     * @return the private token to use to acces to the gitlab repository.
-     * @throws ApplicationException if the private token could not be retrieved.
+     * Gives the comparator of version ids to use to be able to identify the latest version.
+     * @return the comparator of version ids.
      */
-    private String findToken() throws ApplicationException {
-        if (hasToken()) {
-            return token;
-        }
+    Comparator<String> versionComparator() {
+        return this.configuration.versionComparator();
+    }
 
+    /**
+     * Logs in to retrieve a new private token to use to acces to the gitlab repository.
+     * @param mirror the end point to which we log in.
+     * @return the new private token to use to acces to the gitlab repository.
+     * @throws ApplicationException if the private token could not be retrieved.
+     */
+    private String login(final Mirror mirror) throws ApplicationException {
+        final long start = System.nanoTime();
         final Response<JSONObject> response;
         try {
-            response = webb
+            final Request request = mirror.webb()
                  .post(String.format("/api/v3/session?login=%s&password=%s",
                      URLEncoder.encode(configuration.login(), Repository.ENCODING),
-                     URLEncoder.encode(configuration.password(), Repository.ENCODING)))
-                 .asJsonObject();
+                     URLEncoder.encode(configuration.password(), Repository.ENCODING)));
+            response = mirror.transport().call(request::asJsonObject);
         } catch (UnsupportedEncodingException | WebbException e) {
+            metrics.error(MetricsListener.Operation.FIND_TOKEN, 0);
             throw new ApplicationException("Could not get the private token", e);
         }
 
         final JSONObject body = response.getBody();
+        final String token;
         try {
             if (response.getStatusCode() >= MIN_SUCCESS_CODE) {
+                metrics.error(MetricsListener.Operation.FIND_TOKEN, response.getStatusCode());
                 throw new ApplicationException(String.format("Could not connect to the server due to the error: %s",
                     response.getResponseMessage()));
             }
-            this.token = body.getString("private_token");
+            token = body.getString("private_token");
         } catch (JSONException e) {
             throw new ApplicationException("Could not extract the private token", e);
         }
-        if (!hasToken()) {
+        if (token == null) {
             throw new ApplicationException("No private token could be found");
         }
+        metrics.latency(MetricsListener.Operation.FIND_TOKEN, System.nanoTime() - start);
         return token;
     }
 
+    /**
+     * Sends a request to the fastest healthy end point, if the response is late a duplicate request is
+     * sent to the next end point according to the configuration of the hedging.
+     * @param operation the operation to which the request belongs.
+     * @param request the function sending the request to a given end point with a given private token.
+     * @return the response of the server.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    private HttpResponse send(final MetricsListener.Operation operation, final AuthenticatedRequest request)
+        throws ApplicationException {
+        return hedger.send(operation, attempt -> send(operation, request, attempt));
+    }
+
+    /**
+     * Sends a request to the fastest healthy end point, if the end point cannot be reached or fails the
+     * request is sent to the next end point. The failures are reported to the listener of metrics.
+     * @param operation the operation to which the request belongs.
+     * @param request the function sending the request to a given end point with a given private token.
+     * @param attempt the number of the attempt, the candidate end points are rotated by this number such
+     *                that a duplicate request is sent to another end point if possible.
+     * @return the response of the server.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    private HttpResponse send(final MetricsListener.Operation operation, final AuthenticatedRequest request,
+                              final int attempt) throws ApplicationException {
+        List<Mirror> candidates = mirrors.candidates();
+        if (attempt > 0 && candidates.size() > 1) {
+            candidates = new ArrayList<>(candidates);
+            Collections.rotate(candidates, -attempt);
+        }
+        ApplicationException failure = null;
+        for (final Iterator<Mirror> iterator = candidates.iterator(); iterator.hasNext();) {
+            final Mirror mirror = iterator.next();
+            final HttpResponse response;
+            try {
+                response = send(operation, mirror, request);
+            } catch (ApplicationException e) {
+                if (!isUnreachable(e)) {
+                    throw e;
+                }
+                failure = e;
+                failover(mirror, iterator.hasNext(), e.getMessage());
+                continue;
+            }
+            final int status = response.statusCode();
+            if (status >= MIN_SERVER_ERROR_CODE && iterator.hasNext()) {
+                metrics.error(operation, status);
+                response.close();
+                failover(mirror, true, response.responseMessage());
+                continue;
+            } else if (status >= MIN_SUCCESS_CODE) {
+                metrics.error(operation, status);
+            }
+            return response;
+        }
+        if (failure == null) {
+            throw new ApplicationException("No end point of gitlab is available to send the request");
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends a request to the specified end point with its current private token, if the token is rejected
+     * by the server the token is refreshed and the request is sent again.
+     * @param operation the operation to which the request belongs.
+     * @param mirror the end point to which the request is sent.
+     * @param request the function sending the request to a given end point with a given private token.
+     * @return the response of the server.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    private HttpResponse send(final MetricsListener.Operation operation, final Mirror mirror,
+                              final AuthenticatedRequest request) throws ApplicationException {
+        final String token = mirror.tokens().token();
+        final HttpResponse response = send(operation, mirror, request, token);
+        if (!isUnauthorized(response)) {
+            return response;
+        }
+        response.close();
+        return send(operation, mirror, request, mirror.tokens().refresh(token));
+    }
+
+    /**
+     * Sends a request to the specified end point with the specified private token, the round trip time
+     * and the failures are recorded to select the best end point, the requests that could not be sent are
+     * reported to the listener of metrics.
+     * @param operation the operation to which the request belongs.
+     * @param mirror the end point to which the request is sent.
+     * @param request the function sending the request to a given end point with a given private token.
+     * @param token the private token to use.
+     * @return the response of the server.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    private HttpResponse send(final MetricsListener.Operation operation, final Mirror mirror,
+                              final AuthenticatedRequest request, final String token) throws ApplicationException {
+        final long start = mirrors.now();
+        final HttpResponse response;
+        try {
+            response = request.send(mirror, token);
+        } catch (ApplicationException e) {
+            metrics.error(operation, 0);
+            if (isUnreachable(e)) {
+                mirror.failure(mirrors.now());
+            }
+            throw e;
+        }
+        record(mirror, response.statusCode(), start);
+        return response;
+    }
+
+    /**
+     * Records the outcome of a request sent to the specified end point.
+     * @param mirror the end point to which the request has been sent.
+     * @param status the status code of the response.
+     * @param start the time in nanoseconds at which the request has been sent.
+     */
+    private void record(final Mirror mirror, final int status, final long start) {
+        final long now = mirrors.now();
+        if (status >= MIN_SERVER_ERROR_CODE) {
+            mirror.failure(now);
+        } else {
+            mirror.success(now - start, now);
+        }
+    }
+
+    /**
+     * Probes the specified end point to measure its round trip time, any response that is not a server
+     * error is considered as a success.
+     * @param mirror the end point to probe.
+     */
+    private void probe(final Mirror mirror) {
+        final long start = mirrors.now();
+        try (HttpResponse response = mirror.transport().open(mirror.webb().get(PROBE_PATH).followRedirects(false))) {
+            record(mirror, response.statusCode(), start);
+        } catch (WebbException e) {
+            mirror.failure(mirrors.now());
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not probe the end point '%s'", mirror.endpoint()), e);
+            }
+        }
+    }
+
+    /**
+     * Logs that the specified end point failed.
+     * @param mirror the end point that failed.
+     * @param next {@code true} if the request is sent to the next end point, {@code false} otherwise.
+     * @param reason the reason of the failure.
+     */
+    private static void failover(final Mirror mirror, final boolean next, final String reason) {
+        if (LOG.isLoggable(Level.WARNING)) {
+            LOG.log(Level.WARNING, String.format("The end point '%s' failed due to '%s'%s", mirror.endpoint(), reason,
+                next ? ", trying the next end point" : ""));
+        }
+    }
+
+    /**
+     * Indicates whether the specified failure is due to an end point that could not be reached.
+     * @param e the failure to check.
+     * @return {@code true} if the end point could not be reached, {@code false} otherwise.
+     */
+    private static boolean isUnreachable(final ApplicationException e) {
+        return e.getCause() instanceof WebbException;
+    }
+
+    /**
+     * Indicates whether the private token has been rejected by the server which is the case if the
+     * status code is {@code 401} or if we are redirected to the sign in page.
+     * @param response the response to check.
+     * @return {@code true} if the private token has been rejected, {@code false} otherwise.
+     */
+    private static boolean isUnauthorized(final HttpResponse response) {
+        if (response.statusCode() == UNAUTHORIZED_CODE) {
+            return true;
+        } else if (response.statusCode() != FOUND_CODE) {
+            return false;
+        }
+        final String location = response.header("Location");
+        return location != null && location.contains(SIGN_IN_PATH);
+    }
+
     /**
      * Gives the list of versions available in the repository ordered using version ids comparator.
+     * The tree of the branch is retrieved page by page, once the total amount of pages is known the
+     * remaining pages are retrieved in parallel. If the versions have already been retrieved from the
+     * same project and branch, conditional requests are sent and the versions previously retrieved are
+     * reused in case none of the pages have been modified. The concurrent calls for the same project
+     * and branch share the same listing and get its result or its failure.
+     * <p>
+     * If a time to live is defined in the configuration, the versions are served without accessing to gitlab
+     * while they are fresh, once expired they are still served during the max staleness while being
+     * refreshed in the background.
      * @return the of versions available.
      * @throws ApplicationException if the list of versions could not be retrieved.
+     * @see ConnectionConfiguration#versionsTtl()
+     * @see ConnectionConfiguration#versionsMaxStale()
      */
     SortedSet<String> getVersions() throws ApplicationException {
-        final String token = findToken();
-        final Response<JSONArray> response;
+        final long ttl = TimeUnit.MILLISECONDS.toNanos(configuration.versionsTtl());
+        final CachedVersions cached = this.cachedVersions;
+        if (ttl > 0L && cached != null && !cached.isInvalidated()
+            && cached.matches(configuration.projectId(), configuration.branch())) {
+            final long age = cached.age(System.nanoTime());
+            if (age < ttl) {
+                versionsStatistics.hit();
+                return cached.versions();
+            } else if (age - ttl < TimeUnit.MILLISECONDS.toNanos(configuration.versionsMaxStale())) {
+                refreshVersions();
+                versionsStatistics.hit();
+                return cached.versions();
+            }
+        }
+        return fetchVersions();
+    }
+
+    /**
+     * Invalidates the versions previously retrieved such that the next call to {@link #getVersions()}
+     * accesses to gitlab, they are still used to send conditional requests.
+     */
+    void invalidate() {
+        final CachedVersions cached = this.cachedVersions;
+        if (cached != null) {
+            this.cachedVersions = cached.invalidated();
+        }
+    }
+
+    /**
+     * Refreshes the versions in the background unless they are already being refreshed.
+     */
+    private void refreshVersions() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        REFRESHES.execute(() -> {
+            try {
+                fetchVersions();
+            } catch (ApplicationException | RuntimeException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, "Could not refresh the versions, the stale versions are still served", e);
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the list of versions from gitlab, the concurrent calls for the same project and branch share
+     * the same listing.
+     * @return the of versions available.
+     * @throws ApplicationException if the list of versions could not be retrieved.
+     */
+    private SortedSet<String> fetchVersions() throws ApplicationException {
+        final long start = System.nanoTime();
+        final SortedSet<String> versions = listings.execute(
+            String.format("%s/%s", configuration.projectId(), configuration.branch()), this::listVersions);
+        metrics.latency(MetricsListener.Operation.GET_VERSIONS, System.nanoTime() - start);
+        return versions;
+    }
+
+    /**
+     * Retrieves the list of versions available in the repository ordered using version ids comparator.
+     * @return the list of versions available.
+     * @throws ApplicationException if the list of versions could not be retrieved.
+     * @see #getVersions()
+     */
+    private SortedSet<String> listVersions() throws ApplicationException {
+        final String projectId = configuration.projectId();
+        final String branch = configuration.branch();
+        final CachedVersions cached = validatableVersions(projectId, branch);
+        final List<TreePage> pages = new ArrayList<>();
+        TreePage page = getTreePage(projectId, branch, 1, cached);
+        pages.add(page);
+        if (page.totalPages() > 1) {
+            pages.addAll(getTreePages(projectId, branch, page.totalPages(), cached));
+        } else {
+            // The total amount of pages is unknown so we follow the links to the next pages
+            while (page.nextPage() > pages.size()) {
+                page = getTreePage(projectId, branch, page.nextPage(), cached);
+                pages.add(page);
+            }
+        }
+        if (cached != null && cached.totalPages() == pages.size() && isNotModified(pages)) {
+            versionsStatistics.hit();
+            this.cachedVersions = cached.validated(System.nanoTime());
+            return cached.versions();
+        }
+        versionsStatistics.miss();
+        final List<String> names = new ArrayList<>();
+        for (final TreePage treePage : pages) {
+            names.addAll(treePage.names());
+        }
+        final SortedSet<String> versions = SortedVersions.sort(names, configuration.versionComparator());
+        this.cachedVersions = new CachedVersions(projectId, branch, pages, versions, System.nanoTime());
+        return versions;
+    }
+
+    /**
+     * Indicates whether all the specified pages have been validated by the server.
+     * @param pages the pages to check.
+     * @return {@code true} if none of the pages have been modified, {@code false} otherwise.
+     */
+    private static boolean isNotModified(final List<TreePage> pages) {
+        for (final TreePage page : pages) {
+            if (!page.isNotModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves in parallel the pages of the tree of the branch from the page {@code 2} to the
+     * specified last page.
+     * @param projectId the id of the project from which we want the versions.
+     * @param branch the name of the branch from which we want the versions.
+     * @param lastPage the number of the last page to retrieve.
+     * @param cached the versions previously retrieved, {@code null} if none.
+     * @return the pages retrieved in order.
+     * @throws ApplicationException if one of the pages could not be retrieved.
+     */
+    private List<TreePage> getTreePages(final String projectId, final String branch, final int lastPage,
+                                        final CachedVersions cached)
+        throws ApplicationException {
+        final int parallelism = Math.min(Math.max(1, configuration.listingParallelism()), lastPage - 1);
+        final List<TreePage> pages = new ArrayList<>(lastPage - 1);
+        if (parallelism == 1) {
+            for (int number = 2; number <= lastPage; number++) {
+                pages.add(getTreePage(projectId, branch, number, cached));
+            }
+            return pages;
+        }
+        // Each worker retrieves the next page to retrieve until all the pages have been retrieved
+        final TreePage[] result = new TreePage[lastPage - 1];
+        final AtomicInteger next = new AtomicInteger(2);
+        final List<Future<?>> futures = new ArrayList<>(parallelism);
         try {
-            response = webb
-                .get(String.format("/api/v3/projects/%s/repository/tree", configuration.projectId()))
+            for (int i = 0; i < parallelism; i++) {
+                futures.add(LISTINGS.submit(() -> {
+                    for (int number = next.getAndIncrement(); number <= lastPage
+                        && !Thread.currentThread().isInterrupted(); number = next.getAndIncrement()) {
+                        result[number - 2] = getTreePage(projectId, branch, number, cached);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            Collections.addAll(pages, result);
+            return pages;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while retrieving the versions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApplicationException) {
+                throw (ApplicationException) e.getCause();
+            }
+            throw new ApplicationException("Could not retrieve the versions", e.getCause());
+        } finally {
+            // Stops the workers that are still running in case of failure
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the specified page of the tree of the branch. If the page has already been retrieved,
+     * a conditional request is sent and the page previously retrieved is reused in case it has not been
+     * modified.
+     * @param projectId the id of the project from which we want the versions.
+     * @param branch the name of the branch from which we want the versions.
+     * @param number the number of the page to retrieve starting from {@code 1}.
+     * @param cached the versions previously retrieved, {@code null} if none.
+     * @return the page retrieved.
+     * @throws ApplicationException if the page could not be retrieved.
+     */
+    private TreePage getTreePage(final String projectId, final String branch, final int number,
+                                 final CachedVersions cached) throws ApplicationException {
+        final TreePage cachedPage = cached == null ? null : cached.page(number);
+        final HttpResponse response = send(MetricsListener.Operation.GET_VERSIONS, (mirror, token) -> {
+            final Request request = mirror.webb()
+                .get(String.format("/api/v3/projects/%s/repository/tree", projectId))
                 .param("private_token", token)
-                .param("ref_name", configuration.branch())
-                .asJsonArray();
-        } catch (WebbException e) {
-            throw new ApplicationException(String.format("Could not access to the versions of the project '%s",
-                configuration.projectId()), e);
+                .param("ref_name", branch)
+                .param("per_page", configuration.listingPageSize())
+                .param("page", number)
+                .header("Accept", "application/json");
+            acceptCompression(request);
+            if (cachedPage != null) {
+                if (cachedPage.etag() != null) {
+                    request.header("If-None-Match", cachedPage.etag());
+                }
+                if (cachedPage.lastModified() > 0L) {
+                    request.ifModifiedSince(cachedPage.lastModified());
+                }
+            }
+            try {
+                return mirror.transport().open(request);
+            } catch (WebbException e) {
+                throw new ApplicationException(String.format("Could not access to the versions of the project '%s",
+                    projectId), e);
+            }
+        });
+        final int totalPages = intHeader(response, "X-Total-Pages");
+        final int nextPage = nextPage(response);
+        if (cachedPage != null && response.statusCode() == NOT_MODIFIED_CODE) {
+            response.close();
+            if (hasPagination(response)) {
+                return cachedPage.notModified(totalPages, nextPage);
+            }
+            return cachedPage.notModified(cachedPage.totalPages(), cachedPage.nextPage());
         }
-        if (response.getStatusCode() >= MIN_SUCCESS_CODE) {
+        if (response.statusCode() >= MIN_SUCCESS_CODE) {
+            response.close();
             throw new ApplicationException(String.format(
                 "Could not find the versions of the project '%s' in the branch '%s' due to the error: %s",
-                configuration.projectId(),
-                configuration.branch(),
-                response.getResponseMessage()));
-        }
-        final JSONArray body = response.getBody();
-        final Comparator<String> comparator = configuration.versionComparator();
-        final SortedSet<String> result = new TreeSet<>(comparator);
-        for (int i = 0; i < body.length(); i++) {
+                projectId,
+                branch,
+                response.responseMessage()));
+        }
+        final List<String> names;
+        try (InputStream body = response.body()) {
+            names = readNames(body);
+        } catch (IOException e) {
+            throw new ApplicationException("Could not extract the versions", e);
+        }
+        return new TreePage(response.header("ETag"), response.lastModified(), names, totalPages,
+            nextPage, false);
+    }
+
+    /**
+     * Indicates whether the response contains pagination headers.
+     * @param response the response to check.
+     * @return {@code true} if the response contains pagination headers, {@code false} otherwise.
+     */
+    private static boolean hasPagination(final HttpResponse response) {
+        return response.header("X-Total-Pages") != null || response.header("X-Next-Page") != null
+            || response.header("Link") != null;
+    }
+
+    /**
+     * Gives the number of the next page from the header {@code X-Next-Page} or the {@code next} link
+     * of the header {@code Link}.
+     * @param response the response from which we extract the number of the next page.
+     * @return the number of the next page, {@code 0} if there is none.
+     */
+    private static int nextPage(final HttpResponse response) {
+        final String nextPage = response.header("X-Next-Page");
+        if (nextPage != null) {
+            return toInt(nextPage);
+        }
+        final String links = response.header("Link");
+        if (links == null) {
+            return 0;
+        }
+        for (final String link : links.split(",")) {
+            if (link.contains("rel=\"next\"")) {
+                final Matcher matcher = PAGE_PARAMETER.matcher(link);
+                return matcher.find() ? toInt(matcher.group(1)) : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gives the value of the specified header as a positive integer.
+     * @param response the response from which we extract the header.
+     * @param name the name of the header.
+     * @return the value of the header, {@code 0} if the header is absent or is not a positive integer.
+     */
+    private static int intHeader(final HttpResponse response, final String name) {
+        final String value = response.header(name);
+        return value == null ? 0 : toInt(value);
+    }
+
+    /**
+     * Converts the specified value into a positive integer.
+     * @param value the value to convert.
+     * @return the converted value, {@code 0} if the value is not a positive integer.
+     */
+    private static int toInt(final String value) {
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Converts the content of the tree of the branch into the sorted set of versions. The content is
+     * read in a streaming fashion, only the names of the entries are kept.
+     * @param body the content of the tree of the branch encoded in UTF-8.
+     * @return the unmodifiable sorted set of versions.
+     * @throws IOException if the versions could not be extracted.
+     */
+    SortedSet<String> toVersions(final InputStream body) throws IOException {
+        return SortedVersions.sort(readNames(body), configuration.versionComparator());
+    }
+
+    /**
+     * Reads the names of the entries of a page of the tree of the branch in a streaming fashion.
+     * @param body the content of the page encoded in UTF-8.
+     * @return the names of the entries.
+     * @throws IOException if the names could not be extracted.
+     */
+    private static List<String> readNames(final InputStream body) throws IOException {
+        final List<String> names = new ArrayList<>();
+        new TreeReader(new InputStreamReader(body, StandardCharsets.UTF_8)).read((name, type) -> {
+            if (name == null) {
+                throw new IOException("An entry of the tree has no name");
+            }
+            names.add(name);
+        });
+        return names;
+    }
+
+    /**
+     * Gives the versions previously retrieved from the specified project and branch if a
+     * conditional request can be sent to validate them.
+     * @param projectId the id of the project from which we want the versions.
+     * @param branch the name of the branch from which we want the versions.
+     * @return the versions previously retrieved, {@code null} if there is none or they cannot be validated.
+     */
+    private CachedVersions validatableVersions(final String projectId, final String branch) {
+        final CachedVersions cached = this.cachedVersions;
+        if (cached == null || !cached.matches(projectId, branch) || !cached.isValidatable()) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Gives the names of the files of the directory of the specified version.
+     * @param version the version id for which we want the files.
+     * @return the names of the files of the directory, an empty list if the directory does not exist.
+     * @throws ApplicationException if the files could not be listed.
+     */
+    List<String> getFiles(final String version) throws ApplicationException {
+        final String projectId = configuration.projectId();
+        final HttpResponse response = send(MetricsListener.Operation.GET_VERSIONS, (mirror, token) -> {
             try {
-                final JSONObject jsonObject = body.getJSONObject(i);
-                result.add(jsonObject.getString("name"));
-            } catch (JSONException e) {
-                throw new ApplicationException("Could not extract the versions", e);
+                return mirror.transport().open(acceptCompression(mirror.webb()
+                    .get(String.format("/api/v3/projects/%s/repository/tree", projectId))
+                    .param("private_token", token)
+                    .param("ref_name", configuration.branch())
+                    .param("path", version)
+                    .param("per_page", configuration.listingPageSize())
+                    .header("Accept", "application/json")));
+            } catch (WebbException e) {
+                throw new ApplicationException(String.format("Could not access to the files of the version '%s",
+                    version), e);
             }
+        });
+        if (response.statusCode() == NOT_FOUND_CODE) {
+            response.close();
+            return Collections.emptyList();
+        } else if (response.statusCode() >= MIN_SUCCESS_CODE) {
+            response.close();
+            throw new ApplicationException(String.format(
+                "Could not find the files of the version '%s' due to the error: %s", version,
+                response.responseMessage()));
+        }
+        try (InputStream body = response.body()) {
+            return readNames(body);
+        } catch (IOException e) {
+            throw new ApplicationException("Could not extract the files", e);
+        }
+    }
+
+    /**
+     * Gives the size of the specified file of the given version thanks to a request of its first byte.
+     * @param version the version id of the directory containing the file.
+     * @param fileName the name of the file.
+     * @return the size of the file in bytes, {@code -1} if it is unknown or the file does not exist.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    long getFileSize(final String version, final String fileName) throws ApplicationException {
+        final HttpResponse response = requestPatch(version, fileName, "bytes=0-0", null);
+        try {
+            if (response.statusCode() == PARTIAL_CONTENT_CODE) {
+                return totalLength(response.header("Content-Range"));
+            } else if (response.statusCode() == OK_CODE) {
+                return contentLength(response);
+            }
+        } finally {
+            response.close();
+        }
+        return -1L;
+    }
+
+    /**
+     * Gives the expected checksum of the specified file of the given version, read from the checksum file
+     * stored next to it.
+     * @param version the version id of the directory containing the file.
+     * @param fileName the name of the file.
+     * @return the expected checksum of the file.
+     * @throws ApplicationException if the checksum file could not be found or is invalid.
+     */
+    byte[] getChecksum(final String version, final String fileName) throws ApplicationException {
+        final String checksumFileName = Checksum.fileName(fileName, configuration.checksumAlgorithm());
+        final HttpResponse response = requestPatch(version, checksumFileName, null, null);
+        if (response.statusCode() != OK_CODE) {
+            response.close();
+            throw new ApplicationException(String.format(
+                "Could not access to the checksum file '%s due to the error: %s",
+                checksumFileName, response.responseMessage()));
+        }
+        final StringBuilder content = new StringBuilder();
+        try (InputStreamReader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+            final char[] buffer = new char[CHECKSUM_FILE_MAX_SIZE];
+            int length;
+            while (content.length() < CHECKSUM_FILE_MAX_SIZE && (length = reader.read(buffer)) != -1) {
+                content.append(buffer, 0, length);
+            }
+            return Checksum.parse(content.toString());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ApplicationException(String.format("Could not read the checksum file '%s", checksumFileName),
+                e);
         }
-        return result;
     }
 
     /**
@@ -181,29 +934,271 @@ final class Repository {
      * @return the content of the patch.
      * @throws ApplicationException if the content of the patch could not be found.
      */
-    InputStream getPatch(final String version) throws ApplicationException {
-        final String token = findToken();
-        final Response<InputStream> response;
+    Patch getPatch(final String version) throws ApplicationException {
+        return getPatch(version, 0L, null);
+    }
+
+    /**
+     * Gets the content of the patch for the specified version id starting from the given offset if the
+     * patch has not been modified since the provided {@code ETag} has been retrieved, otherwise the whole
+     * content is returned.
+     * @param version the version id for which we want the content of the patch.
+     * @param offset the position from which we want to resume the download.
+     * @param etag the value of the header {@code ETag} of the patch partially downloaded, {@code null}
+     *             if unknown in which case the download cannot be resumed.
+     * @return the content of the patch.
+     * @throws ApplicationException if the content of the patch could not be found.
+     */
+    Patch getPatch(final String version, final long offset, final String etag) throws ApplicationException {
+        return getPatch(version, configuration.patchFileName(), offset, etag);
+    }
+
+    /**
+     * Gets the content of the specified file of the given version id starting from the given offset if the
+     * file has not been modified since the provided {@code ETag} has been retrieved, otherwise the whole
+     * content is returned.
+     * @param version the version id for which we want the content of the file.
+     * @param fileName the name of the file in the directory of the version.
+     * @param offset the position from which we want to resume the download.
+     * @param etag the value of the header {@code ETag} of the file partially downloaded, {@code null}
+     *             if unknown in which case the download cannot be resumed.
+     * @return the content of the file.
+     * @throws ApplicationException if the content of the file could not be found.
+     */
+    Patch getPatch(final String version, final String fileName, final long offset, final String etag)
+        throws ApplicationException {
+        final long start = System.nanoTime();
+        final int segments = configuration.downloadSegments();
+        final int segmentSize = configuration.downloadSegmentSize();
+        final Patch patch = getPatch(version, fileName, offset, etag, segments > 1 && segmentSize > 0 ? segmentSize
+            : 0);
+        metrics.latency(MetricsListener.Operation.GET_PATCH, System.nanoTime() - start);
+        return new Patch(new MeteredInputStream(patch.content(), metrics, start), patch.offset(), patch.length(),
+            patch.etag());
+    }
+
+    /**
+     * Gets the content of the patch for the specified version id starting from the given offset if the
+     * patch has not been modified since the provided {@code ETag} has been retrieved, otherwise the whole
+     * content is returned. If a segment size is provided, the patch is downloaded by segments of this size
+     * fetched in parallel.
+     * @param version the version id for which we want the content of the patch.
+     * @param fileName the name of the file in the directory of the version.
+     * @param offset the position from which we want to resume the download.
+     * @param etag the value of the header {@code ETag} of the patch partially downloaded, {@code null}
+     *             if unknown in which case the download cannot be resumed.
+     * @param segmentSize the size of the segments to download in parallel, {@code 0} to download the patch
+     *                    with one single request.
+     * @return the content of the patch.
+     * @throws ApplicationException if the content of the patch could not be found.
+     */
+    private Patch getPatch(final String version, final String fileName, final long offset, final String etag,
+                           final int segmentSize) throws ApplicationException {
+        final boolean resume = offset > 0L && etag != null;
+        final long start = resume ? offset : 0L;
+        final boolean segmented = segmentSize > 0;
+        final HttpResponse response;
+        if (segmented) {
+            response = requestPatch(version, fileName, String.format("bytes=%d-%d", start, start + segmentSize - 1),
+                resume ? etag : null);
+        } else if (resume) {
+            response = requestPatch(version, fileName, String.format("bytes=%d-", start), etag);
+        } else {
+            response = requestPatch(version, fileName, null, null);
+        }
+        final int status = response.statusCode();
+        if ((resume || segmented) && status == RANGE_NOT_SATISFIABLE_CODE) {
+            response.close();
+            return getPatch(version, fileName, 0L, null, 0);
+        } else if ((resume || segmented) && status == PARTIAL_CONTENT_CODE) {
+            final long length = totalLength(response.header("Content-Range"));
+            final String tag = response.header("ETag");
+            if (!segmented || length >= 0L && start + segmentSize >= length) {
+                return new Patch(throttle(response.body()), start, length, tag);
+            } else if (length < 0L || tag == null) {
+                // The remaining segments cannot be validated so we download the patch with one single request
+                response.close();
+                return getPatch(version, fileName, offset, etag, 0);
+            }
+            return new Patch(new SegmentedInputStream(throttle(response.body()),
+                (from, to) -> getPatchSegment(version, fileName, from, to, tag), start + segmentSize, length,
+                segmentSize, configuration.downloadSegments() - 1), start, length, tag);
+        } else if (status != OK_CODE) {
+            response.close();
+            throw new ApplicationException(String.format(
+                "Could not access to the file '%s due to the error: %s",
+                fileName, response.responseMessage()));
+        }
+        return new Patch(throttle(response.body()), 0L, contentLength(response), response.header("ETag"));
+    }
+
+    /**
+     * Gets the specified segment of the patch for the given version id.
+     * @param version the version id for which we want the segment of the patch.
+     * @param fileName the name of the file in the directory of the version.
+     * @param from the position of the first byte of the segment.
+     * @param to the position of the last byte of the segment.
+     * @param etag the value of the header {@code ETag} of the patch, used to make sure that the patch
+     *             has not been modified since the download started.
+     * @return the content of the segment.
+     * @throws ApplicationException if the segment could not be found.
+     * @throws IOException if the segment could not be read.
+     */
+    byte[] getPatchSegment(final String version, final String fileName, final long from, final long to,
+                           final String etag) throws ApplicationException, IOException {
+        final HttpResponse response = requestPatch(version, fileName, String.format("bytes=%d-%d", from, to), etag);
+        if (response.statusCode() != PARTIAL_CONTENT_CODE) {
+            response.close();
+            throw new ApplicationException(String.format(
+                "Could not access to the segment %d-%d of the file '%s due to the error: %s", from, to,
+                fileName, response.responseMessage()));
+        }
+        final byte[] result = new byte[(int) (to - from + 1L)];
+        try (final InputStream inputStream = throttle(response.body())) {
+            int offset = 0;
+            int length;
+            while (offset < result.length
+                && (length = inputStream.read(result, offset, result.length - offset)) != -1) {
+                offset += length;
+            }
+            if (offset < result.length) {
+                throw new IOException(String.format("The segment %d-%d of the file '%s' is incomplete", from, to,
+                    fileName));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sends a request to get the content of the patch for the specified version id.
+     * @param version the version id for which we want the content of the patch.
+     * @param fileName the name of the file in the directory of the version.
+     * @param range the value of the header {@code Range}, {@code null} to get the whole content.
+     * @param ifRange the value of the header {@code If-Range}, {@code null} if the range should not be
+     *                validated.
+     * @return the response of the server.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    private HttpResponse requestPatch(final String version, final String fileName, final String range,
+                                      final String ifRange) throws ApplicationException {
+        return send(MetricsListener.Operation.GET_PATCH, (mirror, token) -> requestPatch(mirror, version, fileName,
+            range, ifRange, token));
+    }
+
+    /**
+     * Sends the request allowing to get the content of the patch for the specified version id to the
+     * specified end point with the specified private token.
+     * @param mirror the end point to which the request is sent.
+     * @param version the version id for which we want the content of the patch.
+     * @param fileName the name of the file in the directory of the version.
+     * @param range the value of the header {@code Range}, {@code null} to get the whole content.
+     * @param ifRange the value of the header {@code If-Range}, {@code null} if the range is unconditional.
+     * @param token the private token.
+     * @return the response of the server.
+     * @throws ApplicationException if the request could not be sent.
+     */
+    private HttpResponse requestPatch(final Mirror mirror, final String version, final String fileName,
+                                      final String range, final String ifRange, final String token)
+        throws ApplicationException {
         try {
-            response = webb
+            final Request request = mirror.webb()
                 .get(String.format("/%s/%s/raw/%s/%s/%s",
                     URLEncoder.encode(configuration.projectOwner(), Repository.ENCODING),
                     URLEncoder.encode(configuration.projectName(), Repository.ENCODING),
                     URLEncoder.encode(configuration.branch(), Repository.ENCODING),
                     URLEncoder.encode(version, Repository.ENCODING),
-                    URLEncoder.encode(configuration.patchFileName(), Repository.ENCODING)))
+                    URLEncoder.encode(fileName, Repository.ENCODING)))
                 .param("private_token", token)
-                .followRedirects(false)
-                .asStream();
+                .followRedirects(false);
+            if (range != null) {
+                request.header("Range", range);
+            } else if (Compression.of(fileName) == Compression.NONE) {
+                acceptCompression(request);
+            }
+            if (ifRange != null) {
+                request.header("If-Range", ifRange);
+            }
+            return mirror.transport().open(request);
         } catch (UnsupportedEncodingException | WebbException e) {
             throw new ApplicationException(String.format("Could not access to the file '%s",
-                configuration.patchFileName()), e);
+                fileName), e);
         }
-        if (response.getStatusCode() != OK_CODE) {
-            throw new ApplicationException(String.format(
-                "Could not access to the file '%s due to the error: %s",
-                configuration.patchFileName(), response.getResponseMessage()));
+    }
+
+    /**
+     * Limits the bandwidth used to read the specified content of a patch according to the limiter of this
+     * repository and the global limiter.
+     * @param content the content of the patch.
+     * @return the content of the patch whose bandwidth is limited.
+     */
+    private InputStream throttle(final InputStream content) {
+        return new ThrottledInputStream(content, limiter, BandwidthLimiter.global());
+    }
+
+    /**
+     * Allows the server to compress the response with {@code gzip} if it is enabled, the response is
+     * then decompressed transparently when read.
+     * @param request the request to which the header {@code Accept-Encoding} is added.
+     * @return the provided request.
+     */
+    private Request acceptCompression(final Request request) {
+        if (configuration.compressedTransfer()) {
+            request.header(Webb.HDR_ACCEPT_ENCODING, "gzip");
+        }
+        return request;
+    }
+
+    /**
+     * Gives the length of the content of the specified response from the header {@code Content-Length}
+     * unless the content has been compressed for the transfer in which case its length is unknown.
+     * @param response the response of the server.
+     * @return the length of the content, {@code -1} if unknown.
+     */
+    private static long contentLength(final HttpResponse response) {
+        final String encoding = response.header(Webb.HDR_CONTENT_ENCODING);
+        final String length = response.header("Content-Length");
+        if (length != null && (encoding == null || "identity".equalsIgnoreCase(encoding.trim()))) {
+            try {
+                return Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                // The length is unknown
+            }
         }
-        return response.getBody();
+        return -1L;
+    }
+
+    /**
+     * Extracts the total length of a resource from the value of the header {@code Content-Range}.
+     * @param contentRange the value of the header {@code Content-Range} of the form
+     *                     {@code bytes <first>-<last>/<total>}.
+     * @return the total length of the resource, {@code -1} if unknown.
+     */
+    private static long totalLength(final String contentRange) {
+        if (contentRange != null) {
+            final int index = contentRange.lastIndexOf('/');
+            if (index != -1) {
+                try {
+                    return Long.parseLong(contentRange.substring(index + 1).trim());
+                } catch (NumberFormatException e) {
+                    // The total length is unknown
+                }
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * The function sending a request to a given end point with a given private token.
+     */
+    @FunctionalInterface
+    private interface AuthenticatedRequest {
+        /**
+         * Sends the request to the specified end point with the specified private token.
+         * @param mirror the end point to which the request is sent.
+         * @param token the private token to use.
+         * @return the response of the server.
+         * @throws ApplicationException if the request could not be sent.
+         */
+        HttpResponse send(Mirror mirror, String token) throws ApplicationException;
     }
 }
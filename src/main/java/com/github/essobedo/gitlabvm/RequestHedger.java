@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The class allowing to cut the tail latency of the requests thanks to hedging. If the response of a
+ * request has not been received within the configured percentile of the response times previously
+ * observed for the same operation, a duplicate request is sent and the first response received is used,
+ * the other one is closed as soon as it is received. The total amount of duplicate requests is bounded
+ * by a budget expressed as a ratio of the total amount of requests.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class RequestHedger {
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(RequestHedger.class.getName());
+    /**
+     * The executor of the requests shared by all the hedgers.
+     */
+    private static final ExecutorService REQUESTS = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("gitlabvm-hedge"));
+    /**
+     * The min total amount of response times to observe before hedging the requests of an operation.
+     */
+    static final int MIN_SAMPLES = 20;
+    /**
+     * The max amount of duplicate requests that can be accumulated in the budget, to allow small bursts.
+     */
+    private static final double MAX_BUDGET = 10d;
+    /**
+     * The percentile of the response times after which a duplicate request is sent, {@code 0} if the
+     * requests are not hedged.
+     */
+    private final double percentile;
+    /**
+     * The amount of duplicate requests earned per request.
+     */
+    private final double ratio;
+    /**
+     * The executor of the requests.
+     */
+    private final Executor executor;
+    /**
+     * The listener of the metrics notified of the duplicate requests.
+     */
+    private final MetricsListener metrics;
+    /**
+     * The response times of each operation.
+     */
+    private final Map<MetricsListener.Operation, LatencyHistogram> responseTimes =
+        new EnumMap<>(MetricsListener.Operation.class);
+    /**
+     * The amount of duplicate requests that can be sent.
+     */
+    private double budget;
+
+    /**
+     * Constructs a {@code RequestHedger} with the specified parameters.
+     * @param percentile the percentile of the response times after which a duplicate request is sent,
+     *                   {@code 0} to disable the hedging.
+     * @param ratio the max ratio of duplicate requests.
+     * @param metrics the listener of the metrics notified of the duplicate requests.
+     */
+    RequestHedger(final double percentile, final double ratio, final MetricsListener metrics) {
+        this(percentile, ratio, metrics, REQUESTS);
+    }
+
+    /**
+     * Constructs a {@code RequestHedger} with the specified parameters.
+     * @param percentile the percentile of the response times after which a duplicate request is sent,
+     *                   {@code 0} to disable the hedging.
+     * @param ratio the max ratio of duplicate requests.
+     * @param metrics the listener of the metrics notified of the duplicate requests.
+     * @param executor the executor of the requests.
+     */
+    RequestHedger(final double percentile, final double ratio, final MetricsListener metrics,
+                  final Executor executor) {
+        this.percentile = Math.min(1d, Math.max(0d, percentile));
+        this.ratio = Math.max(0d, ratio);
+        this.metrics = metrics;
+        this.executor = executor;
+        for (final MetricsListener.Operation operation : MetricsListener.Operation.values()) {
+            responseTimes.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Gives the delay after which a duplicate request of the specified operation is sent.
+     * @param operation the operation of the request.
+     * @return the delay in nanoseconds, {@code -1} if the requests of the operation are not hedged yet.
+     */
+    long delay(final MetricsListener.Operation operation) {
+        final LatencyHistogram histogram = responseTimes.get(operation);
+        if (percentile <= 0d || ratio <= 0d || histogram.count() < MIN_SAMPLES) {
+            return -1L;
+        }
+        return histogram.percentile(percentile);
+    }
+
+    /**
+     * Sends a request of the specified operation and sends a duplicate request if no response has been
+     * received within the delay given by {@link #delay(MetricsListener.Operation)} and the budget allows it.
+     * @param operation the operation of the request.
+     * @param request the function sending the request, the attempt {@code 0} being the original request and
+     *                the attempt {@code 1} the duplicate request.
+     * @param <V> the type of the response.
+     * @return the first response received.
+     * @throws ApplicationException if none of the requests succeeded.
+     */
+    <V extends Closeable> V send(final MetricsListener.Operation operation, final Attempt<V> request)
+        throws ApplicationException {
+        final long delay = delay(operation);
+        earn();
+        if (delay < 0L) {
+            return timed(operation, request, 0);
+        }
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(2);
+        final CompletableFuture<V> original = submit(operation, request, 0);
+        race(original, result, pending);
+        try {
+            return original.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (spend()) {
+                metrics.hedged(operation);
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, String.format("No response after %d ms, sending a duplicate request",
+                        TimeUnit.NANOSECONDS.toMillis(delay)));
+                }
+                race(submit(operation, request, 1), result, pending);
+                return join(result);
+            }
+            return join(original);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.thenAccept(RequestHedger::close);
+            throw new ApplicationException("Interrupted while waiting for the response", e);
+        } catch (ExecutionException e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Makes the specified attempt compete for the result, the first successful attempt completes the
+     * result and the response of the other attempt is closed, if all the attempts failed the result is
+     * completed with the last failure.
+     * @param attempt the attempt competing for the result.
+     * @param result the result of the competition.
+     * @param pending the total amount of attempts that could still complete the result.
+     * @param <V> the type of the response.
+     */
+    private static <V extends Closeable> void race(final CompletableFuture<V> attempt,
+                                                   final CompletableFuture<V> result, final AtomicInteger pending) {
+        attempt.whenComplete((response, error) -> {
+            if (error == null) {
+                if (!result.complete(response)) {
+                    close(response);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * Sends the specified attempt asynchronously.
+     * @param operation the operation of the request.
+     * @param request the function sending the request.
+     * @param attempt the number of the attempt.
+     * @param <V> the type of the response.
+     * @return the future response.
+     */
+    private <V extends Closeable> CompletableFuture<V> submit(final MetricsListener.Operation operation,
+                                                              final Attempt<V> request, final int attempt) {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(timed(operation, request, attempt));
+                } catch (ApplicationException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the specified attempt and records its response time in case of success.
+     * @param operation the operation of the request.
+     * @param request the function sending the request.
+     * @param attempt the number of the attempt.
+     * @param <V> the type of the response.
+     * @return the response.
+     * @throws ApplicationException if the request failed.
+     */
+    private <V extends Closeable> V timed(final MetricsListener.Operation operation, final Attempt<V> request,
+                                          final int attempt) throws ApplicationException {
+        final long start = System.nanoTime();
+        final V response = request.send(attempt);
+        responseTimes.get(operation).record(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Adds to the budget the amount of duplicate requests earned by a request.
+     */
+    private synchronized void earn() {
+        budget = Math.min(MAX_BUDGET, budget + ratio);
+    }
+
+    /**
+     * Spends one duplicate request from the budget if possible.
+     * @return {@code true} if a duplicate request can be sent, {@code false} otherwise.
+     */
+    private synchronized boolean spend() {
+        if (budget < 1d) {
+            return false;
+        }
+        budget -= 1d;
+        return true;
+    }
+
+    /**
+     * Waits for the specified response.
+     * @param future the future response.
+     * @param <V> the type of the response.
+     * @return the response.
+     * @throws ApplicationException if the request failed or the thread has been interrupted.
+     */
+    private static <V extends Closeable> V join(final CompletableFuture<V> future) throws ApplicationException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.thenAccept(RequestHedger::close);
+            throw new ApplicationException("Interrupted while waiting for the response", e);
+        } catch (ExecutionException e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Gives the exception to throw for the specified failure of a request.
+     * @param e the failure of the request.
+     * @return the exception to throw.
+     */
+    private static ApplicationException failure(final ExecutionException e) {
+        if (e.getCause() instanceof ApplicationException) {
+            return (ApplicationException) e.getCause();
+        }
+        return new ApplicationException("Could not send the request", e.getCause());
+    }
+
+    /**
+     * Closes quietly the specified response that will not be used.
+     * @param response the response to close.
+     */
+    private static void close(final Closeable response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Could not close the response of a request", e);
+            }
+        }
+    }
+
+    /**
+     * The function sending a request.
+     * @param <V> the type of the response.
+     */
+    @FunctionalInterface
+    interface Attempt<V> {
+        /**
+         * Sends the request.
+         * @param attempt the number of the attempt, {@code 0} for the original request and {@code 1} for
+         *                the duplicate request.
+         * @return the response.
+         * @throws ApplicationException if the request failed.
+         */
+        V send(int attempt) throws ApplicationException;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link InputStream} giving the content of a patch that is downloaded by segments fetched in parallel.
+ * The segments are read in order, knowing that a bounded amount of segments are downloaded in advance while
+ * the previous segments are being read.
+ *
+ * <p>The segments of all the downloads are fetched by a shared pool of at most {@link #MAX_FETCHES} threads
+ * and at most {@link #MAX_BUFFERED_BYTES} bytes can be kept in the buffers of the segments of all the
+ * downloads, once reached a download only fetches its next segment when the previous one has been read.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class SegmentedInputStream extends InputStream {
+    /**
+     * The max amount of segments that can be fetched at the same time by all the downloads.
+     */
+    static final int MAX_FETCHES = 16;
+    /**
+     * The max amount of bytes that can be kept in the buffers of the segments of all the downloads.
+     */
+    static final int MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+    /**
+     * The amount of seconds after which an idle thread of the executor is released.
+     */
+    private static final long KEEP_ALIVE_TIME = 60L;
+    /**
+     * The executor shared by all the downloads to fetch the segments.
+     */
+    private static final ExecutorService FETCHES = newExecutor();
+    /**
+     * The amount of bytes that can still be kept in the buffers of the segments.
+     */
+    private static final Semaphore BUFFERS = new Semaphore(MAX_BUFFERED_BYTES);
+    /**
+     * The object allowing to fetch the segments.
+     */
+    private final SegmentFetcher fetcher;
+    /**
+     * The total size of the patch.
+     */
+    private final long length;
+    /**
+     * The size of the segments.
+     */
+    private final int segmentSize;
+    /**
+     * The max amount of segments that can be downloaded in advance.
+     */
+    private final int parallelism;
+    /**
+     * The segments being downloaded in order.
+     */
+    private final Queue<Segment> pending;
+    /**
+     * The position of the first byte of the next segment to download.
+     */
+    private long next;
+    /**
+     * The segment being read, {@code null} if the end of the patch has been reached.
+     */
+    private InputStream current;
+    /**
+     * The amount of bytes of the buffers reserved by the segment being read.
+     */
+    private int currentPermits;
+
+    /**
+     * Constructs a {@code SegmentedInputStream} with the specified parameters.
+     * @param first the content of the first segment.
+     * @param fetcher the object allowing to fetch the segments.
+     * @param next the position of the first byte of the second segment.
+     * @param length the total size of the patch.
+     * @param segmentSize the size of the segments.
+     * @param parallelism the max amount of segments that can be downloaded in advance.
+     */
+    SegmentedInputStream(final InputStream first, final SegmentFetcher fetcher, final long next, final long length,
+                         final int segmentSize, final int parallelism) {
+        this.current = first;
+        this.fetcher = fetcher;
+        this.next = next;
+        this.length = length;
+        this.segmentSize = segmentSize;
+        this.parallelism = Math.max(1, parallelism);
+        this.pending = new ArrayDeque<>(this.parallelism);
+        fill();
+    }
+
+    /**
+     * Creates the executor shared by all the downloads to fetch the segments whose threads are released
+     * when idle.
+     * @return the executor to use to fetch the segments.
+     */
+    private static ExecutorService newExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_FETCHES, MAX_FETCHES, KEEP_ALIVE_TIME,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory("gitlabvm-segment"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Gives the amount of bytes that can still be kept in the buffers of the segments of all the downloads.
+     * @return the amount of bytes of the buffers that are not reserved.
+     */
+    static int availableBuffers() {
+        return BUFFERS.availablePermits();
+    }
+
+    /**
+     * Submits the next segments to download until the max amount of segments downloaded in advance
+     * is reached or there is not enough space left in the buffers of the segments.
+     */
+    private void fill() {
+        while (pending.size() < parallelism && next < length) {
+            final int permits = permits();
+            if (!BUFFERS.tryAcquire(permits)) {
+                return;
+            }
+            submit(permits);
+        }
+    }
+
+    /**
+     * Gives the amount of bytes of the buffers to reserve for the next segment to download.
+     * @return the size of the next segment bounded by the max amount of bytes that can be kept in the buffers.
+     */
+    private int permits() {
+        return (int) Math.min(Math.min(next + segmentSize, length) - next, MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * Submits the next segment to download.
+     * @param permits the amount of bytes of the buffers reserved for the segment.
+     */
+    private void submit(final int permits) {
+        final long from = next;
+        final long to = Math.min(from + segmentSize, length) - 1L;
+        pending.add(new Segment(FETCHES.submit(() -> fetcher.fetch(from, to)), permits));
+        this.next = to + 1L;
+    }
+
+    /**
+     * Moves to the next segment if the current one has been fully read.
+     * @return {@code true} if there is still a segment to read, {@code false} otherwise.
+     * @throws IOException if the next segment could not be downloaded.
+     */
+    private boolean nextSegment() throws IOException {
+        current.close();
+        BUFFERS.release(currentPermits);
+        this.currentPermits = 0;
+        if (pending.isEmpty() && next < length) {
+            // No space was left in the buffers, we wait for it without keeping any buffer
+            final int permits = permits();
+            try {
+                BUFFERS.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for space to download a segment");
+            }
+            submit(permits);
+        }
+        final Segment segment = pending.poll();
+        if (segment == null) {
+            this.current = null;
+            return false;
+        }
+        this.currentPermits = segment.permits;
+        try {
+            this.current = new ByteArrayInputStream(segment.future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading a segment");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not download a segment", e.getCause());
+        }
+        fill();
+        return true;
+    }
+    @Override
+    public int read() throws IOException {
+        while (current != null) {
+            final int result = current.read();
+            if (result != -1) {
+                return result;
+            } else if (!nextSegment()) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (current != null) {
+            final int result = current.read(b, off, len);
+            if (result != -1) {
+                return result;
+            } else if (!nextSegment()) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final Segment segment : pending) {
+            segment.future.cancel(true);
+            BUFFERS.release(segment.permits);
+        }
+        pending.clear();
+        BUFFERS.release(currentPermits);
+        this.currentPermits = 0;
+        if (current != null) {
+            current.close();
+            this.current = null;
+        }
+    }
+
+    /**
+     * The object allowing to fetch a segment of the patch.
+     */
+    @FunctionalInterface
+    interface SegmentFetcher {
+        /**
+         * Fetches the specified segment of the patch.
+         * @param from the position of the first byte of the segment.
+         * @param to the position of the last byte of the segment.
+         * @return the content of the segment.
+         * @throws ApplicationException if the segment could not be found.
+         * @throws IOException if the segment could not be read.
+         */
+        byte[] fetch(long from, long to) throws ApplicationException, IOException;
+    }
+
+    /**
+     * A segment being downloaded.
+     */
+    private static final class Segment {
+        /**
+         * The future content of the segment.
+         */
+        final Future<byte[]> future;
+        /**
+         * The amount of bytes of the buffers reserved for the segment.
+         */
+        final int permits;
+
+        /**
+         * Constructs a {@code Segment} with the specified parameters.
+         * @param future the future content of the segment.
+         * @param permits the amount of bytes of the buffers reserved for the segment.
+         */
+        Segment(final Future<byte[]> future, final int permits) {
+            this.future = future;
+            this.permits = permits;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The private tokens shared by several repositories accessing to the same end point with the same
+ * credentials, such that only one login is needed whatever the total amount of projects accessed.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class Sessions {
+    /**
+     * The managers of the private tokens per end point and credentials.
+     */
+    private final ConcurrentMap<String, TokenManager> managers = new ConcurrentHashMap<>();
+
+    /**
+     * Gives the manager of the private token of the specified end point and of the credentials defined in the
+     * specified configuration, it is created if it does not exist yet.
+     * @param endpoint the end point of the gitlab repository.
+     * @param configuration the configuration to use to access to gitlab.
+     * @param primary {@code true} if the end point is the primary end point, {@code false} if it is a mirror.
+     * @param login the function allowing to log in if the manager is created.
+     * @return the manager of the private token.
+     */
+    TokenManager tokens(final String endpoint, final ConnectionConfiguration configuration, final boolean primary,
+                        final TokenManager.Login login) {
+        return managers.computeIfAbsent(key(endpoint, configuration),
+            key -> new TokenManager(login, TokenStore.create(endpoint, configuration, primary)));
+    }
+
+    /**
+     * Gives the key identifying the specified end point and the credentials defined in the specified
+     * configuration, the credentials are hashed to avoid keeping the password in clear.
+     * @param endpoint the end point of the gitlab repository.
+     * @param configuration the configuration to use to access to gitlab.
+     * @return the key of the end point and the credentials.
+     */
+    static String key(final String endpoint, final ConnectionConfiguration configuration) {
+        final String id = String.join("\n", endpoint, String.valueOf(configuration.login()),
+            String.valueOf(configuration.password()));
+        return Hashes.sha256(id);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The class allowing to coalesce the concurrent calls with the same key into one single call, whose
+ * result or failure is given to all the callers. Once the call is completed, the next call with the
+ * same key is executed again.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ * @param <K> the type of the keys of the calls.
+ * @param <V> the type of the results of the calls.
+ */
+final class SingleFlight<K, V> {
+    /**
+     * The calls in progress per key.
+     */
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * Executes the specified call unless a call with the same key is in progress in which case its
+     * result is awaited.
+     * @param key the key of the call.
+     * @param call the call to execute.
+     * @return the result of the call.
+     * @throws ApplicationException if the call failed.
+     */
+    V execute(final K key, final Call<V> call) throws ApplicationException {
+        final CompletableFuture<V> flight = new CompletableFuture<>();
+        final CompletableFuture<V> current = calls.putIfAbsent(key, flight);
+        if (current != null) {
+            return await(current);
+        }
+        try {
+            final V result = call.call();
+            flight.complete(result);
+            return result;
+        } catch (ApplicationException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, flight);
+        }
+    }
+
+    /**
+     * Waits for the result of the specified call in progress.
+     * @param flight the call in progress.
+     * @return the result of the call.
+     * @throws ApplicationException if the call failed or the thread has been interrupted.
+     */
+    private V await(final CompletableFuture<V> flight) throws ApplicationException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while waiting for a concurrent call", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ApplicationException) {
+                throw (ApplicationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ApplicationException("The concurrent call failed", cause);
+        }
+    }
+
+    /**
+     * The call to execute.
+     * @param <V> the type of the result of the call.
+     */
+    @FunctionalInterface
+    interface Call<V> {
+        /**
+         * Executes the call.
+         * @return the result of the call.
+         * @throws ApplicationException if the call failed.
+         */
+        V call() throws ApplicationException;
+    }
+}
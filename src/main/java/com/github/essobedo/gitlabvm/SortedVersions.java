@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An immutable sorted set of version ids backed by an array of distinct version ids already sorted, allowing
+ * to sort the version ids only once when the default comparator is used. The version ids are parsed once
+ * when sorted and kept with the set such that looking for a version id only parses the version id to look for.
+ *
+ * <p>The views provided by {@link #headSet(String)}, {@link #tailSet(String)} and
+ * {@link #subSet(String, String)} share the same arrays and, like the views of a {@link TreeSet}, throw an
+ * {@link IllegalArgumentException} if asked for a view whose bounds are out of their own range.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class SortedVersions extends AbstractSet<String> implements SortedSet<String> {
+    /**
+     * The distinct parsed version ids sorted.
+     */
+    private final VersionKey[] keys;
+    /**
+     * The index of the first version id of this set.
+     */
+    private final int from;
+    /**
+     * The index after the last version id of this set.
+     */
+    private final int to;
+    /**
+     * The lowest version id that this set can contain, {@code null} if unbounded.
+     */
+    private final VersionKey low;
+    /**
+     * The version id above the highest version id that this set can contain, {@code null} if unbounded.
+     */
+    private final VersionKey high;
+
+    /**
+     * Constructs a {@code SortedVersions} with the specified parameters.
+     * @param keys the distinct parsed version ids sorted.
+     * @param from the index of the first version id of this set.
+     * @param to the index after the last version id of this set.
+     * @param low the lowest version id that this set can contain, {@code null} if unbounded.
+     * @param high the version id above the highest version id that this set can contain, {@code null} if
+     *             unbounded.
+     */
+    private SortedVersions(final VersionKey[] keys, final int from, final int to, final VersionKey low,
+                           final VersionKey high) {
+        this.keys = keys;
+        this.from = from;
+        this.to = to;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Sorts the specified version ids using the given comparator. If the default comparator is used,
+     * the version ids are parsed only once, sorted using the parsed version ids and directly wrapped into a
+     * {@code SortedVersions}, otherwise they are added to a {@link TreeSet}.
+     * @param names the version ids to sort.
+     * @param comparator the comparator to use to sort the version ids.
+     * @return the sorted version ids that cannot be modified.
+     */
+    static SortedSet<String> sort(final List<String> names, final Comparator<String> comparator) {
+        if (comparator != VersionKey.COMPARATOR) {
+            final SortedSet<String> result = new TreeSet<>(comparator);
+            result.addAll(names);
+            return Collections.unmodifiableSortedSet(result);
+        }
+        VersionKey.ensureCapacity(names.size());
+        final VersionKey[] keys = new VersionKey[names.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = VersionKey.parse(names.get(i));
+        }
+        Arrays.sort(keys);
+        int total = 0;
+        for (final VersionKey key : keys) {
+            if (total == 0 || keys[total - 1].compareTo(key) != 0) {
+                keys[total++] = key;
+            }
+        }
+        return new SortedVersions(total == keys.length ? keys : Arrays.copyOf(keys, total), 0, total, null, null);
+    }
+
+    /**
+     * Gives the index of the first version id of this set that is greater than or equal to the specified
+     * version id.
+     * @param key the version id to look for.
+     * @return the corresponding index between {@code from} and {@code to}.
+     */
+    private int indexOf(final VersionKey key) {
+        final int index = Arrays.binarySearch(keys, from, to, key);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * Checks that the specified version id can be the lower bound of a view of this set.
+     * @param key the version id to check.
+     * @throws IllegalArgumentException if the version id is out of the range of this set.
+     */
+    private void checkLowerBound(final VersionKey key) {
+        if (low != null && key.compareTo(low) < 0 || high != null && key.compareTo(high) >= 0) {
+            throw new IllegalArgumentException(String.format("The version id '%s' is out of range", key));
+        }
+    }
+
+    /**
+     * Checks that the specified version id can be the upper bound of a view of this set.
+     * @param key the version id to check.
+     * @throws IllegalArgumentException if the version id is out of the range of this set.
+     */
+    private void checkUpperBound(final VersionKey key) {
+        if (low != null && key.compareTo(low) < 0 || high != null && key.compareTo(high) > 0) {
+            throw new IllegalArgumentException(String.format("The version id '%s' is out of range", key));
+        }
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof String && Arrays.binarySearch(keys, from, to, VersionKey.parse((String) o)) >= 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            /**
+             * The index of the next version id.
+             */
+            private int index = from;
+
+            @Override
+            public boolean hasNext() {
+                return index < to;
+            }
+
+            @Override
+            public String next() {
+                if (index >= to) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index++].toString();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return VersionKey.COMPARATOR;
+    }
+
+    @Override
+    public SortedSet<String> subSet(final String fromElement, final String toElement) {
+        final VersionKey lower = VersionKey.parse(fromElement);
+        final VersionKey upper = VersionKey.parse(toElement);
+        if (lower.compareTo(upper) > 0) {
+            throw new IllegalArgumentException("The lower bound is greater than the upper bound");
+        }
+        checkLowerBound(lower);
+        checkUpperBound(upper);
+        return new SortedVersions(keys, indexOf(lower), indexOf(upper), lower, upper);
+    }
+
+    @Override
+    public SortedSet<String> headSet(final String toElement) {
+        final VersionKey upper = VersionKey.parse(toElement);
+        checkUpperBound(upper);
+        return new SortedVersions(keys, from, indexOf(upper), low, upper);
+    }
+
+    @Override
+    public SortedSet<String> tailSet(final String fromElement) {
+        final VersionKey lower = VersionKey.parse(fromElement);
+        checkLowerBound(lower);
+        return new SortedVersions(keys, indexOf(lower), to, lower, high);
+    }
+
+    @Override
+    public String first() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+        return keys[from].toString();
+    }
+
+    @Override
+    public String last() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+        return keys[to - 1].toString();
+    }
+}
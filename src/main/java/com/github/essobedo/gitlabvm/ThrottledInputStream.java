@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream whose bandwidth is limited by several limiters, typically the limiter of the version
+ * manager and the global limiter.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class ThrottledInputStream extends FilterInputStream {
+    /**
+     * The limiters of the bandwidth.
+     */
+    private final BandwidthLimiter[] limiters;
+
+    /**
+     * Constructs a {@code ThrottledInputStream} with the specified parameters.
+     * @param inputStream the underlying stream.
+     * @param limiters the limiters of the bandwidth.
+     */
+    ThrottledInputStream(final InputStream inputStream, final BandwidthLimiter... limiters) {
+        super(inputStream);
+        this.limiters = limiters.clone();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b != -1) {
+            acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        int chunk = len;
+        for (final BandwidthLimiter limiter : limiters) {
+            chunk = limiter.chunk(chunk);
+        }
+        final int length = super.read(b, off, chunk);
+        if (length > 0) {
+            acquire(length);
+        }
+        return length;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        if (skipped > 0L) {
+            acquire((int) Math.min(skipped, Integer.MAX_VALUE));
+        }
+        return skipped;
+    }
+
+    /**
+     * Consumes the specified amount of bytes from all the limiters.
+     * @param bytes the amount of bytes read.
+     * @throws IOException if the thread has been interrupted while waiting.
+     */
+    private void acquire(final int bytes) throws IOException {
+        for (final BandwidthLimiter limiter : limiters) {
+            limiter.acquire(bytes);
+        }
+    }
+}
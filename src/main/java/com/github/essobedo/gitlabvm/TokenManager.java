@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The class managing the life cycle of the private token. The token is retrieved lazily, once
+ * at a time whatever the total amount of threads that need it, from the {@link TokenStore} if
+ * any otherwise thanks to a login. A token rejected by the server can be refreshed, concurrent
+ * refreshes of the same token are collapsed into one single login.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class TokenManager {
+    /**
+     * The function allowing to log in.
+     */
+    private final Login login;
+    /**
+     * The store of the token, {@code null} if the token is not stored.
+     */
+    private final TokenStore store;
+    /**
+     * The current token, {@code null} if not yet retrieved.
+     */
+    private final AtomicReference<String> current = new AtomicReference<>();
+    /**
+     * The retrieval of the token in progress, {@code null} if none.
+     */
+    private final AtomicReference<CompletableFuture<String>> pending = new AtomicReference<>();
+
+    /**
+     * Constructs a {@code TokenManager} with the specified parameters.
+     * @param login the function allowing to log in.
+     * @param store the store of the token, {@code null} if the token must not be stored.
+     */
+    TokenManager(final Login login, final TokenStore store) {
+        this.login = login;
+        this.store = store;
+    }
+
+    /**
+     * Gives the current token, retrieves it if it has not been retrieved yet.
+     * @return the current token.
+     * @throws ApplicationException if the token could not be retrieved.
+     */
+    String token() throws ApplicationException {
+        final String token = current.get();
+        return token == null ? retrieve(null) : token;
+    }
+
+    /**
+     * Refreshes the specified token that has been rejected by the server. If the token has already
+     * been refreshed in the meantime, the new token is returned directly.
+     * @param rejected the token rejected by the server.
+     * @return the new token.
+     * @throws ApplicationException if the token could not be refreshed.
+     */
+    String refresh(final String rejected) throws ApplicationException {
+        final String token = current.get();
+        return token == null || token.equals(rejected) ? retrieve(rejected) : token;
+    }
+
+    /**
+     * Retrieves a token different from the rejected one, if a retrieval is already in progress
+     * its result is awaited.
+     * @param rejected the token rejected by the server, {@code null} if none.
+     * @return the retrieved token.
+     * @throws ApplicationException if the token could not be retrieved.
+     */
+    private String retrieve(final String rejected) throws ApplicationException {
+        final CompletableFuture<String> retrieval = new CompletableFuture<>();
+        while (!pending.compareAndSet(null, retrieval)) {
+            final CompletableFuture<String> inProgress = pending.get();
+            if (inProgress != null) {
+                return await(inProgress);
+            }
+        }
+        try {
+            String token = current.get();
+            if (token == null || token.equals(rejected)) {
+                token = store == null ? null : store.load();
+                if (token == null || token.equals(rejected)) {
+                    token = login.login();
+                    if (store != null) {
+                        store.save(token);
+                    }
+                }
+                current.set(token);
+            }
+            retrieval.complete(token);
+            return token;
+        } catch (ApplicationException | RuntimeException e) {
+            retrieval.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.set(null);
+        }
+    }
+
+    /**
+     * Waits for the retrieval of the token in progress.
+     * @param retrieval the retrieval of the token in progress.
+     * @return the retrieved token.
+     * @throws ApplicationException if the token could not be retrieved.
+     */
+    private static String await(final CompletableFuture<String> retrieval) throws ApplicationException {
+        try {
+            return retrieval.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while waiting for the private token", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApplicationException) {
+                throw (ApplicationException) e.getCause();
+            }
+            throw new ApplicationException("Could not get the private token", e.getCause());
+        }
+    }
+
+    /**
+     * The function allowing to log in to get a new token.
+     */
+    @FunctionalInterface
+    interface Login {
+        /**
+         * Logs in to get a new token.
+         * @return the new token.
+         * @throws ApplicationException if the login failed.
+         */
+        String login() throws ApplicationException;
+    }
+}
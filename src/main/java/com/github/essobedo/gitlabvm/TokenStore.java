@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The file in which the private token is stored encrypted with AES/GCM using a key derived from the
+ * password, allowing to skip the login after a restart. The end point and the login are authenticated
+ * with the token such that a token cannot be reused for another account.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class TokenStore {
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(TokenStore.class.getName());
+    /**
+     * The magic number identifying the format of the file.
+     */
+    private static final int MAGIC = 0x474C5631;
+    /**
+     * The size of the salt in bytes.
+     */
+    private static final int SALT_SIZE = 16;
+    /**
+     * The size of the initialization vector in bytes.
+     */
+    private static final int IV_SIZE = 12;
+    /**
+     * The size of the authentication tag in bits.
+     */
+    private static final int TAG_SIZE = 128;
+    /**
+     * The size of the key in bits.
+     */
+    private static final int KEY_SIZE = 128;
+    /**
+     * The total amount of iterations used to derive the key.
+     */
+    private static final int ITERATIONS = 10000;
+    /**
+     * The max size of the file in bytes.
+     */
+    private static final int MAX_SIZE = 4096;
+    /**
+     * The source of randomness used to generate the salts and the initialization vectors.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+    /**
+     * The file in which the token is stored.
+     */
+    private final File file;
+    /**
+     * The data authenticated with the token.
+     */
+    private final byte[] associatedData;
+    /**
+     * The password from which the key is derived.
+     */
+    private final char[] password;
+
+    /**
+     * Constructs a {@code TokenStore} with the specified parameters.
+     * @param file the file in which the token is stored.
+     * @param endpoint the end point of the gitlab repository.
+     * @param login the login used to get the token.
+     * @param password the password used to get the token.
+     */
+    TokenStore(final File file, final String endpoint, final String login, final String password) {
+        this.file = file;
+        this.associatedData = String.format("%s\n%s", endpoint, login).getBytes(StandardCharsets.UTF_8);
+        this.password = password.toCharArray();
+    }
+
+    /**
+     * Creates the store of the private token corresponding to the specified configuration. The token of the
+     * primary end point is stored in the file defined in the configuration while the token of each mirror is
+     * stored in its own file next to it, named after the end point, such that the mirrors do not overwrite
+     * each other's token.
+     * @param endpoint the end point of the gitlab repository.
+     * @param configuration the configuration to use to access to gitlab.
+     * @param primary {@code true} if the end point is the primary end point, {@code false} if it is a mirror.
+     * @return the store of the private token, {@code null} if the tokens must not be stored.
+     */
+    static TokenStore create(final String endpoint, final ConnectionConfiguration configuration,
+                             final boolean primary) {
+        final File file = configuration.tokenCacheFile();
+        if (file == null) {
+            return null;
+        }
+        return new TokenStore(primary ? file : new File(file.getAbsoluteFile().getParentFile(),
+            String.format("%s.%s", file.getName(), UUID.nameUUIDFromBytes(endpoint.getBytes(StandardCharsets.UTF_8)))),
+            endpoint, configuration.login(), configuration.password());
+    }
+
+    /**
+     * Loads the token from the file.
+     * @return the token stored, {@code null} if there is none or it cannot be decrypted.
+     */
+    String load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            if (file.length() > MAX_SIZE) {
+                throw new IOException("The file is too large");
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buffer.remaining() < 4 + SALT_SIZE + IV_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Unknown format");
+            }
+            final byte[] salt = new byte[SALT_SIZE];
+            buffer.get(salt);
+            final byte[] iv = new byte[IV_SIZE];
+            buffer.get(iv);
+            final Cipher cipher = cipher(Cipher.DECRYPT_MODE, salt, iv);
+            return new String(cipher.doFinal(buffer.array(), buffer.position(), buffer.remaining()),
+                StandardCharsets.UTF_8);
+        } catch (IOException | GeneralSecurityException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not load the private token from '%s'", file), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores the specified token into the file, the file is replaced atomically.
+     * @param token the token to store.
+     */
+    void save(final String token) {
+        File tmp = null;
+        try {
+            final byte[] salt = new byte[SALT_SIZE];
+            final byte[] iv = new byte[IV_SIZE];
+            RANDOM.nextBytes(salt);
+            RANDOM.nextBytes(iv);
+            final byte[] encrypted = cipher(Cipher.ENCRYPT_MODE, salt, iv)
+                .doFinal(token.getBytes(StandardCharsets.UTF_8));
+            final ByteBuffer buffer = ByteBuffer.allocate(4 + SALT_SIZE + IV_SIZE + encrypted.length);
+            buffer.putInt(MAGIC).put(salt).put(iv).put(encrypted);
+            final File directory = file.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException(String.format("Could not create the directory '%s'", directory));
+            }
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            // Only the owner should be able to access to the file, the token is encrypted anyway
+            if (!(tmp.setReadable(false, false) && tmp.setReadable(true, true) && tmp.setWritable(false, false)
+                && tmp.setWritable(true, true)) && LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not restrict the access to '%s'", tmp));
+            }
+            Files.write(tmp.toPath(), buffer.array());
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        } catch (IOException | GeneralSecurityException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not store the private token into '%s'", file), e);
+            }
+        } finally {
+            if (tmp != null && !tmp.delete() && LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not delete the temporary file '%s'", tmp));
+            }
+        }
+    }
+
+    /**
+     * Creates the cipher allowing to encrypt or decrypt the token.
+     * @param mode the mode of the cipher.
+     * @param salt the salt used to derive the key.
+     * @param iv the initialization vector.
+     * @return the initialized cipher.
+     * @throws GeneralSecurityException if the cipher could not be created.
+     */
+    private Cipher cipher(final int mode, final byte[] salt, final byte[] iv) throws GeneralSecurityException {
+        final PBEKeySpec spec = new PBEKeySpec(password, salt, ITERATIONS, KEY_SIZE);
+        final byte[] key;
+        try {
+            key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+        try {
+            final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_SIZE, iv));
+            cipher.updateAAD(associatedData);
+            return cipher;
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of the transport shared by all the repositories accessing to the same end point.
+ * The connections themselves are pooled by the keep-alive cache of the JVM, the transport only bounds
+ * the total amount of requests being sent at the same time, the bodies streamed once their response has
+ * been received are counted separately.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public final class TransportStatistics {
+    /**
+     * The max total amount of connections that can be used at the same time to send a request.
+     */
+    private volatile int maxConnections;
+    /**
+     * The total amount of connections currently used to send a request.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    /**
+     * The total amount of bodies of responses currently streamed.
+     */
+    private final AtomicInteger streams = new AtomicInteger();
+    /**
+     * The total amount of requests sent.
+     */
+    private final AtomicLong requests = new AtomicLong();
+    /**
+     * The total amount of requests that had to wait for a connection to be available.
+     */
+    private final AtomicLong waits = new AtomicLong();
+    /**
+     * The total amount of requests sent over TLS.
+     */
+    private final AtomicLong secureRequests = new AtomicLong();
+    /**
+     * The total amount of TLS handshakes, in other words the total amount of secure connections opened.
+     */
+    private final AtomicLong handshakes = new AtomicLong();
+
+    /**
+     * Constructs a {@code TransportStatistics} with the specified max total amount of connections.
+     * @param maxConnections the max total amount of connections that can be used at the same time.
+     */
+    TransportStatistics(final int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Notifies that a connection is used to send a request.
+     * @param secure {@code true} if the request is sent over TLS, {@code false} otherwise.
+     * @param waited {@code true} if the request had to wait for a connection, {@code false} otherwise.
+     */
+    void acquired(final boolean secure, final boolean waited) {
+        active.incrementAndGet();
+        requests.incrementAndGet();
+        if (secure) {
+            secureRequests.incrementAndGet();
+        }
+        if (waited) {
+            waits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Notifies that a connection is no more used.
+     */
+    void released() {
+        active.decrementAndGet();
+    }
+
+    /**
+     * Notifies that the body of a response is streamed.
+     */
+    void streamOpened() {
+        streams.incrementAndGet();
+    }
+
+    /**
+     * Notifies that the body of a response is no more streamed.
+     */
+    void streamClosed() {
+        streams.decrementAndGet();
+    }
+
+    /**
+     * Sets the max total amount of connections that can be used at the same time to send a request.
+     * @param maxConnections the max total amount of connections.
+     */
+    void maxConnections(final int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Notifies that a TLS handshake has been made to open a new secure connection.
+     */
+    void handshake() {
+        handshakes.incrementAndGet();
+    }
+
+    /**
+     * Gives the max total amount of connections that can be used at the same time to send a request.
+     * @return the max total amount of connections.
+     */
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Gives the total amount of connections currently used to send a request.
+     * @return the total amount of active connections.
+     */
+    public int active() {
+        return active.get();
+    }
+
+    /**
+     * Gives the total amount of connections that can still be used without waiting.
+     * @return the total amount of available connections.
+     */
+    public int available() {
+        return Math.max(0, maxConnections - active());
+    }
+
+    /**
+     * Gives the total amount of bodies of responses currently streamed, such as the patches being downloaded.
+     * @return the total amount of streams.
+     */
+    public int streams() {
+        return streams.get();
+    }
+
+    /**
+     * Gives the total amount of requests sent.
+     * @return the total amount of requests.
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Gives the total amount of requests that had to wait for a connection to be available.
+     * @return the total amount of requests that waited.
+     */
+    public long waits() {
+        return waits.get();
+    }
+
+    /**
+     * Gives the total amount of TLS handshakes made to open new secure connections.
+     * @return the total amount of TLS handshakes.
+     */
+    public long handshakes() {
+        return handshakes.get();
+    }
+
+    /**
+     * Gives the total amount of requests sent over TLS through a connection kept alive, in other words
+     * without having to make a TLS handshake.
+     * @return the total amount of TLS handshakes avoided.
+     */
+    public long handshakesAvoided() {
+        return Math.max(0L, secureRequests.get() - handshakes());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "TransportStatistics{maxConnections=%d, active=%d, streams=%d, requests=%d, waits=%d, handshakes=%d, "
+                + "handshakesAvoided=%d}",
+            maxConnections, active(), streams(), requests(), waits(), handshakes(), handshakesAvoided());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.List;
+
+/**
+ * A page of the tree of a branch retrieved from gitlab with the validators and the pagination
+ * information returned by the server.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class TreePage {
+    /**
+     * The value of the header {@code ETag} returned by the server, {@code null} if none.
+     */
+    private final String etag;
+    /**
+     * The value of the header {@code Last-Modified} returned by the server, {@code 0} if none.
+     */
+    private final long lastModified;
+    /**
+     * The names of the entries of the page.
+     */
+    private final List<String> names;
+    /**
+     * The total amount of pages of the tree, {@code 0} if unknown.
+     */
+    private final int totalPages;
+    /**
+     * The number of the next page, {@code 0} if there is none.
+     */
+    private final int nextPage;
+    /**
+     * Indicates whether the page has been validated by the server thanks to a conditional request.
+     */
+    private final boolean notModified;
+
+    /**
+     * Constructs a {@code TreePage} with the specified parameters.
+     * @param etag the value of the header {@code ETag} returned by the server.
+     * @param lastModified the value of the header {@code Last-Modified} returned by the server.
+     * @param names the names of the entries of the page.
+     * @param totalPages the total amount of pages of the tree, {@code 0} if unknown.
+     * @param nextPage the number of the next page, {@code 0} if there is none.
+     * @param notModified {@code true} if the page has been validated by the server, {@code false} otherwise.
+     */
+    TreePage(final String etag, final long lastModified, final List<String> names, final int totalPages,
+             final int nextPage, final boolean notModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.names = names;
+        this.totalPages = totalPages;
+        this.nextPage = nextPage;
+        this.notModified = notModified;
+    }
+
+    /**
+     * Gives a copy of this page validated by the server with the pagination information of the
+     * response.
+     * @param totalPages the total amount of pages of the tree, {@code 0} if unknown.
+     * @param nextPage the number of the next page, {@code 0} if there is none.
+     * @return the validated copy of this page.
+     */
+    TreePage notModified(final int totalPages, final int nextPage) {
+        return new TreePage(etag, lastModified, names, totalPages, nextPage, true);
+    }
+
+    /**
+     * Indicates whether the server provided at least one validator allowing to send a conditional request.
+     * @return {@code true} if a conditional request can be sent, {@code false} otherwise.
+     */
+    boolean isValidatable() {
+        return etag != null || lastModified > 0L;
+    }
+
+    /**
+     * Gives the value of the header {@code ETag} returned by the server.
+     * @return the value of the header {@code ETag}, {@code null} if none.
+     */
+    String etag() {
+        return etag;
+    }
+
+    /**
+     * Gives the value of the header {@code Last-Modified} returned by the server.
+     * @return the value of the header {@code Last-Modified} in milliseconds, {@code 0} if none.
+     */
+    long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gives the names of the entries of the page.
+     * @return the names of the entries of the page.
+     */
+    List<String> names() {
+        return names;
+    }
+
+    /**
+     * Gives the total amount of pages of the tree.
+     * @return the total amount of pages of the tree, {@code 0} if unknown.
+     */
+    int totalPages() {
+        return totalPages;
+    }
+
+    /**
+     * Gives the number of the next page.
+     * @return the number of the next page, {@code 0} if there is none.
+     */
+    int nextPage() {
+        return nextPage;
+    }
+
+    /**
+     * Indicates whether the page has been validated by the server thanks to a conditional request.
+     * @return {@code true} if the page has not been modified, {@code false} otherwise.
+     */
+    boolean isNotModified() {
+        return notModified;
+    }
+}
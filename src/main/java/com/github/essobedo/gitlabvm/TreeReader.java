@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A streaming reader of the tree of a branch as returned by gitlab. The tree is a JSON array of objects from
+ * which only the fields {@code name} and {@code type} are extracted token by token, the other fields are skipped
+ * such that the tree is read with a small constant amount of memory without building any intermediate
+ * representation.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class TreeReader {
+    /**
+     * The size of the buffer of characters.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * The name of the field containing the name of an entry.
+     */
+    private static final String NAME = "name";
+    /**
+     * The name of the field containing the type of an entry.
+     */
+    private static final String TYPE = "type";
+    /**
+     * The reader from which the tree is read.
+     */
+    private final Reader reader;
+    /**
+     * The buffer of characters.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    /**
+     * The builder reused to read the strings.
+     */
+    private final StringBuilder builder = new StringBuilder(64);
+    /**
+     * The position of the next character to read in the buffer.
+     */
+    private int position;
+    /**
+     * The total amount of characters available in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Constructs a {@code TreeReader} with the specified reader.
+     * @param reader the reader from which the tree is read.
+     */
+    TreeReader(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the whole tree and notifies the given handler for each entry found.
+     * @param handler the handler to notify.
+     * @throws IOException if the tree could not be read or is not a valid JSON array of objects.
+     */
+    void read(final EntryHandler handler) throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            next();
+            return;
+        }
+        do {
+            readEntry(handler);
+        } while (separator(']'));
+    }
+
+    /**
+     * Reads an entry of the tree and notifies the handler.
+     * @param handler the handler to notify.
+     * @throws IOException if the entry could not be read.
+     */
+    private void readEntry(final EntryHandler handler) throws IOException {
+        expect('{');
+        String name = null;
+        String type = null;
+        if (peek() == '}') {
+            next();
+        } else {
+            do {
+                readString();
+                final boolean isName = NAME.contentEquals(builder);
+                final boolean isType = !isName && TYPE.contentEquals(builder);
+                expect(':');
+                if ((isName || isType) && peek() == '"') {
+                    readString();
+                    if (isName) {
+                        name = builder.toString();
+                    } else {
+                        type = builder.toString();
+                    }
+                } else {
+                    skipValue();
+                }
+            } while (separator('}'));
+        }
+        handler.entry(name, type);
+    }
+
+    /**
+     * Reads the separator of the elements of an object or an array.
+     * @param end the character ending the object or the array.
+     * @return {@code true} if another element follows, {@code false} if the end has been reached.
+     * @throws IOException if the separator could not be read.
+     */
+    private boolean separator(final char end) throws IOException {
+        final char c = next();
+        if (c == ',') {
+            return true;
+        } else if (c == end) {
+            return false;
+        }
+        throw error(String.format("',' or '%s'", end), c);
+    }
+
+    /**
+     * Reads a string into the builder.
+     * @throws IOException if the string could not be read.
+     */
+    private void readString() throws IOException {
+        expect('"');
+        builder.setLength(0);
+        for (char c = read(); c != '"'; c = read()) {
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        int value = 0;
+                        for (int i = 0; i < 4; i++) {
+                            final int digit = Character.digit(read(), 16);
+                            if (digit == -1) {
+                                throw new IOException("Invalid unicode escape sequence");
+                            }
+                            value = value * 16 + digit;
+                        }
+                        builder.append((char) value);
+                        break;
+                    default:
+                        builder.append(c);
+                        break;
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Skips a value whatever its type.
+     * @throws IOException if the value could not be skipped.
+     */
+    private void skipValue() throws IOException {
+        final char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                final char current = peek();
+                if (current == '"') {
+                    skipString();
+                    continue;
+                }
+                read();
+                if (current == '{' || current == '[') {
+                    depth++;
+                } else if (current == '}' || current == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else {
+            // A number, true, false or null
+            while (!isDelimiter(peekRaw())) {
+                read();
+            }
+        }
+    }
+
+    /**
+     * Skips a string without keeping its content.
+     * @throws IOException if the string could not be skipped.
+     */
+    private void skipString() throws IOException {
+        expect('"');
+        for (char c = read(); c != '"'; c = read()) {
+            if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the specified character ends a literal value.
+     * @param c the character to check.
+     * @return {@code true} if the character ends a literal value, {@code false} otherwise.
+     */
+    private static boolean isDelimiter(final char c) {
+        return c == ',' || c == '}' || c == ']' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Reads the next non whitespace character and checks that it is the expected one.
+     * @param expected the expected character.
+     * @throws IOException if the next character is not the expected one.
+     */
+    private void expect(final char expected) throws IOException {
+        final char c = next();
+        if (c != expected) {
+            throw error(String.format("'%s'", expected), c);
+        }
+    }
+
+    /**
+     * Reads the next non whitespace character.
+     * @return the next non whitespace character.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    private char next() throws IOException {
+        final char c = peek();
+        position++;
+        return c;
+    }
+
+    /**
+     * Gives the next non whitespace character without consuming it.
+     * @return the next non whitespace character.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    private char peek() throws IOException {
+        char c = peekRaw();
+        while (Character.isWhitespace(c)) {
+            position++;
+            c = peekRaw();
+        }
+        return c;
+    }
+
+    /**
+     * Gives the next character without consuming it.
+     * @return the next character.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    private char peekRaw() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Reads the next character.
+     * @return the next character.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    private char read() throws IOException {
+        final char c = peekRaw();
+        position++;
+        return c;
+    }
+
+    /**
+     * Fills the buffer of characters.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    private void fill() throws IOException {
+        int length;
+        do {
+            length = reader.read(buffer, 0, buffer.length);
+        } while (length == 0);
+        if (length == -1) {
+            throw new IOException("Unexpected end of the tree");
+        }
+        this.position = 0;
+        this.limit = length;
+    }
+
+    /**
+     * Creates the exception to throw when an unexpected character has been found.
+     * @param expected the description of the expected characters.
+     * @param found the character found.
+     * @return the exception to throw.
+     */
+    private static IOException error(final String expected, final char found) {
+        return new IOException(String.format("Invalid tree, %s was expected but '%s' was found", expected, found));
+    }
+
+    /**
+     * The handler notified for each entry of the tree.
+     */
+    @FunctionalInterface
+    interface EntryHandler {
+        /**
+         * Notifies that an entry has been found.
+         * @param name the name of the entry, {@code null} if the entry has no name.
+         * @param type the type of the entry, {@code null} if the entry has no type.
+         * @throws IOException if the entry cannot be accepted.
+         */
+        void entry(String name, String type) throws IOException;
+    }
+}
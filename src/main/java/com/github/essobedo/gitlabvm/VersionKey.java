@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable version id parsed once into segments, allowing to compare version ids without any allocation.
+ *
+ * <p>The version id is split into segments separated by dots, each segment is compared to the segment of the
+ * same index as if the segments were strings padded on the left with {@code *} to the same length, knowing that
+ * the suffix {@code -SNAPSHOT} of a segment is replaced with {@code -} and any other segment is suffixed with
+ * {@code _} such that a snapshot comes before the corresponding release. A missing segment is considered as
+ * {@code *} which comes before any digit.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+final class VersionKey implements Comparable<VersionKey> {
+    /**
+     * The comparator of version ids relying on the cache of parsed version ids.
+     */
+    static final Comparator<String> COMPARATOR = (version1, version2) -> of(version1).compareTo(of(version2));
+    /**
+     * The suffix of the snapshot segments.
+     */
+    private static final String SNAPSHOT = "-SNAPSHOT";
+    /**
+     * The character used to pad the segments.
+     */
+    private static final char PADDING = '*';
+    /**
+     * The character used as terminator of the snapshot segments.
+     */
+    private static final char SNAPSHOT_TERMINATOR = '-';
+    /**
+     * The character used as terminator of the other segments.
+     */
+    private static final char RELEASE_TERMINATOR = '_';
+    /**
+     * The min amount of version ids that can be kept in the cache.
+     */
+    private static final int MIN_CACHE_SIZE = 1 << 16;
+    /**
+     * The max amount of version ids that can be kept in the cache, once reached an arbitrary version id is
+     * evicted for each new version id. It is increased according to the size of the listings of versions.
+     */
+    private static final AtomicInteger MAX_CACHE_SIZE = new AtomicInteger(MIN_CACHE_SIZE);
+    /**
+     * The cache of parsed version ids.
+     */
+    private static final ConcurrentMap<String, VersionKey> CACHE = new ConcurrentHashMap<>();
+    /**
+     * The version id.
+     */
+    private final String value;
+    /**
+     * The index of the first character of each segment.
+     */
+    private final int[] starts;
+    /**
+     * The index after the last character of each segment excluding the suffix {@code -SNAPSHOT}.
+     */
+    private final int[] ends;
+    /**
+     * Indicates for each segment whether it ends with {@code -SNAPSHOT}.
+     */
+    private final boolean[] snapshots;
+
+    /**
+     * Constructs a {@code VersionKey} with the specified parameters.
+     * @param value the version id.
+     * @param starts the index of the first character of each segment.
+     * @param ends the index after the last character of each segment excluding the suffix {@code -SNAPSHOT}.
+     * @param snapshots indicates for each segment whether it ends with {@code -SNAPSHOT}.
+     */
+    private VersionKey(final String value, final int[] starts, final int[] ends, final boolean[] snapshots) {
+        this.value = value;
+        this.starts = starts;
+        this.ends = ends;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Gives the parsed version id corresponding to the specified version id from the cache, the version id
+     * is parsed and put into the cache if it could not be found.
+     * @param value the version id.
+     * @return the corresponding parsed version id.
+     */
+    static VersionKey of(final String value) {
+        VersionKey key = CACHE.get(value);
+        if (key == null) {
+            key = parse(value);
+            if (CACHE.size() >= MAX_CACHE_SIZE.get()) {
+                final Iterator<String> iterator = CACHE.keySet().iterator();
+                if (iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            CACHE.putIfAbsent(value, key);
+        }
+        return key;
+    }
+
+    /**
+     * Makes sure that the cache can keep at least twice the specified amount of version ids, such that
+     * a listing of versions and the version ids compared to it are not evicted while being compared.
+     * @param size the total amount of version ids of a listing.
+     */
+    static void ensureCapacity(final int size) {
+        MAX_CACHE_SIZE.accumulateAndGet((int) Math.min(Integer.MAX_VALUE, 2L * size), Math::max);
+    }
+
+    /**
+     * Parses the specified version id, the segments are extracted the same way as {@code value.split("\\.")}
+     * which means that the trailing empty segments are ignored.
+     * @param value the version id to parse.
+     * @return the corresponding parsed version id.
+     */
+    static VersionKey parse(final String value) {
+        int total = 1;
+        for (int i = value.indexOf('.'); i != -1; i = value.indexOf('.', i + 1)) {
+            total++;
+        }
+        final int[] starts = new int[total];
+        final int[] ends = new int[total];
+        int start = 0;
+        for (int i = 0; i < total; i++) {
+            final int end = value.indexOf('.', start);
+            starts[i] = start;
+            ends[i] = end == -1 ? value.length() : end;
+            start = ends[i] + 1;
+        }
+        if (total > 1) {
+            while (total > 0 && starts[total - 1] == ends[total - 1]) {
+                total--;
+            }
+        }
+        final boolean[] snapshots = new boolean[total];
+        for (int i = 0; i < total; i++) {
+            final int length = ends[i] - starts[i];
+            if (length >= SNAPSHOT.length()
+                && value.regionMatches(ends[i] - SNAPSHOT.length(), SNAPSHOT, 0, SNAPSHOT.length())) {
+                snapshots[i] = true;
+                ends[i] -= SNAPSHOT.length();
+            }
+        }
+        return new VersionKey(value, copyOf(starts, total), copyOf(ends, total), snapshots);
+    }
+
+    /**
+     * Gives the specified array truncated to the given length.
+     * @param array the array to truncate.
+     * @param length the expected length.
+     * @return the provided array if it already has the expected length, a truncated copy otherwise.
+     */
+    private static int[] copyOf(final int[] array, final int length) {
+        if (array.length == length) {
+            return array;
+        }
+        final int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Indicates whether the version id is a snapshot.
+     * @return {@code true} if the last segment ends with {@code -SNAPSHOT}, {@code false} otherwise.
+     */
+    boolean isSnapshot() {
+        return snapshots.length > 0 && snapshots[snapshots.length - 1];
+    }
+
+    /**
+     * Gives the total amount of segments.
+     * @return the total amount of segments.
+     */
+    int segments() {
+        return starts.length;
+    }
+
+    /**
+     * Gives the length of the specified segment once its suffix has been replaced with its terminator.
+     * @param index the index of the segment.
+     * @return the length of the segment including the terminator.
+     */
+    private int length(final int index) {
+        return index < starts.length ? ends[index] - starts[index] + 1 : 2;
+    }
+
+    /**
+     * Gives the character at the specified position of the given segment once its suffix has been replaced
+     * with its terminator.
+     * @param index the index of the segment.
+     * @param position the position of the character in the segment including the terminator.
+     * @return the corresponding character.
+     */
+    private char charAt(final int index, final int position) {
+        if (index >= starts.length) {
+            return position == 0 ? PADDING : RELEASE_TERMINATOR;
+        } else if (position == ends[index] - starts[index]) {
+            return snapshots[index] ? SNAPSHOT_TERMINATOR : RELEASE_TERMINATOR;
+        }
+        return value.charAt(starts[index] + position);
+    }
+
+    @Override
+    public int compareTo(final VersionKey other) {
+        for (int i = 0, total = Math.max(segments(), other.segments()); i < total; i++) {
+            final int length1 = length(i);
+            final int length2 = other.length(i);
+            final int length = Math.max(length1, length2);
+            final int padding1 = length - length1;
+            final int padding2 = length - length2;
+            for (int j = 0; j < length; j++) {
+                final char c1 = j < padding1 ? PADDING : charAt(i, j - padding1);
+                final char c2 = j < padding2 ? PADDING : other.charAt(i, j - padding2);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
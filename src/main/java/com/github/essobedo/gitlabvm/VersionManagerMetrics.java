@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of a version manager, exposed as a MXBean and forwarded to the listeners added thanks to
+ * {@link #addListener(MetricsListener)} to be able to feed any metrics library.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public final class VersionManagerMetrics implements MetricsListener, VersionManagerMetricsMXBean {
+    /**
+     * The domain of the name of the MXBeans.
+     */
+    private static final String DOMAIN = "com.github.essobedo.gitlabvm";
+    /**
+     * The latency of each operation.
+     */
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    /**
+     * The time to first byte of the patches.
+     */
+    private final LatencyHistogram firstByte = new LatencyHistogram();
+    /**
+     * The total amount of bytes of patches downloaded.
+     */
+    private final LongAdder downloadedBytes = new LongAdder();
+    /**
+     * The total time spent in nanoseconds to download the patches.
+     */
+    private final LongAdder downloadNanos = new LongAdder();
+    /**
+     * The total amount of errors per status code.
+     */
+    private final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+    /**
+     * The total amount of duplicate requests sent.
+     */
+    private final LongAdder hedges = new LongAdder();
+    /**
+     * The total amount of tasks canceled.
+     */
+    private final LongAdder cancellations = new LongAdder();
+    /**
+     * The statistics of the cache of versions.
+     */
+    private final CacheStatistics versionsStatistics;
+    /**
+     * The statistics of the cache of patches.
+     */
+    private final CacheStatistics patchStatistics;
+    /**
+     * The listeners to which the metrics are forwarded.
+     */
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * The name under which the MXBean has been registered, {@code null} if not registered.
+     */
+    private ObjectName name;
+
+    /**
+     * Constructs a {@code VersionManagerMetrics} with the specified statistics.
+     * @param versionsStatistics the statistics of the cache of versions.
+     * @param patchStatistics the statistics of the cache of patches.
+     */
+    VersionManagerMetrics(final CacheStatistics versionsStatistics, final CacheStatistics patchStatistics) {
+        this.versionsStatistics = versionsStatistics;
+        this.patchStatistics = patchStatistics;
+        for (final Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Adds a listener to which the metrics will be forwarded.
+     * @param listener the listener to add.
+     */
+    public void addListener(final MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener previously added.
+     * @param listener the listener to remove.
+     */
+    public void removeListener(final MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers the metrics as a MXBean into the platform MBean server under the name
+     * {@code com.github.essobedo.gitlabvm:type=VersionManager,name=<name>}. If the metrics are already
+     * registered, they are unregistered first.
+     * @param managerName the name of the version manager, typically the name of the application.
+     * @return the name under which the MXBean has been registered.
+     * @throws ApplicationException if the MXBean could not be registered.
+     */
+    public synchronized ObjectName register(final String managerName) throws ApplicationException {
+        unregister();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(String.format("%s:type=VersionManager,name=%s", DOMAIN,
+                ObjectName.quote(managerName)));
+            server.registerMBean(this, objectName);
+            this.name = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new ApplicationException(String.format("Could not register the metrics of '%s'", managerName),
+                e);
+        }
+    }
+
+    /**
+     * Unregisters the MXBean from the platform MBean server if it has been registered.
+     * @throws ApplicationException if the MXBean could not be unregistered.
+     */
+    public synchronized void unregister() throws ApplicationException {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new ApplicationException(String.format("Could not unregister the metrics '%s'", name), e);
+        } finally {
+            this.name = null;
+        }
+    }
+
+    @Override
+    public void latency(final Operation operation, final long nanos) {
+        latencies.get(operation).record(nanos);
+        for (final MetricsListener listener : listeners) {
+            listener.latency(operation, nanos);
+        }
+    }
+
+    @Override
+    public void error(final Operation operation, final int status) {
+        errors.computeIfAbsent(status, key -> new LongAdder()).increment();
+        for (final MetricsListener listener : listeners) {
+            listener.error(operation, status);
+        }
+    }
+
+    @Override
+    public void firstByte(final long nanos) {
+        firstByte.record(nanos);
+        for (final MetricsListener listener : listeners) {
+            listener.firstByte(nanos);
+        }
+    }
+
+    @Override
+    public void downloaded(final long bytes, final long nanos) {
+        downloadedBytes.add(bytes);
+        downloadNanos.add(nanos);
+        for (final MetricsListener listener : listeners) {
+            listener.downloaded(bytes, nanos);
+        }
+    }
+
+    @Override
+    public void hedged(final Operation operation) {
+        hedges.increment();
+        for (final MetricsListener listener : listeners) {
+            listener.hedged(operation);
+        }
+    }
+
+    @Override
+    public void cancelled() {
+        cancellations.increment();
+        for (final MetricsListener listener : listeners) {
+            listener.cancelled();
+        }
+    }
+
+    @Override
+    public LatencySnapshot getFindTokenLatency() {
+        return latencies.get(Operation.FIND_TOKEN).snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getVersionsLatency() {
+        return latencies.get(Operation.GET_VERSIONS).snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getPatchLatency() {
+        return latencies.get(Operation.GET_PATCH).snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getTimeToFirstByte() {
+        return firstByte.snapshot();
+    }
+
+    @Override
+    public long getDownloadedBytes() {
+        return downloadedBytes.sum();
+    }
+
+    @Override
+    public double getDownloadRate() {
+        final long nanos = downloadNanos.sum();
+        return nanos <= 0L ? 0d : downloadedBytes.sum() * (double) TimeUnit.SECONDS.toNanos(1L) / nanos;
+    }
+
+    @Override
+    public double getVersionsCacheHitRatio() {
+        return versionsStatistics.hitRatio();
+    }
+
+    @Override
+    public double getPatchCacheHitRatio() {
+        return patchStatistics.hitRatio();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Map.Entry<Integer, LongAdder> entry : errors.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    @Override
+    public long getCancellations() {
+        return cancellations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VersionManagerMetrics{findToken=%s, versions=%s, patch=%s, timeToFirstByte=%s, "
+                + "downloadedBytes=%d, downloadRate=%.0f, errors=%s, hedges=%d, cancellations=%d}",
+            getFindTokenLatency(), getVersionsLatency(), getPatchLatency(), getTimeToFirstByte(), getDownloadedBytes(),
+            getDownloadRate(), getErrors(), getHedges(), getCancellations());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of a version manager, registered into the platform MBean
+ * server thanks to {@link VersionManagerMetrics#register(String)}.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public interface VersionManagerMetricsMXBean {
+    /**
+     * Gives the latency of the retrievals of a new private token.
+     * @return the latency of the retrievals of a new private token.
+     */
+    LatencySnapshot getFindTokenLatency();
+
+    /**
+     * Gives the latency of the retrievals of the versions.
+     * @return the latency of the retrievals of the versions.
+     */
+    LatencySnapshot getVersionsLatency();
+
+    /**
+     * Gives the latency of the requests of the patches until their headers are received.
+     * @return the latency of the requests of the patches.
+     */
+    LatencySnapshot getPatchLatency();
+
+    /**
+     * Gives the time between the requests of the patches and their first byte.
+     * @return the time to first byte of the patches.
+     */
+    LatencySnapshot getTimeToFirstByte();
+
+    /**
+     * Gives the total amount of bytes of patches downloaded.
+     * @return the total amount of bytes downloaded.
+     */
+    long getDownloadedBytes();
+
+    /**
+     * Gives the mean throughput of the downloads of the patches.
+     * @return the amount of bytes downloaded per second, {@code 0} if nothing has been downloaded yet.
+     */
+    double getDownloadRate();
+
+    /**
+     * Gives the ratio of checks whose versions could be reused because they have not been modified.
+     * @return the hit ratio of the cache of versions between {@code 0} and {@code 1}.
+     */
+    double getVersionsCacheHitRatio();
+
+    /**
+     * Gives the ratio of patches that could be copied from the cache of patches.
+     * @return the hit ratio of the cache of patches between {@code 0} and {@code 1}.
+     */
+    double getPatchCacheHitRatio();
+
+    /**
+     * Gives the total amount of requests that failed per status code, {@code 0} being the requests that
+     * did not get any response.
+     * @return the total amount of errors per status code.
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * Gives the total amount of duplicate requests sent because the response of a request was late.
+     * @return the total amount of hedged requests.
+     */
+    long getHedges();
+
+    /**
+     * Gives the total amount of tasks that have been canceled.
+     * @return the total amount of cancellations.
+     */
+    long getCancellations();
+}
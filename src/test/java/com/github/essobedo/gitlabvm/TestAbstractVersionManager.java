@@ -27,9 +27,25 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -40,11 +56,17 @@ import javax.ws.rs.core.Response;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.json.JSONArray;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -59,6 +81,36 @@ public class TestAbstractVersionManager {
     // Base URI the Grizzly HTTP server will listen on
     public static final String BASE_URI = "http://localhost:8880";
 
+    // The ETag of the list of versions
+    private static final String VERSIONS_ETAG = "versions1";
+
+    // The ETag of the patch
+    private static final String PATCH_ETAG = "patch1";
+
+    // The name of the delta patch allowing to upgrade from the version 1.0.1 to the version 1.0.2
+    private static final String DELTA_PATCH = "from-1.0.1.patch";
+
+    // The content of the delta patch
+    private static final String DELTA_CONTENT = "key3=value3\n";
+
+    // The name of the patch compressed with gzip
+    private static final String COMPRESSED_PATCH = "patch.properties.gz";
+
+    // The total amount of requests received to get a private token
+    private static final AtomicInteger SESSION_REQUESTS = new AtomicInteger();
+
+    // The total amount of requests received to get a page of the list of versions
+    private static final AtomicInteger TREE_REQUESTS = new AtomicInteger();
+
+    // The total amount of requests received to get a patch
+    private static final AtomicInteger PATCH_REQUESTS = new AtomicInteger();
+
+    // The total amount of requests received to get a part of a patch
+    private static final AtomicInteger PARTIAL_PATCH_REQUESTS = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private HttpServer server;
     private Properties properties;
     private VersionManager versionManager;
@@ -77,6 +129,10 @@ public class TestAbstractVersionManager {
         properties.put("file", "patch.properties");
         properties.put("owner", "owner2");
         this.versionManager = new VersionManager(properties);
+        SESSION_REQUESTS.set(0);
+        TREE_REQUESTS.set(0);
+        PATCH_REQUESTS.set(0);
+        PARTIAL_PATCH_REQUESTS.set(0);
     }
 
     @After
@@ -160,6 +216,296 @@ public class TestAbstractVersionManager {
         }
     }
 
+    @Test
+    public void testCheckNotModified() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(0L, versionManager.versionsCacheStatistics().hits());
+        assertEquals(1L, versionManager.versionsCacheStatistics().misses());
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(1L, versionManager.versionsCacheStatistics().hits());
+        assertEquals(1L, versionManager.versionsCacheStatistics().misses());
+        properties.put("branch", "branch2");
+        try {
+            versionManager.check(application).execute();
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+        assertEquals(1L, versionManager.versionsCacheStatistics().hits());
+        assertEquals(2L, versionManager.versionsCacheStatistics().misses());
+        properties.put("branch", "branch1");
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(2L, versionManager.versionsCacheStatistics().hits());
+    }
+
+    @Test
+    public void testCheckCached() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("versionsTtl", "60000");
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(1, TREE_REQUESTS.get());
+        // The versions are still fresh
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(1, TREE_REQUESTS.get());
+        assertEquals(1L, versionManager.versionsCacheStatistics().hits());
+        // A fresh answer is required
+        versionManager.invalidate();
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(2, TREE_REQUESTS.get());
+        // The stale versions are served and refreshed in the background
+        properties.put("versionsTtl", "1");
+        Thread.sleep(10L);
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        for (int i = 0; i < 100 && TREE_REQUESTS.get() < 3; i++) {
+            Thread.sleep(20L);
+        }
+        assertEquals(3, TREE_REQUESTS.get());
+        Thread.sleep(50L);
+        // Beyond the max staleness, the versions are refreshed before being served
+        properties.put("versionsMaxStale", "1");
+        Thread.sleep(10L);
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(4, TREE_REQUESTS.get());
+    }
+
+    @Test
+    public void testBatchCheck() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        Manageable application1 = mock(Manageable.class);
+        when(application1.version()).thenReturn("1.0");
+        Manageable application2 = mock(Manageable.class);
+        when(application2.version()).thenReturn("1.0.2");
+        Map<Manageable, ConnectionConfiguration> applications = new LinkedHashMap<>();
+        applications.put(application1, versionManager.createConfiguration(application1));
+        applications.put(application2, versionManager.createConfiguration(application2));
+        BatchUpdateChecker<Manageable> checker = new BatchUpdateChecker<>(BASE_URI, 4);
+        Map<Manageable, BatchUpdateChecker.Result> results = checker.check(applications);
+        assertEquals(2, results.size());
+        assertEquals("1.0.2", results.get(application1).version());
+        assertFalse(results.get(application2).isUpdateAvailable());
+        assertFalse(results.get(application2).isFailed());
+        // Both applications share the same credentials so only one login is needed
+        assertEquals(1, SESSION_REQUESTS.get());
+        assertEquals(2, TREE_REQUESTS.get());
+        assertEquals(2L, checker.versionsCacheStatistics().misses());
+        results = checker.check(applications);
+        assertEquals("1.0.2", results.get(application1).version());
+        assertEquals(1, SESSION_REQUESTS.get());
+        assertEquals(4, TREE_REQUESTS.get());
+        assertEquals(2L, checker.versionsCacheStatistics().hits());
+    }
+
+    @Test
+    public void testCheckPaginated() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("pageSize", "1");
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(3, TREE_REQUESTS.get());
+        assertEquals(1L, versionManager.versionsCacheStatistics().misses());
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(6, TREE_REQUESTS.get());
+        assertEquals(1L, versionManager.versionsCacheStatistics().hits());
+        properties.put("pageSize", "2");
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(8, TREE_REQUESTS.get());
+        assertEquals(2L, versionManager.versionsCacheStatistics().misses());
+        when(application.version()).thenReturn("1.0.2");
+        assertNull(versionManager.check(application).execute());
+        assertEquals(2L, versionManager.versionsCacheStatistics().hits());
+    }
+
+    @Test
+    public void testTokenCache() throws Exception {
+        final File file = new File(folder.getRoot(), "token");
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("tokenCache", file.getAbsolutePath());
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(1, SESSION_REQUESTS.get());
+        assertTrue(file.isFile());
+        // After a restart the stored token is reused
+        this.versionManager = new VersionManager(properties);
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(1, SESSION_REQUESTS.get());
+        // An expired token is refreshed transparently
+        new TokenStore(file, BASE_URI, "esso/bedo", ":\\/").save("expired");
+        this.versionManager = new VersionManager(properties);
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        assertEquals(2, SESSION_REQUESTS.get());
+        assertEquals("kaC25JPG1Evrpbdy3EGy", new TokenStore(file, BASE_URI, "esso/bedo", ":\\/").load());
+        new TokenStore(file, BASE_URI, "esso/bedo", ":\\/").save("expired");
+        this.versionManager = new VersionManager(properties);
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+        assertEquals(3, SESSION_REQUESTS.get());
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        try {
+            versionManager.checkAsync(application).get(10L, TimeUnit.SECONDS);
+            fail("An ExecutionException was expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ApplicationException);
+        }
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        assertEquals("1.0.2", versionManager.checkAsync(application).get(10L, TimeUnit.SECONDS));
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        assertNull(versionManager.storeAsync(application, byteArrayOutputStream).get(10L, TimeUnit.SECONDS));
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+
+        // Cancel a task before it is launched
+        final List<Runnable> pending = new ArrayList<>();
+        final VersionManager manager = new VersionManager(properties, pending::add);
+        final Task<Void> task = manager.store(application, new ByteArrayOutputStream());
+        final CompletableFuture<Void> future = manager.executeAsync(task);
+        assertFalse(future.isDone());
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(task.isCanceled());
+        assertEquals(1, pending.size());
+        PATCH_REQUESTS.set(0);
+        pending.get(0).run();
+        assertEquals(0, PATCH_REQUESTS.get());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        try {
+            versionManager.startPrefetch(application, 100L, TimeUnit.MILLISECONDS);
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+        final File cache = folder.newFolder();
+        properties.put("cache", cache.getAbsolutePath());
+        this.versionManager = new VersionManager(properties);
+        versionManager.startPrefetch(application, 100L, TimeUnit.MILLISECONDS);
+        final String key = PatchCache.key(versionManager.createConfiguration(application), "1.0.2",
+            "patch.properties");
+        for (int i = 0; i < 100 && !new File(cache, key + ".patch").isFile(); i++) {
+            Thread.sleep(100L);
+        }
+        versionManager.stopPrefetch();
+        assertTrue(new File(cache, key + ".patch").isFile());
+        assertEquals(1, PATCH_REQUESTS.get());
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+        assertEquals(1, PATCH_REQUESTS.get());
+        assertEquals(1L, versionManager.patchCacheStatistics().hits());
+
+        // Nothing to prefetch when the application is up to date
+        when(application.version()).thenReturn("1.0.2");
+        final File cache2 = folder.newFolder();
+        properties.put("cache", cache2.getAbsolutePath());
+        this.versionManager = new VersionManager(properties);
+        versionManager.startPrefetch(application, 100L, TimeUnit.MILLISECONDS);
+        Thread.sleep(500L);
+        versionManager.stopPrefetch();
+        assertEquals(0, cache2.list().length);
+        assertEquals(1, PATCH_REQUESTS.get());
+    }
+
+    @Test
+    public void testRelay() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        try {
+            PatchRelay.start(BASE_URI, versionManager.createConfiguration(null), new InetSocketAddress(0));
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+        properties.put("cache", folder.newFolder().getAbsolutePath());
+        try (PatchRelay relay = PatchRelay.start(BASE_URI, versionManager.createConfiguration(null),
+            new InetSocketAddress(0))) {
+            final Properties nodeProperties = new Properties();
+            nodeProperties.putAll(properties);
+            nodeProperties.remove("cache");
+            Manageable application = mock(Manageable.class);
+            when(application.version()).thenReturn("1.0");
+            final List<CompletableFuture<byte[]>> nodes = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final VersionManager node = new VersionManager(relay.endpoint(), nodeProperties);
+                assertEquals("1.0.2", node.check(application).execute());
+                nodes.add(CompletableFuture.supplyAsync(() -> {
+                    final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                    try {
+                        node.store(application, byteArrayOutputStream).execute();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return byteArrayOutputStream.toByteArray();
+                }));
+            }
+            for (CompletableFuture<byte[]> node : nodes) {
+                assertArrayEquals(EndPoints.getContent("/patch.properties"), node.get());
+            }
+            // The relay authenticates once, lists the versions once and downloads the patch once
+            assertEquals(1, SESSION_REQUESTS.get());
+            assertEquals(1, PATCH_REQUESTS.get());
+
+            nodeProperties.put("password", "foo");
+            try {
+                new VersionManager(relay.endpoint(), nodeProperties).check(application).execute();
+                fail("An ApplicationException was expected");
+            } catch (ApplicationException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testTransport() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0");
+        assertNull(versionManager.transportStatistics());
+        assertEquals("1.0.2", versionManager.check(application).execute());
+        versionManager.store(application, new ByteArrayOutputStream()).execute();
+        final TransportStatistics statistics = versionManager.transportStatistics();
+        assertEquals(0, statistics.active());
+        assertEquals(statistics.maxConnections(), statistics.available());
+        final long requests = statistics.requests();
+        assertTrue(requests >= 4L);
+        final VersionManager other = new VersionManager(properties);
+        assertEquals("1.0.2", other.check(application).execute());
+        assertTrue(statistics == other.transportStatistics());
+        assertEquals(requests + 2L, statistics.requests());
+        assertEquals(0, statistics.active());
+        assertEquals(0, statistics.streams());
+        // The highest limit is taken into account
+        final HttpTransport transport = HttpTransport.of("http://localhost:1", 2);
+        assertTrue(transport == HttpTransport.of("http://localhost:1", 7));
+        assertEquals(7, transport.statistics().maxConnections());
+        assertTrue(transport == HttpTransport.of("http://localhost:1", 3));
+        assertEquals(7, transport.statistics().maxConnections());
+        assertEquals(7, transport.statistics().available());
+    }
+
     @Test
     public void testStore() throws Exception {
         properties.put("login", "esso/bedo");
@@ -211,6 +557,154 @@ public class TestAbstractVersionManager {
         versionManager.store(application, byteArrayOutputStream).execute();
     }
 
+    @Test
+    public void testStoreFromCache() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("cache", folder.newFolder().getAbsolutePath());
+        Manageable application = mock(Manageable.class);
+        for (int i = 1; i <= 2; i++) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            versionManager.store(application, byteArrayOutputStream).execute();
+            Properties p = new Properties();
+            p.load(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+            assertEquals("value1", p.getProperty("key1"));
+            assertEquals("value2", p.getProperty("key2"));
+            assertEquals("value3", p.getProperty("key3"));
+            assertEquals(3, p.size());
+            assertEquals(1, PATCH_REQUESTS.get());
+            assertEquals(i - 1, versionManager.patchCacheStatistics().hits());
+            assertEquals(1L, versionManager.patchCacheStatistics().misses());
+        }
+        properties.put("file", "foo");
+        try {
+            versionManager.store(application, new ByteArrayOutputStream()).execute();
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+        assertEquals(2L, versionManager.patchCacheStatistics().misses());
+    }
+
+    @Test
+    public void testStoreResumed() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        final File cache = folder.newFolder();
+        properties.put("cache", cache.getAbsolutePath());
+        final String key = PatchCache.key(versionManager.createConfiguration(null), "1.0.2", "patch.properties");
+        final byte[] content = EndPoints.getContent("/patch.properties");
+        Files.write(new File(cache, key + ".part").toPath(), Arrays.copyOf(content, 15));
+        Files.write(new File(cache, key + ".etag").toPath(),
+            String.format("\"%s\"", PATCH_ETAG).getBytes(StandardCharsets.UTF_8));
+        Manageable application = mock(Manageable.class);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(content, byteArrayOutputStream.toByteArray());
+        assertEquals(1, PATCH_REQUESTS.get());
+        assertEquals(1, PARTIAL_PATCH_REQUESTS.get());
+        assertTrue(new File(cache, key + ".patch").isFile());
+        assertFalse(new File(cache, key + ".part").exists());
+        assertFalse(new File(cache, key + ".etag").exists());
+
+        Files.write(new File(cache, key + ".part").toPath(), Arrays.copyOf(content, 15));
+        Files.write(new File(cache, key + ".etag").toPath(), "\"foo\"".getBytes(StandardCharsets.UTF_8));
+        assertTrue(new File(cache, key + ".patch").delete());
+        byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(content, byteArrayOutputStream.toByteArray());
+        assertEquals(2, PATCH_REQUESTS.get());
+        assertEquals(1, PARTIAL_PATCH_REQUESTS.get());
+    }
+
+    @Test
+    public void testStoreDelta() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        Manageable application = mock(Manageable.class);
+        when(application.version()).thenReturn("1.0.1");
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+
+        properties.put("delta", "true");
+        byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertEquals(DELTA_CONTENT, new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8));
+
+        // No delta patch from the version 1.0
+        when(application.version()).thenReturn("1.0");
+        byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+
+        // Without version, the installed version is unknown
+        when(application.version()).thenReturn(null);
+        byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void testStoreCompressed() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("file", COMPRESSED_PATCH);
+        properties.put("cache", folder.newFolder().getAbsolutePath());
+        Manageable application = mock(Manageable.class);
+        // The compressed patch is cached as downloaded and decompressed when replayed
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            versionManager.store(application, byteArrayOutputStream).execute();
+            assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+        }
+        assertEquals(1, PATCH_REQUESTS.get());
+    }
+
+    @Test
+    public void testStoreChecksum() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("checksum", "SHA-256");
+        final File cache = folder.newFolder();
+        properties.put("cache", cache.getAbsolutePath());
+        Manageable application = mock(Manageable.class);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(EndPoints.getContent("/patch.properties"), byteArrayOutputStream.toByteArray());
+        assertEquals(1, cache.list().length);
+
+        // The checksum of the compressed patch does not match
+        properties.put("file", COMPRESSED_PATCH);
+        try {
+            versionManager.store(application, new ByteArrayOutputStream()).execute();
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+        assertEquals(1, cache.list().length);
+    }
+
+    @Test
+    public void testStoreSegmented() throws Exception {
+        properties.put("login", "esso/bedo");
+        properties.put("password", ":\\/");
+        properties.put("segments", "3");
+        properties.put("segmentSize", "5");
+        final byte[] content = EndPoints.getContent("/patch.properties");
+        Manageable application = mock(Manageable.class);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(content, byteArrayOutputStream.toByteArray());
+        assertEquals((content.length + 4) / 5, PARTIAL_PATCH_REQUESTS.get());
+
+        properties.put("segmentSize", String.valueOf(content.length));
+        byteArrayOutputStream = new ByteArrayOutputStream();
+        versionManager.store(application, byteArrayOutputStream).execute();
+        assertArrayEquals(content, byteArrayOutputStream.toByteArray());
+        assertEquals((content.length + 4) / 5 + 1, PARTIAL_PATCH_REQUESTS.get());
+    }
+
     @Path("/")
     public static class EndPoints {
         @POST
@@ -218,6 +712,7 @@ public class TestAbstractVersionManager {
         @Path("api/v3/session")
         public Response getToken(@QueryParam("login") String login, @QueryParam("password") String password)
                         throws Exception {
+            SESSION_REQUESTS.incrementAndGet();
             if (":\\/".equals(password)) {
                 if ("esso/bedo".equals(login)) {
                     return Response.ok(getContent("/tokenOK.json")).build();
@@ -235,31 +730,97 @@ public class TestAbstractVersionManager {
         @Path("api/v3/projects/{project-id}/repository/tree")
         public Response getVersions(@PathParam("project-id") String projectId,
                                     @QueryParam("private_token") String token,
-                                    @QueryParam("ref_name") String branch)  throws Exception {
+                                    @QueryParam("ref_name") String branch,
+                                    @QueryParam("per_page") int perPage, @QueryParam("page") int page,
+                                    @QueryParam("path") String path,
+                                    @HeaderParam("If-None-Match") String etag)  throws Exception {
+            TREE_REQUESTS.incrementAndGet();
             if (!"123456".equals(projectId)) {
                 return Response.status(404).entity(getContent("/versionsKOProject.json")).build();
             } else if (!"kaC25JPG1Evrpbdy3EGy".equals(token)) {
                 return Response.status(401).entity(getContent("/versionsKOToken.json")).build();
             } else if (!"branch1".equals(branch)) {
                 return Response.status(404).entity(getContent("/versionsKOBranch.json")).build();
+            } else if (path != null) {
+                if (!"1.0.2".equals(path)) {
+                    return Response.status(404).entity(getContent("/versionsKOBranch.json")).build();
+                }
+                return Response.ok(String.format("[{\"name\":\"patch.properties\",\"type\":\"blob\"},"
+                    + "{\"name\":\"%s\",\"type\":\"blob\"}]", DELTA_PATCH)).build();
+            }
+            final JSONArray versions = new JSONArray(new String(getContent("/versionsOK.json"),
+                StandardCharsets.UTF_8));
+            if (perPage <= 0 || perPage >= versions.length()) {
+                if (String.format("\"%s\"", VERSIONS_ETAG).equals(etag)) {
+                    return Response.notModified().build();
+                }
+                return Response.ok(getContent("/versionsOK.json")).tag(VERSIONS_ETAG).build();
             }
-            return Response.ok(getContent("/versionsOK.json")).build();
+            final int totalPages = (versions.length() + perPage - 1) / perPage;
+            final String pageEtag = String.format("%s-%d", VERSIONS_ETAG, page);
+            final Response.ResponseBuilder builder;
+            if (String.format("\"%s\"", pageEtag).equals(etag)) {
+                builder = Response.notModified();
+            } else {
+                final JSONArray content = new JSONArray();
+                for (int i = (page - 1) * perPage; i < Math.min(versions.length(), page * perPage); i++) {
+                    content.put(versions.get(i));
+                }
+                builder = Response.ok(content.toString()).tag(pageEtag);
+            }
+            return builder.header("X-Total-Pages", totalPages)
+                .header("X-Next-Page", page < totalPages ? String.valueOf(page + 1) : "")
+                .build();
         }
 
         @GET
         @Path("{owner}/{project}/raw/{branch}/{version}/{file:.*}")
         public Response getPatch(@PathParam("owner") String owner, @PathParam("project") String project,
                                  @PathParam("branch") String branch, @PathParam("version") String version,
-                                 @PathParam("file") String file, @QueryParam("private_token") String token)
+                                 @PathParam("file") String file, @QueryParam("private_token") String token,
+                                 @HeaderParam("Range") String range, @HeaderParam("If-Range") String ifRange)
                     throws Exception {
+            PATCH_REQUESTS.incrementAndGet();
             if (!"owner2".equals(owner) || !"project3".equals(project) || !"kaC25JPG1Evrpbdy3EGy".equals(token)) {
                 return Response.status(302).type(MediaType.TEXT_HTML_TYPE).entity(getContent("/patchKOToken.html"))
                     .build();
-            } else if (!"branch1".equals(branch) || !"1.0.2".equals(version) || !"patch.properties".equals(file)) {
+            } else if ("branch1".equals(branch) && "1.0.2".equals(version) && file.endsWith(".sha256")) {
+                // The checksum of the compressed patch is wrong on purpose
+                final byte[] digest = MessageDigest.getInstance("SHA-256").digest(getContent("/patch.properties"));
+                final StringBuilder checksum = new StringBuilder();
+                for (byte b : digest) {
+                    checksum.append(String.format("%02x", b));
+                }
+                return Response.ok(String.format("%s  %s", checksum, file), MediaType.TEXT_PLAIN_TYPE).build();
+            } else if (!"branch1".equals(branch) || !"1.0.2".equals(version)
+                || !"patch.properties".equals(file) && !DELTA_PATCH.equals(file) && !COMPRESSED_PATCH.equals(file)) {
                 return Response.status(404).type(MediaType.TEXT_HTML_TYPE).entity(getContent("/patchKOPath.html"))
                     .build();
             }
-            return Response.ok(getContent("/patch.properties"), MediaType.TEXT_PLAIN_TYPE).build();
+            final byte[] content;
+            if (DELTA_PATCH.equals(file)) {
+                content = DELTA_CONTENT.getBytes(StandardCharsets.UTF_8);
+            } else if (COMPRESSED_PATCH.equals(file)) {
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+                    outputStream.write(getContent("/patch.properties"));
+                }
+                content = compressed.toByteArray();
+            } else {
+                content = getContent("/patch.properties");
+            }
+            if (range != null && (ifRange == null || String.format("\"%s\"", PATCH_ETAG).equals(ifRange))) {
+                PARTIAL_PATCH_REQUESTS.incrementAndGet();
+                final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                final int start = Integer.parseInt(bounds[0]);
+                final int end = bounds[1].isEmpty() ? content.length - 1
+                    : Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+                return Response.status(206).type(MediaType.TEXT_PLAIN_TYPE)
+                    .entity(Arrays.copyOfRange(content, start, end + 1)).tag(PATCH_ETAG)
+                    .header("Content-Range", String.format("bytes %d-%d/%d", start, end, content.length))
+                    .build();
+            }
+            return Response.ok(content, MediaType.TEXT_PLAIN_TYPE).tag(PATCH_ETAG).build();
         }
 
         private static byte[] getContent(String path) throws IOException {
@@ -280,7 +841,19 @@ public class TestAbstractVersionManager {
         private final Properties properties;
 
         private VersionManager(final Properties properties) {
-            super(BASE_URI);
+            this(properties, null);
+        }
+
+        private VersionManager(final Properties properties, final Executor executor) {
+            this(BASE_URI, properties, executor);
+        }
+
+        private VersionManager(final String endpoint, final Properties properties) {
+            this(endpoint, properties, null);
+        }
+
+        private VersionManager(final String endpoint, final Properties properties, final Executor executor) {
+            super(endpoint, executor);
             this.properties = properties;
         }
 
@@ -326,6 +899,53 @@ public class TestAbstractVersionManager {
                 public String projectOwner() {
                     return properties.getProperty("owner");
                 }
+
+                @Override
+                public int downloadSegments() {
+                    return Integer.parseInt(properties.getProperty("segments", "1"));
+                }
+
+                @Override
+                public int downloadSegmentSize() {
+                    return Integer.parseInt(properties.getProperty("segmentSize", "4096"));
+                }
+
+                @Override
+                public String deltaPatchFileName(final String fromVersion) {
+                    return properties.containsKey("delta") ? String.format("from-%s.patch", fromVersion) : null;
+                }
+
+                @Override
+                public String checksumAlgorithm() {
+                    return properties.getProperty("checksum");
+                }
+
+                @Override
+                public File tokenCacheFile() {
+                    final String file = properties.getProperty("tokenCache");
+                    return file == null ? null : new File(file);
+                }
+
+                @Override
+                public long versionsTtl() {
+                    return Long.parseLong(properties.getProperty("versionsTtl", "0"));
+                }
+
+                @Override
+                public long versionsMaxStale() {
+                    return Long.parseLong(properties.getProperty("versionsMaxStale", "3600000"));
+                }
+
+                @Override
+                public int listingPageSize() {
+                    return Integer.parseInt(properties.getProperty("pageSize", "100"));
+                }
+
+                @Override
+                public File patchCacheDirectory() {
+                    final String cache = properties.getProperty("cache");
+                    return cache == null ? null : new File(cache);
+                }
             };
         }
     }
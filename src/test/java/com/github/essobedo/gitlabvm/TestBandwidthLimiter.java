@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestBandwidthLimiter {
+
+    @Test
+    public void testUnlimited() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        assertEquals(0L, limiter.rate());
+        assertEquals(8192, limiter.chunk(8192));
+        final long start = System.nanoTime();
+        assertEquals(1024 * 1024, read(new ThrottledInputStream(new ByteArrayInputStream(new byte[1024 * 1024]),
+            limiter)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1L));
+    }
+
+    @Test
+    public void testLimited() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setBurst(10000L);
+        limiter.setRate(100000L);
+        assertEquals(10000L, limiter.burst());
+        assertEquals(10000, limiter.chunk(65536));
+        final long start = System.nanoTime();
+        // The burst is free, the remaining 40000 bytes take 400 ms
+        assertEquals(50000, read(new ThrottledInputStream(new ByteArrayInputStream(new byte[50000]), limiter,
+            new BandwidthLimiter())));
+        final long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(350L));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2L));
+    }
+
+    @Test
+    public void testChangeAtRuntime() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(1000L);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                // Would take about 100 seconds at this rate
+                read(new ThrottledInputStream(new ByteArrayInputStream(new byte[100000]), limiter));
+            } catch (Throwable e) {
+                error.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        thread.start();
+        Thread.sleep(200L);
+        assertEquals(1, done.getCount());
+        limiter.setRate(0L);
+        assertTrue(done.await(5L, TimeUnit.SECONDS));
+        assertEquals(null, error.get());
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(1000L);
+        Thread.currentThread().interrupt();
+        try {
+            read(new ThrottledInputStream(new ByteArrayInputStream(new byte[100000]), limiter));
+            fail("An InterruptedIOException was expected");
+        } catch (InterruptedIOException e) {
+            // expected
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        try {
+            limiter.setRate(-1L);
+            fail("An IllegalArgumentException was expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            limiter.setBurst(-1L);
+            fail("An IllegalArgumentException was expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static int read(InputStream inputStream) throws Exception {
+        final byte[] buffer = new byte[65536];
+        int total = 0;
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            total += length;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.spi.Manageable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestBatchUpdateChecker {
+
+    private static ConnectionConfiguration configuration(final String login, final String password) {
+        return new ConnectionConfiguration() {
+            @Override
+            public String login() {
+                return login;
+            }
+
+            @Override
+            public String password() {
+                return password;
+            }
+
+            @Override
+            public String projectOwner() {
+                return "owner";
+            }
+
+            @Override
+            public String projectId() {
+                return "1";
+            }
+
+            @Override
+            public String projectName() {
+                return "project";
+            }
+
+            @Override
+            public String branch() {
+                return "master";
+            }
+
+            @Override
+            public String patchFileName() {
+                return "patch.zip";
+            }
+        };
+    }
+
+    @Test
+    public void testInterleave() {
+        final List<List<String>> groups = new ArrayList<>();
+        groups.add(Arrays.asList("a1", "a2", "a3"));
+        groups.add(Collections.singletonList("b1"));
+        groups.add(Arrays.asList("c1", "c2"));
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "c2", "a3"), BatchUpdateChecker.interleave(groups));
+        assertTrue(BatchUpdateChecker.interleave(new ArrayList<List<String>>()).isEmpty());
+    }
+
+    @Test
+    public void testGroups() {
+        final String key = Sessions.key("http://localhost", configuration("login", "password"));
+        assertEquals(key, Sessions.key("http://localhost", configuration("login", "password")));
+        assertFalse(key.equals(Sessions.key("http://localhost:8080", configuration("login", "password"))));
+        assertFalse(key.equals(Sessions.key("http://localhost", configuration("login2", "password"))));
+        assertFalse(key.equals(Sessions.key("http://localhost", configuration("login", "password2"))));
+        assertFalse(key.contains("password"));
+    }
+
+    @Test
+    public void testInvalidConfiguration() throws Exception {
+        final BatchUpdateChecker<Manageable> checker = new BatchUpdateChecker<>("http://localhost:1", 4);
+        assertTrue(checker.check(Collections.<Manageable, ConnectionConfiguration>emptyMap()).isEmpty());
+        final Manageable application = mock(Manageable.class);
+        final Map<Manageable, ConnectionConfiguration> applications = new LinkedHashMap<>();
+        applications.put(application, configuration("", "password"));
+        final Map<Manageable, BatchUpdateChecker.Result> results = checker.check(applications);
+        assertEquals(1, results.size());
+        assertTrue(results.get(application).isFailed());
+        assertFalse(results.get(application).isUpdateAvailable());
+        assertNull(results.get(application).version());
+    }
+
+    @Test
+    public void testInvalidParallelism() {
+        try {
+            new BatchUpdateChecker<Manageable>(0);
+            fail("An IllegalArgumentException was expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
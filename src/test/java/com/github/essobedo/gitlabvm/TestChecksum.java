@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestChecksum {
+
+    @Test
+    public void testFileName() {
+        assertEquals("patch.zip.sha256", Checksum.fileName("patch.zip", "SHA-256"));
+        assertEquals("patch.zip.md5", Checksum.fileName("patch.zip", "MD5"));
+    }
+
+    @Test
+    public void testParse() {
+        assertArrayEquals(new byte[]{0x00, 0x1f, (byte) 0xa0, (byte) 0xff}, Checksum.parse("001fa0ff"));
+        assertArrayEquals(new byte[]{0x00, 0x1f, (byte) 0xa0, (byte) 0xff}, Checksum.parse(" 001FA0FF  patch.zip\n"));
+        for (final String content : new String[]{"", "  ", "001", "00zz", "0x1f"}) {
+            try {
+                Checksum.parse(content);
+                fail("An IllegalArgumentException was expected for " + content);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestCompression {
+
+    @Test
+    public void testOf() {
+        assertSame(Compression.NONE, Compression.of("patch.zip"));
+        assertSame(Compression.GZIP, Compression.of("patch.zip.gz"));
+        assertSame(Compression.GZIP, Compression.of("PATCH.GZ"));
+        assertSame(Compression.XZ, Compression.of("patch.xz"));
+        assertSame(Compression.ZSTD, Compression.of("patch.zst"));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        final byte[] content = "key1=value1\nkey2=value2\n".getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(content);
+        }
+        final ByteArrayInputStream raw = new ByteArrayInputStream(content);
+        assertSame(raw, Compression.NONE.decode(raw));
+        assertEquals(new String(content, StandardCharsets.UTF_8),
+            read(Compression.GZIP.decode(new ByteArrayInputStream(compressed.toByteArray()))));
+        try {
+            Compression.GZIP.decode(new ByteArrayInputStream(content));
+            fail("An IOException was expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnavailable() throws Exception {
+        assertTrue(Compression.NONE.isAvailable());
+        assertTrue(Compression.GZIP.isAvailable());
+        // The pure Java codecs are not in the class path of the tests
+        assertFalse(Compression.XZ.isAvailable());
+        try {
+            Compression.XZ.decode(new ByteArrayInputStream(new byte[0]));
+            fail("An IOException was expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("org.tukaani.xz.XZInputStream"));
+        }
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[16];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            result.write(buffer, 0, length);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestCopyEngine {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStream() throws Exception {
+        final byte[] content = content(100000);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final CopyEngine engine = CopyEngine.of(outputStream, 4096);
+        engine.sizeHint(content.length);
+        copy(engine, new ByteArrayInputStream(content));
+        engine.finish();
+        assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        final byte[] content = content(3 * CopyEngine.MAX_BUFFER_SIZE);
+        final File target = folder.newFile();
+        try (OutputStream outputStream = new FileOutputStream(target)) {
+            final CopyEngine engine = CopyEngine.of(outputStream, 4096);
+            engine.sizeHint(content.length);
+            assertEquals(content.length, target.length());
+            copy(engine, new ByteArrayInputStream(content));
+            engine.finish();
+            // The extended part is truncated if the content is smaller than expected
+            engine.sizeHint(content.length);
+            copy(engine, new ByteArrayInputStream(content, 0, 10));
+            engine.finish();
+        }
+        final byte[] expected = Arrays.copyOf(content, content.length + 10);
+        System.arraycopy(content, 0, expected, content.length, 10);
+        assertArrayEquals(expected, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testFileAppend() throws Exception {
+        final byte[] content = content(10000);
+        final File target = folder.newFile();
+        Files.write(target.toPath(), content);
+        try (OutputStream outputStream = new FileOutputStream(target, true)) {
+            final CopyEngine engine = CopyEngine.of(outputStream, 4096);
+            // Cannot be extended in append mode
+            engine.sizeHint(content.length);
+            copy(engine, new ByteArrayInputStream(content));
+            engine.finish();
+        }
+        final byte[] expected = Arrays.copyOf(content, 2 * content.length);
+        System.arraycopy(content, 0, expected, content.length, content.length);
+        assertArrayEquals(expected, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testTransfer() throws Exception {
+        final byte[] content = content(100000);
+        final File source = folder.newFile();
+        Files.write(source.toPath(), content);
+        final File target = folder.newFile();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             OutputStream fileOutputStream = new FileOutputStream(target)) {
+            for (CopyEngine engine : new CopyEngine[]{CopyEngine.of(outputStream, 4096),
+                CopyEngine.of(fileOutputStream, 4096)}) {
+                engine.sizeHint(content.length);
+                long position = 0L;
+                while (position < content.length) {
+                    position += engine.transfer(channel, position, Math.min(30000L, content.length - position));
+                }
+                engine.finish();
+            }
+        }
+        assertArrayEquals(content, outputStream.toByteArray());
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+    }
+
+    private static void copy(CopyEngine engine, InputStream inputStream) throws IOException {
+        while (engine.copy(inputStream) != -1) {
+            // Copy the next chunk
+        }
+    }
+
+    private static byte[] content(int size) {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
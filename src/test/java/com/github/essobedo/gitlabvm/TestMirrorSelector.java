@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestMirrorSelector {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final List<Mirror> probed = new ArrayList<>();
+
+    private final Mirror primary = mirror("http://primary");
+
+    private final Mirror replica1 = mirror("http://replica1");
+
+    private final Mirror replica2 = mirror("http://replica2");
+
+    private static Mirror mirror(final String endpoint) {
+        return new Mirror(endpoint, null, mirror -> "token", null);
+    }
+
+    private MirrorSelector selector(final long probeInterval, final Mirror... mirrors) {
+        return new MirrorSelector(Arrays.asList(mirrors), probeInterval, probed::add, Runnable::run, clock::get);
+    }
+
+    @Test
+    public void testSingle() {
+        final MirrorSelector selector = selector(1000L, primary);
+        primary.failure(clock.get());
+        assertEquals(Arrays.asList(primary), selector.candidates());
+        assertTrue(probed.isEmpty());
+    }
+
+    @Test
+    public void testFastest() {
+        final MirrorSelector selector = selector(0L, primary, replica1, replica2);
+        // Nothing is known so the order of preference is kept
+        assertEquals(Arrays.asList(primary, replica1, replica2), selector.candidates());
+        primary.success(TimeUnit.MILLISECONDS.toNanos(500L), clock.get());
+        replica1.success(TimeUnit.MILLISECONDS.toNanos(100L), clock.get());
+        assertEquals(Arrays.asList(replica1, primary, replica2), selector.candidates());
+        replica2.success(TimeUnit.MILLISECONDS.toNanos(50L), clock.get());
+        assertEquals(Arrays.asList(replica2, replica1, primary), selector.candidates());
+        // The moving average smooths the outliers
+        replica2.success(TimeUnit.MILLISECONDS.toNanos(200L), clock.get());
+        assertEquals(Arrays.asList(replica2, replica1, primary), selector.candidates());
+        assertTrue(probed.isEmpty());
+    }
+
+    @Test
+    public void testFailover() {
+        final MirrorSelector selector = selector(0L, primary, replica1, replica2);
+        primary.success(TimeUnit.MILLISECONDS.toNanos(10L), clock.get());
+        replica1.success(TimeUnit.MILLISECONDS.toNanos(100L), clock.get());
+        replica2.success(TimeUnit.MILLISECONDS.toNanos(200L), clock.get());
+        primary.failure(clock.get());
+        assertFalse(primary.isHealthy(clock.get()));
+        // The unhealthy end points are kept as last resort
+        assertEquals(Arrays.asList(replica1, replica2, primary), selector.candidates());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+        assertTrue(primary.isHealthy(clock.get()));
+        // The error rate penalizes the end point even once healthy again
+        primary.success(TimeUnit.MILLISECONDS.toNanos(30L), clock.get());
+        assertEquals(Arrays.asList(primary, replica1, replica2), selector.candidates());
+        primary.failure(clock.get());
+        primary.failure(clock.get());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+        // The backoff doubles with each consecutive failure
+        assertFalse(primary.isHealthy(clock.get()));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+        assertTrue(primary.isHealthy(clock.get()));
+        replica1.failure(clock.get());
+        replica2.failure(clock.get());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10L));
+        replica2.failure(clock.get());
+        assertEquals(Arrays.asList(primary, replica1, replica2), selector.candidates());
+    }
+
+    @Test
+    public void testProbe() {
+        final MirrorSelector selector = selector(TimeUnit.SECONDS.toNanos(10L), primary, replica1);
+        selector.candidates();
+        assertEquals(Arrays.asList(primary, replica1), probed);
+        probed.clear();
+        primary.success(TimeUnit.MILLISECONDS.toNanos(10L), clock.get());
+        replica1.success(TimeUnit.MILLISECONDS.toNanos(100L), clock.get());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5L));
+        primary.success(TimeUnit.MILLISECONDS.toNanos(10L), clock.get());
+        selector.candidates();
+        assertTrue(probed.isEmpty());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5L));
+        // Only the end point that has not been used for 10 seconds is probed
+        selector.candidates();
+        assertEquals(Arrays.asList(replica1), probed);
+        // A probe in progress is not launched twice
+        final MirrorSelector async = new MirrorSelector(Arrays.asList(primary, replica1),
+            TimeUnit.SECONDS.toNanos(1L), probed::add, command -> { }, clock::get);
+        probed.clear();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5L));
+        async.candidates();
+        async.candidates();
+        assertTrue(probed.isEmpty());
+        assertFalse(primary.startProbe(clock.get(), TimeUnit.SECONDS.toNanos(1L)));
+    }
+}
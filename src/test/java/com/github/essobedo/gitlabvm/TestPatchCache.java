@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestPatchCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEvictAbandonedPartOnly() throws Exception {
+        final File directory = folder.newFolder();
+        final PatchCache cache = new PatchCache(directory, 10L, new CacheStatistics());
+        // An abandoned partial entry
+        try (final PatchCache.Writer writer = cache.write("old")) {
+            writer.restart("old1");
+            writer.write(new byte[4], 0, 4);
+        }
+        assertTrue(new File(directory, "old.part").setLastModified(System.currentTimeMillis() - 60L * 1000L));
+        // A partial entry being written
+        final PatchCache.Writer live = cache.write("live");
+        try {
+            live.restart("live1");
+            live.write(new byte[6], 0, 6);
+            try (final PatchCache.Writer writer = cache.write("other")) {
+                writer.write(new byte[3], 0, 3);
+                writer.commit();
+            }
+            // The abandoned partial entry has been evicted but not the partial entry being written
+            assertFalse(new File(directory, "old.part").exists());
+            assertTrue(new File(directory, "live.part").exists());
+            assertEquals(6L, live.offset());
+            live.commit();
+        } finally {
+            live.close();
+        }
+        assertNotNull(cache.get("live"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestProgressReporter {
+
+    private final List<String> progress = new ArrayList<>();
+
+    private final List<String> messages = new ArrayList<>();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final ProgressReporter reporter = new ProgressReporter(new ProgressReporter.Listener() {
+        @Override
+        public void progress(long done, long max) {
+            progress.add(done + "/" + max);
+        }
+
+        @Override
+        public void message(String message) {
+            messages.add(message);
+        }
+    }, "downloaded", clock::get);
+
+    @Test
+    public void testKnownSize() {
+        final long total = 100L * 1024L * 1024L;
+        reporter.start(0L, total);
+        assertEquals(1, progress.size());
+        assertEquals("0/" + total, progress.get(0));
+        assertTrue(messages.isEmpty());
+        // A lot of small chunks received in a short time
+        for (long done = 4096L; done <= total; done += 4096L) {
+            reporter.update(done);
+        }
+        reporter.finish(total);
+        // One update per percent
+        assertEquals(1 + 100 + 2, progress.size());
+        assertEquals(total + "/" + total, progress.get(progress.size() - 1));
+        assertEquals(100, messages.size());
+    }
+
+    @Test
+    public void testSlowLink() {
+        reporter.start(0L, 1024L * 1024L * 1024L);
+        for (int i = 1; i <= 10; i++) {
+            clock.addAndGet(ProgressReporter.MIN_INTERVAL / 2);
+            reporter.update(i * 1024L);
+        }
+        // Reported every 100 ms
+        assertEquals(1 + 5, progress.size());
+        assertEquals(5, messages.size());
+        // The message is not formatted again if its value did not change
+        clock.addAndGet(ProgressReporter.MIN_INTERVAL);
+        reporter.update(10L * 1024L + 1L);
+        assertEquals(1 + 6, progress.size());
+        assertEquals(5, messages.size());
+    }
+
+    @Test
+    public void testUnknownSize() {
+        reporter.start(0L, -1L);
+        assertEquals("0/4096", progress.get(0));
+        clock.addAndGet(ProgressReporter.MIN_INTERVAL);
+        reporter.update(1024L * 1024L);
+        assertEquals("2048/4096", progress.get(1));
+        clock.addAndGet(ProgressReporter.MIN_INTERVAL);
+        reporter.update(3L * 1024L * 1024L);
+        assertEquals("3072/4096", progress.get(2));
+        reporter.finish(4L * 1024L * 1024L);
+        assertEquals("4096/4096", progress.get(progress.size() - 1));
+    }
+}
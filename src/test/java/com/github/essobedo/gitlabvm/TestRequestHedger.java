@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestRequestHedger {
+
+    private final VersionManagerMetrics metrics = new VersionManagerMetrics(new CacheStatistics(),
+        new CacheStatistics());
+
+    private static void warmUp(final RequestHedger hedger) throws Exception {
+        for (int i = 0; i < RequestHedger.MIN_SAMPLES; i++) {
+            hedger.send(MetricsListener.Operation.GET_VERSIONS, attempt -> new Response(attempt));
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final RequestHedger hedger = new RequestHedger(0d, 1d, metrics);
+        warmUp(hedger);
+        assertEquals(-1L, hedger.delay(MetricsListener.Operation.GET_VERSIONS));
+        final RequestHedger enabled = new RequestHedger(0.9d, 1d, metrics);
+        assertEquals(-1L, enabled.delay(MetricsListener.Operation.GET_VERSIONS));
+        warmUp(enabled);
+        assertTrue(enabled.delay(MetricsListener.Operation.GET_VERSIONS) >= 0L);
+        // Each operation has its own response times
+        assertEquals(-1L, enabled.delay(MetricsListener.Operation.GET_PATCH));
+    }
+
+    @Test
+    public void testHedge() throws Exception {
+        final RequestHedger hedger = new RequestHedger(0.9d, 0.25d, metrics);
+        warmUp(hedger);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Response response = hedger.send(MetricsListener.Operation.GET_VERSIONS, attempt -> {
+            if (attempt == 0) {
+                sleep(500L);
+                return new Response(attempt, closed);
+            }
+            return new Response(attempt);
+        });
+        // The duplicate request wins and the response of the original request is closed
+        assertEquals(1, response.attempt);
+        assertFalse(response.closed.get() > 0);
+        assertTrue(closed.await(2L, TimeUnit.SECONDS));
+        assertEquals(1L, metrics.getHedges());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        // One duplicate request is earned every 20 requests
+        final RequestHedger hedger = new RequestHedger(0.9d, 0.05d, metrics);
+        warmUp(hedger);
+        final AtomicInteger attempts = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            final Response response = hedger.send(MetricsListener.Operation.GET_VERSIONS, attempt -> {
+                attempts.incrementAndGet();
+                if (attempt == 0) {
+                    sleep(200L);
+                }
+                return new Response(attempt);
+            });
+            // Only the first request can be hedged, the budget is then exhausted
+            assertEquals(i == 0 ? 1 : 0, response.attempt);
+        }
+        assertEquals(4, attempts.get());
+        assertEquals(1L, metrics.getHedges());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        final RequestHedger hedger = new RequestHedger(0.9d, 1d, metrics);
+        warmUp(hedger);
+        // The original request fails late, the duplicate request succeeds
+        Response response = hedger.send(MetricsListener.Operation.GET_VERSIONS, attempt -> {
+            if (attempt == 0) {
+                sleep(200L);
+                throw new ApplicationException("late failure");
+            }
+            sleep(400L);
+            return new Response(attempt);
+        });
+        assertEquals(1, response.attempt);
+        // Both requests fail
+        try {
+            hedger.send(MetricsListener.Operation.GET_VERSIONS, attempt -> {
+                sleep(200L);
+                throw new ApplicationException("failure " + attempt);
+            });
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            assertTrue(e.getMessage().startsWith("failure"));
+        }
+        // A fast failure is not hedged
+        try {
+            hedger.send(MetricsListener.Operation.GET_VERSIONS, attempt -> {
+                throw new ApplicationException("fast failure " + attempt);
+            });
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            assertEquals("fast failure 0", e.getMessage());
+        }
+        assertEquals(2L, metrics.getHedges());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Response implements Closeable {
+
+        private final int attempt;
+
+        private final AtomicInteger closed = new AtomicInteger();
+
+        private final CountDownLatch latch;
+
+        Response(final int attempt) {
+            this(attempt, new CountDownLatch(1));
+        }
+
+        Response(final int attempt, final CountDownLatch latch) {
+            this.attempt = attempt;
+            this.latch = latch;
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestSegmentedInputStream {
+
+    private static byte[] content(final int length) {
+        final byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+
+    private static InputStream stream(final byte[] content, final int segmentSize, final int parallelism) {
+        return new SegmentedInputStream(new ByteArrayInputStream(content, 0, Math.min(segmentSize, content.length)),
+            (from, to) -> Arrays.copyOfRange(content, (int) from, (int) to + 1), segmentSize, content.length,
+            segmentSize, parallelism);
+    }
+
+    private static byte[] readFully(final InputStream inputStream, final int length) throws IOException {
+        final byte[] result = new byte[length];
+        int offset = 0;
+        for (int n; offset < length && (n = inputStream.read(result, offset, length - offset)) != -1;) {
+            offset += n;
+        }
+        assertEquals(length, offset);
+        assertEquals(-1, inputStream.read());
+        return result;
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final byte[] content = content(10000);
+        try (final InputStream inputStream = stream(content, 1000, 3)) {
+            assertArrayEquals(content, readFully(inputStream, content.length));
+        }
+        assertEquals(SegmentedInputStream.MAX_BUFFERED_BYTES, SegmentedInputStream.availableBuffers());
+    }
+
+    @Test
+    public void testBoundedBuffers() throws IOException {
+        // Each download would keep up to 128 Mo in advance which exceeds the buffers of all the downloads
+        final int segmentSize = 16 * 1024 * 1024;
+        final byte[] content = content(3 * segmentSize);
+        try (final InputStream inputStream1 = stream(content, segmentSize, 8);
+             final InputStream inputStream2 = stream(content, segmentSize, 8)) {
+            assertEquals(SegmentedInputStream.MAX_BUFFERED_BYTES - 2 * 2 * segmentSize,
+                SegmentedInputStream.availableBuffers());
+            final byte[] buffer = new byte[segmentSize];
+            // The downloads are read alternately without blocking each other
+            for (int i = 0; i < 3; i++) {
+                assertEquals(segmentSize, readFully(inputStream1, buffer));
+                assertEquals(segmentSize, readFully(inputStream2, buffer));
+                assertArrayEquals(Arrays.copyOfRange(content, i * segmentSize, (i + 1) * segmentSize), buffer);
+            }
+            assertEquals(-1, inputStream1.read());
+            assertEquals(-1, inputStream2.read());
+        }
+        assertEquals(SegmentedInputStream.MAX_BUFFERED_BYTES, SegmentedInputStream.availableBuffers());
+    }
+
+    @Test
+    public void testCloseReleasesBuffers() throws IOException {
+        final byte[] content = content(10000);
+        final InputStream inputStream = stream(content, 1000, 5);
+        assertEquals(0, inputStream.read());
+        inputStream.close();
+        assertEquals(SegmentedInputStream.MAX_BUFFERED_BYTES, SegmentedInputStream.availableBuffers());
+    }
+
+    @Test
+    public void testFailedSegment() throws IOException {
+        final byte[] content = content(3000);
+        try (final InputStream inputStream = new SegmentedInputStream(new ByteArrayInputStream(content, 0, 1000),
+            (from, to) -> {
+                throw new IOException("Failed");
+            }, 1000L, content.length, 1000, 2)) {
+            readFully(inputStream, content.length);
+            fail("An IOException was expected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(SegmentedInputStream.MAX_BUFFERED_BYTES, SegmentedInputStream.availableBuffers());
+    }
+
+    private static int readFully(final InputStream inputStream, final byte[] buffer) throws IOException {
+        int offset = 0;
+        for (int n; offset < buffer.length && (n = inputStream.read(buffer, offset, buffer.length - offset)) != -1;) {
+            offset += n;
+        }
+        return offset;
+    }
+}
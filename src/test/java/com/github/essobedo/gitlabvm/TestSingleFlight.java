@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestSingleFlight {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private CompletableFuture<String> leader(final String key, final ApplicationException failure) {
+        final CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> execute(key, () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            if (failure != null) {
+                throw failure;
+            }
+            return "value";
+        }));
+        await(started);
+        return result;
+    }
+
+    private String execute(final String key, final SingleFlight.Call<String> call) {
+        try {
+            return flight.execute(key, call);
+        } catch (ApplicationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(2L, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CompletableFuture<String> follower(final String key) throws InterruptedException {
+        final CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> execute(key, () -> {
+            calls.incrementAndGet();
+            return "other";
+        }));
+        // Let the follower join the call in progress
+        Thread.sleep(100L);
+        return result;
+    }
+
+    private static void assertFailed(final ApplicationException failure, final CompletableFuture<String> result)
+        throws InterruptedException {
+        try {
+            result.get();
+            fail("An ExecutionException was expected");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause().getCause());
+        }
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final CompletableFuture<String> leader = leader("key", null);
+        final CompletableFuture<String> follower1 = follower("key");
+        final CompletableFuture<String> follower2 = follower("key");
+        release.countDown();
+        assertEquals("value", leader.get());
+        assertEquals("value", follower1.get());
+        assertEquals("value", follower2.get());
+        assertEquals(1, calls.get());
+        // The call is executed again once completed
+        assertEquals("other", flight.execute("key", () -> "other"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final ApplicationException failure = new ApplicationException("failure");
+        final CompletableFuture<String> leader = leader("key", failure);
+        final CompletableFuture<String> follower = follower("key");
+        release.countDown();
+        assertFailed(failure, leader);
+        assertFailed(failure, follower);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testDistinctKeys() throws Exception {
+        final CompletableFuture<String> leader = leader("key", null);
+        assertEquals("other", follower("key2").get(2L, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals("value", leader.get());
+        assertEquals(2, calls.get());
+    }
+}
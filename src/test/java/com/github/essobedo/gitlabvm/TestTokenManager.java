@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestTokenManager {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final AtomicInteger logins = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final TokenManager manager = new TokenManager(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new ApplicationException("Interrupted", e);
+            }
+            return "token" + logins.incrementAndGet();
+        }, null);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(manager::token));
+            }
+            Thread.sleep(100L);
+            latch.countDown();
+            for (final Future<String> future : futures) {
+                assertEquals("token1", future.get(10L, TimeUnit.SECONDS));
+            }
+            assertEquals(1, logins.get());
+            futures.clear();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> manager.refresh("token1")));
+            }
+            for (final Future<String> future : futures) {
+                assertEquals("token2", future.get(10L, TimeUnit.SECONDS));
+            }
+            assertEquals(2, logins.get());
+            assertEquals("token2", manager.token());
+            // A token that has already been refreshed is not refreshed again
+            assertEquals("token2", manager.refresh("token1"));
+            assertEquals(2, logins.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final AtomicInteger logins = new AtomicInteger();
+        final TokenManager manager = new TokenManager(() -> {
+            if (logins.incrementAndGet() == 1) {
+                throw new ApplicationException("Invalid credentials");
+            }
+            return "token";
+        }, null);
+        try {
+            manager.token();
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+        assertEquals("token", manager.token());
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        final File file = new File(folder.getRoot(), "token");
+        final AtomicInteger logins = new AtomicInteger();
+        final TokenManager.Login login = () -> "token" + logins.incrementAndGet();
+        TokenManager manager = new TokenManager(login,
+            new TokenStore(file, "http://localhost", "login", "password"));
+        assertEquals("token1", manager.token());
+        assertTrue(file.isFile());
+        assertFalse(new String(Files.readAllBytes(file.toPath()), "UTF-8").contains("token1"));
+        // After a restart the stored token is reused
+        manager = new TokenManager(login, new TokenStore(file, "http://localhost", "login", "password"));
+        assertEquals("token1", manager.token());
+        assertEquals(1, logins.get());
+        // A rejected token is not reloaded from the store
+        assertEquals("token2", manager.refresh("token1"));
+        assertEquals("token2", new TokenStore(file, "http://localhost", "login", "password").load());
+        // The token cannot be read with other credentials or from another end point
+        assertNull(new TokenStore(file, "http://localhost", "login", "password2").load());
+        assertNull(new TokenStore(file, "http://localhost", "login2", "password").load());
+        assertNull(new TokenStore(file, "http://localhost2", "login", "password").load());
+        manager = new TokenManager(login, new TokenStore(file, "http://localhost", "login", "password2"));
+        assertEquals("token3", manager.token());
+        // A corrupted file is ignored
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        assertNull(new TokenStore(file, "http://localhost", "login", "password2").load());
+    }
+
+    @Test
+    public void testStoreMirrors() throws Exception {
+        final File file = new File(folder.getRoot(), "token");
+        final ConnectionConfiguration configuration = new ConnectionConfiguration() {
+            @Override
+            public String login() {
+                return "login";
+            }
+
+            @Override
+            public String password() {
+                return "password";
+            }
+
+            @Override
+            public String projectOwner() {
+                return "owner";
+            }
+
+            @Override
+            public String projectId() {
+                return "1";
+            }
+
+            @Override
+            public String projectName() {
+                return "project";
+            }
+
+            @Override
+            public String branch() {
+                return "master";
+            }
+
+            @Override
+            public String patchFileName() {
+                return "patch.zip";
+            }
+
+            @Override
+            public File tokenCacheFile() {
+                return file;
+            }
+        };
+        TokenStore.create("http://localhost", configuration, true).save("token1");
+        TokenStore.create("http://mirror1", configuration, false).save("token2");
+        TokenStore.create("http://mirror2", configuration, false).save("token3");
+        // Each end point has its own file such that the tokens do not overwrite each other
+        assertEquals("token1", new TokenStore(file, "http://localhost", "login", "password").load());
+        assertEquals("token1", TokenStore.create("http://localhost", configuration, true).load());
+        assertEquals("token2", TokenStore.create("http://mirror1", configuration, false).load());
+        assertEquals("token3", TokenStore.create("http://mirror2", configuration, false).load());
+        assertEquals(3, file.getParentFile().list().length);
+    }
+}
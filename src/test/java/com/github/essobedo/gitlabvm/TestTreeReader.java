@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestTreeReader {
+
+    @Test
+    public void testRead() throws Exception {
+        assertEquals("[1.0:tree, 1.1:blob]", read(
+            "[{\"id\":\"a1\",\"name\":\"1.0\",\"type\":\"tree\",\"mode\":\"040000\"},"
+                + "{\"name\":\"1.1\",\"type\":\"blob\"}]").toString()
+        );
+        assertEquals("[]", read(" [ ] ").toString());
+        assertEquals("[null:null]", read("[{}]").toString());
+        // Values to skip of any type
+        assertEquals("[1.0:tree]", read(
+            " [ { \"size\" : -1.5e3 , \"ok\" : true, \"none\": null, \"tags\":[\"a]\", {\"b\":\"}\"}],"
+                + " \"name\" : \"1.0\" , \"x\":{\"name\":\"2.0\"}, \"type\" : \"tree\" } ] ").toString()
+        );
+        // Escape sequences
+        assertEquals("[a\"b\\c/\u00e9\n:null]", read("[{\"name\":\"a\\\"b\\\\c\\/\\u00e9\\n\"}]").toString());
+        // A value of the wrong type is ignored
+        assertEquals("[null:null]", read("[{\"name\":1,\"type\":[\"tree\"]}]").toString());
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        for (final String tree : new String[]{"", "{}", "[", "[{\"name\":\"1.0\"}", "[{\"name\" \"1.0\"}]",
+            "[{\"name\":\"1.0}]", "[{\"name\":\"1.0\"};{}]", "[{\"name\":\"\\uZZZZ\"}]"}) {
+            try {
+                read(tree);
+                fail("An IOException was expected for " + tree);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLargeTree() throws Exception {
+        final StringBuilder tree = new StringBuilder("[");
+        final int size = 10000;
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                tree.append(',');
+            }
+            tree.append("{\"id\":\"").append(i).append("\",\"name\":\"1.").append(i).append("\",\"type\":\"tree\"}");
+        }
+        tree.append(']');
+        final List<String> entries = read(tree.toString());
+        assertEquals(size, entries.size());
+        assertTrue(entries.get(size - 1).equals("1." + (size - 1) + ":tree"));
+    }
+
+    private static List<String> read(final String tree) throws IOException {
+        final List<String> entries = new ArrayList<>();
+        new TreeReader(new StringReader(tree)).read((name, type) -> entries.add(name + ":" + type));
+        return entries;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestVersionKey {
+
+    // The comparator of version ids used before the version ids were parsed
+    private static final Comparator<String> LEGACY_COMPARATOR = (version1, version2) -> {
+        final String[] versions1 = version1.split("\\.");
+        final String[] versions2 = version2.split("\\.");
+        final String defaultValue = "*";
+        final String snapshot = "-SNAPSHOT";
+        int result = 0;
+        for (int i = 0, length = Math.max(versions1.length, versions2.length); result == 0 && i < length; i++) {
+            String vElement1 = i < versions1.length ? versions1[i] : defaultValue;
+            String vElement2 = i < versions2.length ? versions2[i] : defaultValue;
+            if (vElement1.endsWith(snapshot)) {
+                vElement1 = vElement1.substring(0, vElement1.length() - snapshot.length() + 1);
+            } else {
+                vElement1 += "_";
+            }
+            if (vElement2.endsWith(snapshot)) {
+                vElement2 = vElement2.substring(0, vElement2.length() - snapshot.length() + 1);
+            } else {
+                vElement2 += "_";
+            }
+            while (vElement1.length() < vElement2.length()) {
+                vElement1 = defaultValue + vElement1;
+            }
+            while (vElement2.length() < vElement1.length()) {
+                vElement2 = defaultValue + vElement2;
+            }
+            result = vElement1.compareTo(vElement2);
+        }
+        return result;
+    };
+
+    @Test
+    public void testParse() {
+        VersionKey key = VersionKey.parse("1.0.2");
+        assertEquals(3, key.segments());
+        assertFalse(key.isSnapshot());
+        assertEquals("1.0.2", key.toString());
+        key = VersionKey.parse("1.0.5-SNAPSHOT");
+        assertEquals(3, key.segments());
+        assertTrue(key.isSnapshot());
+        assertEquals(1, VersionKey.parse("").segments());
+        assertEquals(1, VersionKey.parse("1").segments());
+        assertEquals(2, VersionKey.parse("1.0.").segments());
+        assertEquals(0, VersionKey.parse("..").segments());
+        assertEquals(2, VersionKey.parse(".1.").segments());
+        assertSame(VersionKey.of("1.0.2"), VersionKey.of("1.0.2"));
+    }
+
+    @Test
+    public void testSameOrderAsLegacy() {
+        final String[] values = {"", ".", "..", "1", "1.", ".1", "1..2", "-SNAPSHOT", "1.-SNAPSHOT", "*", "1.*",
+            "1.0", "1.0.0", "1.0-SNAPSHOT", "1.0.1-SNAPSHOT", "01.0", "1.00", "1.a", "1.0-beta", "1.0_1", "1.0-rc-1",
+            "10.0", "9.9.9", "1.0.5.1-SNAPSHOT", "1.0-SNAPSHOT.1", "1.0SNAPSHOT", "1.0--SNAPSHOT", "1.0.*"};
+        for (final String value1 : values) {
+            for (final String value2 : values) {
+                assertEquals(String.format("'%s' vs '%s'", value1, value2),
+                    Integer.signum(LEGACY_COMPARATOR.compare(value1, value2)),
+                    Integer.signum(VersionKey.parse(value1).compareTo(VersionKey.parse(value2))));
+            }
+        }
+        final Random random = new Random(42L);
+        final String[] tokens = {"0", "1", "2", "9", "10", "99", "a", "B", "*", "-", "_", "-SNAPSHOT", ".", "."};
+        for (int i = 0; i < 100000; i++) {
+            final String value1 = randomVersion(random, tokens);
+            final String value2 = randomVersion(random, tokens);
+            assertEquals(String.format("'%s' vs '%s'", value1, value2),
+                Integer.signum(LEGACY_COMPARATOR.compare(value1, value2)),
+                Integer.signum(VersionKey.COMPARATOR.compare(value1, value2)));
+        }
+    }
+
+    @Test
+    public void testSortedVersions() {
+        final Random random = new Random(42L);
+        final String[] tokens = {"0", "1", "2", "9", "10", "-SNAPSHOT", ".", "."};
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add(randomVersion(random, tokens));
+        }
+        final SortedSet<String> expected = new TreeSet<>(VersionKey.COMPARATOR);
+        expected.addAll(names);
+        final SortedSet<String> versions = SortedVersions.sort(names, VersionKey.COMPARATOR);
+        assertEquals(expected, versions);
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(versions));
+        assertEquals(expected.first(), versions.first());
+        assertEquals(expected.last(), versions.last());
+        for (int i = 0; i < 100; i++) {
+            final String value1 = randomVersion(random, tokens);
+            final String value2 = randomVersion(random, tokens);
+            assertEquals(expected.contains(value1), versions.contains(value1));
+            assertEquals(new ArrayList<>(expected.headSet(value1)), new ArrayList<>(versions.headSet(value1)));
+            assertEquals(new ArrayList<>(expected.tailSet(value1)), new ArrayList<>(versions.tailSet(value1)));
+            if (VersionKey.COMPARATOR.compare(value1, value2) <= 0) {
+                assertEquals(new ArrayList<>(expected.subSet(value1, value2)),
+                    new ArrayList<>(versions.subSet(value1, value2)));
+            }
+        }
+        try {
+            versions.add("1.0");
+            fail("An UnsupportedOperationException was expected");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(SortedVersions.sort(new ArrayList<>(), VersionKey.COMPARATOR).isEmpty());
+        final SortedSet<String> sorted = SortedVersions.sort(names, String::compareTo);
+        assertFalse(sorted instanceof SortedVersions);
+        try {
+            sorted.add("1.0");
+            fail("An UnsupportedOperationException was expected");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSortedVersionsRange() {
+        final List<String> names = Arrays.asList("1.0", "1.1", "1.2", "1.3", "2.0");
+        final SortedSet<String> expected = new TreeSet<>(VersionKey.COMPARATOR);
+        expected.addAll(names);
+        final SortedSet<String> versions = SortedVersions.sort(names, VersionKey.COMPARATOR);
+        final String[][] ranges = {{"1.1", "1.3"}, {"1.0", "2.0"}, {"1.05", "1.25"}, {"1.2", "1.2"}};
+        final String[] values = {"0.9", "1.0", "1.1", "1.15", "1.2", "1.3", "1.35", "2.0", "3.0"};
+        for (final String[] range : ranges) {
+            final SortedSet<String> expectedView = expected.subSet(range[0], range[1]);
+            final SortedSet<String> view = versions.subSet(range[0], range[1]);
+            for (final String value : values) {
+                assertEquals(String.format("head %s of %s", value, Arrays.toString(range)),
+                    outcome(() -> expectedView.headSet(value)), outcome(() -> view.headSet(value)));
+                assertEquals(String.format("tail %s of %s", value, Arrays.toString(range)),
+                    outcome(() -> expectedView.tailSet(value)), outcome(() -> view.tailSet(value)));
+                for (final String other : values) {
+                    assertEquals(String.format("sub %s-%s of %s", value, other, Arrays.toString(range)),
+                        outcome(() -> expectedView.subSet(value, other)), outcome(() -> view.subSet(value, other)));
+                }
+            }
+        }
+        try {
+            versions.subSet("2.0", "1.0");
+            fail("An IllegalArgumentException was expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String outcome(final Supplier<SortedSet<String>> view) {
+        try {
+            return new ArrayList<>(view.get()).toString();
+        } catch (IllegalArgumentException e) {
+            return "IllegalArgumentException";
+        }
+    }
+
+    @Test
+    public void testCacheSizedFromListing() {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < 150000; i++) {
+            names.add(String.format("3.%d", i));
+        }
+        SortedVersions.sort(names, VersionKey.COMPARATOR);
+        final List<VersionKey> keys = new ArrayList<>();
+        for (final String name : names) {
+            keys.add(VersionKey.of(name));
+        }
+        // The cache is large enough to keep all the version ids of the listing
+        for (int i = 0; i < names.size(); i++) {
+            assertSame(keys.get(i), VersionKey.of(names.get(i)));
+        }
+    }
+
+    private static String randomVersion(final Random random, final String[] tokens) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0, length = random.nextInt(8); i < length; i++) {
+            result.append(tokens[random.nextInt(tokens.length)]);
+        }
+        return result.toString();
+    }
+}
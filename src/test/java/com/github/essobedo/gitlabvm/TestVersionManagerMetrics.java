@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.gitlabvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.2
+ */
+public class TestVersionManagerMetrics {
+
+    @Test
+    public void testHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.snapshot().getCount());
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3L));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100L));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(200L));
+        final LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(100L, snapshot.getCount());
+        assertEquals(200d, snapshot.getMaxMillis(), 0.001d);
+        assertEquals((98 * 3 + 300) / 100d, snapshot.getMeanMillis(), 0.001d);
+        // 3 ms falls into the bucket ]2048, 4096] micros
+        assertEquals(4.096d, snapshot.getP50Millis(), 0.001d);
+        assertEquals(4.096d, snapshot.getP95Millis(), 0.001d);
+        // 100 ms falls into the bucket ]65536, 131072] micros
+        assertEquals(131.072d, snapshot.getP99Millis(), 0.001d);
+    }
+
+    @Test
+    public void testMetrics() {
+        final CacheStatistics versions = new CacheStatistics();
+        final CacheStatistics patches = new CacheStatistics();
+        final VersionManagerMetrics metrics = new VersionManagerMetrics(versions, patches);
+        final List<String> events = new ArrayList<>();
+        final MetricsListener listener = new MetricsListener() {
+            @Override
+            public void error(final Operation operation, final int status) {
+                events.add(operation + ":" + status);
+            }
+
+            @Override
+            public void cancelled() {
+                events.add("cancelled");
+            }
+        };
+        metrics.addListener(listener);
+        metrics.latency(MetricsListener.Operation.FIND_TOKEN, TimeUnit.MILLISECONDS.toNanos(5L));
+        metrics.error(MetricsListener.Operation.GET_PATCH, 404);
+        metrics.error(MetricsListener.Operation.GET_VERSIONS, 404);
+        metrics.error(MetricsListener.Operation.GET_VERSIONS, 0);
+        metrics.cancelled();
+        metrics.downloaded(2000L, TimeUnit.SECONDS.toNanos(2L));
+        versions.hit();
+        versions.miss();
+        patches.hit();
+        assertEquals(1L, metrics.getFindTokenLatency().getCount());
+        assertEquals(0L, metrics.getPatchLatency().getCount());
+        assertEquals(2L, metrics.getErrors().get("404").longValue());
+        assertEquals(1L, metrics.getErrors().get("0").longValue());
+        assertEquals(1L, metrics.getCancellations());
+        assertEquals(2000L, metrics.getDownloadedBytes());
+        assertEquals(1000d, metrics.getDownloadRate(), 0.001d);
+        assertEquals(0.5d, metrics.getVersionsCacheHitRatio(), 0.001d);
+        assertEquals(1d, metrics.getPatchCacheHitRatio(), 0.001d);
+        assertEquals("[GET_PATCH:404, GET_VERSIONS:404, GET_VERSIONS:0, cancelled]", events.toString());
+        metrics.removeListener(listener);
+        metrics.cancelled();
+        assertEquals(4, events.size());
+    }
+
+    @Test
+    public void testMeteredInputStream() throws Exception {
+        final VersionManagerMetrics metrics = new VersionManagerMetrics(new CacheStatistics(),
+            new CacheStatistics());
+        try (InputStream inputStream = new MeteredInputStream(new ByteArrayInputStream(new byte[10000]), metrics,
+            System.nanoTime())) {
+            assertEquals(0L, metrics.getTimeToFirstByte().getCount());
+            assertEquals(0, inputStream.read());
+            assertEquals(1L, metrics.getTimeToFirstByte().getCount());
+            assertEquals(4999, inputStream.read(new byte[4999]));
+            assertEquals(5000L, inputStream.skip(5000L));
+            assertEquals(-1, inputStream.read());
+        }
+        assertEquals(1L, metrics.getTimeToFirstByte().getCount());
+        assertEquals(10000L, metrics.getDownloadedBytes());
+        assertTrue(metrics.getDownloadRate() > 0d);
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        final VersionManagerMetrics metrics = new VersionManagerMetrics(new CacheStatistics(),
+            new CacheStatistics());
+        metrics.latency(MetricsListener.Operation.GET_VERSIONS, TimeUnit.MILLISECONDS.toNanos(1L));
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = metrics.register("my:app");
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, ((CompositeData) server.getAttribute(name, "VersionsLatency")).get("count"));
+        assertEquals(0L, server.getAttribute(name, "Cancellations"));
+        // Registering again replaces the previous registration
+        assertEquals(name, metrics.register("my:app"));
+        metrics.unregister();
+        assertFalse(server.isRegistered(name));
+        metrics.unregister();
+    }
+}